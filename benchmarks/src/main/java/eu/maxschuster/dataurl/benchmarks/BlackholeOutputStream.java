@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl.benchmarks;
+
+import java.io.OutputStream;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Passes everything written to it to a {@link Blackhole}
+ * @author Max Schuster
+ */
+class BlackholeOutputStream extends OutputStream {
+    
+    /**
+     * Target {@link Blackhole}
+     */
+    private final Blackhole blackhole;
+
+    public BlackholeOutputStream(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void write(int b) {
+        blackhole.consume(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        blackhole.consume(b);
+        blackhole.consume(len);
+    }
+    
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl.benchmarks;
+
+import eu.maxschuster.dataurl.DataUrl;
+import eu.maxschuster.dataurl.DataUrlBuilder;
+import eu.maxschuster.dataurl.DataUrlEncoding;
+import eu.maxschuster.dataurl.DataUrlSerializer;
+import java.net.MalformedURLException;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Shared benchmark state: a {@link DataUrl} and its serialized form for
+ * every combination of payload size, encoding and headers
+ * @author Max Schuster
+ */
+@State(Scope.Benchmark)
+public class PayloadState {
+    
+    /**
+     * Characters of generated text payloads
+     */
+    private static final String TEXT = "abcdefghijklmnopqrstuvwxyz"
+            + "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 .,;:-_!?/\n";
+    
+    /**
+     * Payload size in bytes: 100 B, 10 KB, 1 MB, 50 MB
+     */
+    @Param({"100", "10240", "1048576", "52428800"})
+    public int size;
+    
+    /**
+     * Encoding method. BASE64 payloads are random bytes, URL payloads are
+     * random text.
+     */
+    @Param({"BASE64", "URL"})
+    public DataUrlEncoding encoding;
+    
+    /**
+     * Serialize a MIME-Type and a charset header
+     */
+    @Param({"true", "false"})
+    public boolean headers;
+    
+    /**
+     * Serializer under test
+     */
+    public DataUrlSerializer serializer;
+    
+    /**
+     * Unserialized form
+     */
+    public DataUrl dataUrl;
+    
+    /**
+     * Serialized form
+     */
+    public String serialized;
+    
+    @Setup
+    public void setup() throws MalformedURLException {
+        serializer = new DataUrlSerializer();
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+        if (encoding == DataUrlEncoding.BASE64) {
+            random.nextBytes(data);
+        } else {
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) TEXT.charAt(random.nextInt(TEXT.length()));
+            }
+        }
+        DataUrlBuilder builder = new DataUrlBuilder()
+                .setEncoding(encoding)
+                .setData(data);
+        if (headers) {
+            builder.setMimeType(encoding == DataUrlEncoding.BASE64 
+                    ? "image/png" : "text/plain");
+            builder.setCharset("UTF-8");
+        }
+        dataUrl = builder.build();
+        serialized = serializer.serialize(dataUrl);
+    }
+    
+}
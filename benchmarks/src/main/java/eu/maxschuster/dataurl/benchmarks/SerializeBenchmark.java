@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl.benchmarks;
+
+import eu.maxschuster.dataurl.DataUrlSerializer;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks {@link DataUrlSerializer#serialize(eu.maxschuster.dataurl.DataUrl)}
+ * and its streaming variant
+ * @author Max Schuster
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+public class SerializeBenchmark {
+    
+    @Benchmark
+    public String serialize(PayloadState state) throws MalformedURLException {
+        return state.serializer.serialize(state.dataUrl);
+    }
+    
+    @Benchmark
+    public void serializeOutputStream(PayloadState state, Blackhole blackhole)
+            throws IOException {
+        state.serializer.serialize(state.dataUrl, 
+                new BlackholeOutputStream(blackhole));
+    }
+    
+}
@@ -0,0 +1,931 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Base64 implementation of {@link IDataUrlCodec}. Encodes and decodes
+ * RFC 4648 compatible without intermediate copies.
+ * @author Max Schuster
+ */
+public class Base64Codec implements IDataUrlCodec {
+
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Maps 6 bit values to their characters
+     */
+    private static final char[] ENCODE_TABLE = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            + "abcdefghijklmnopqrstuvwxyz0123456789+/").toCharArray();
+    
+    /**
+     * Maps characters to their 6 bit values, {@code -1} for illegal
+     * characters
+     */
+    private static final int[] DECODE_TABLE = new int[128];
+    
+    /**
+     * Number of bytes a parallel task encodes or decodes at most. A multiple
+     * of 3, so every chunk maps to whole 4 character groups.
+     */
+    static final int PARALLEL_CHUNK_SIZE = 3 << 18;
+    
+    /**
+     * Number of bytes staged on the heap at once while encoding from or 
+     * decoding into a {@link ByteBuffer} without accessible array. A 
+     * multiple of 3.
+     */
+    static final int BLOCK_SIZE = 3 * 1024;
+    
+    static {
+        Arrays.fill(DECODE_TABLE, -1);
+        for (int i = 0; i < ENCODE_TABLE.length; i++) {
+            DECODE_TABLE[ENCODE_TABLE[i]] = i;
+        }
+    }
+    
+    /**
+     * Gets the length of the padded Base64 encoding of the given number
+     * of bytes
+     *
+     * @param length Number of bytes
+     * @return Number of characters
+     */
+    static long getEncodedLength(int length) {
+        return (length + 2L) / 3 * 4;
+    }
+    
+    /**
+     * Encodes the given range of bytes to US-ASCII bytes
+     *
+     * @param src Bytes to encode
+     * @param off Offset of the bytes to encode
+     * @param len Number of bytes to encode
+     * @param dst Target buffer
+     * @param dstOff Offset in the target buffer
+     * @return Number of written bytes
+     */
+    static int encode(byte[] src, int off, int len, byte[] dst,
+            int dstOff) {
+        int end = off + len;
+        int fullEnd = off + len / 3 * 3;
+        int pos = dstOff;
+        int i = off;
+        while (i < fullEnd) {
+            int bits = (src[i++] & 0xFF) << 16 | (src[i++] & 0xFF) << 8 
+                    | (src[i++] & 0xFF);
+            dst[pos++] = (byte) ENCODE_TABLE[bits >>> 18];
+            dst[pos++] = (byte) ENCODE_TABLE[bits >>> 12 & 0x3F];
+            dst[pos++] = (byte) ENCODE_TABLE[bits >>> 6 & 0x3F];
+            dst[pos++] = (byte) ENCODE_TABLE[bits & 0x3F];
+        }
+        if (i < end) {
+            int b0 = src[i++] & 0xFF;
+            dst[pos++] = (byte) ENCODE_TABLE[b0 >> 2];
+            if (i == end) {
+                dst[pos++] = (byte) ENCODE_TABLE[(b0 << 4) & 0x3F];
+                dst[pos++] = '=';
+            } else {
+                int b1 = src[i] & 0xFF;
+                dst[pos++] = (byte) ENCODE_TABLE[(b0 << 4) & 0x3F | b1 >> 4];
+                dst[pos++] = (byte) ENCODE_TABLE[(b1 << 2) & 0x3F];
+            }
+            dst[pos++] = '=';
+        }
+        return pos - dstOff;
+    }
+    
+    /**
+     * Encodes the given range of bytes to characters
+     *
+     * @param src Bytes to encode
+     * @param off Offset of the bytes to encode
+     * @param len Number of bytes to encode
+     * @param dst Target buffer
+     * @param dstOff Offset in the target buffer
+     * @return Number of written characters
+     */
+    static int encode(byte[] src, int off, int len, char[] dst,
+            int dstOff) {
+        int end = off + len;
+        int fullEnd = off + len / 3 * 3;
+        int pos = dstOff;
+        int i = off;
+        while (i < fullEnd) {
+            int bits = (src[i++] & 0xFF) << 16 | (src[i++] & 0xFF) << 8 
+                    | (src[i++] & 0xFF);
+            dst[pos++] = ENCODE_TABLE[bits >>> 18];
+            dst[pos++] = ENCODE_TABLE[bits >>> 12 & 0x3F];
+            dst[pos++] = ENCODE_TABLE[bits >>> 6 & 0x3F];
+            dst[pos++] = ENCODE_TABLE[bits & 0x3F];
+        }
+        if (i < end) {
+            int b0 = src[i++] & 0xFF;
+            dst[pos++] = ENCODE_TABLE[b0 >> 2];
+            if (i == end) {
+                dst[pos++] = ENCODE_TABLE[(b0 << 4) & 0x3F];
+                dst[pos++] = '=';
+            } else {
+                int b1 = src[i] & 0xFF;
+                dst[pos++] = ENCODE_TABLE[(b0 << 4) & 0x3F | b1 >> 4];
+                dst[pos++] = ENCODE_TABLE[(b1 << 2) & 0x3F];
+            }
+            dst[pos++] = '=';
+        }
+        return pos - dstOff;
+    }
+    
+    /**
+     * Decodes the given range of a {@link CharSequence}. Accepts the same
+     * input as {@link Base64#getDecoder()}: padding is optional, but if
+     * present it must be correct and end the input. Illegal input is 
+     * reported at the first character a pushed payload fails at.
+     *
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @return Decoded bytes
+     * @throws IllegalArgumentException If the input is no valid Base64
+     */
+    static byte[] decode(CharSequence src, int start, int end)
+            throws IllegalArgumentException {
+        return decode(src, start, end, (ForkJoinPool) null);
+    }
+    
+    /**
+     * Decodes the given range of a {@link CharSequence}. If a
+     * {@link ForkJoinPool} is given, the range is split into chunks of
+     * {@link #PARALLEL_CHUNK_SIZE} bytes that are decoded concurrently. The
+     * reported offset of an illegal character is the same in both modes.
+     *
+     * @param src Characters to decode, must not be modified concurrently
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param pool Pool to decode in parallel or {@code null}
+     * @return Decoded bytes
+     * @throws IllegalArgumentException If the input is no valid Base64
+     */
+    static byte[] decode(CharSequence src, int start, int end, 
+            ForkJoinPool pool) throws IllegalArgumentException {
+        try {
+            byte[] bytes = new byte[getDecodedLength(src, start, end)];
+            decode(src, start, end, bytes, 0, pool);
+            return bytes;
+        } catch (IllegalInputException e) {
+            throw locate(src, start, end, e);
+        }
+    }
+    
+    /**
+     * Decodes the given range of a {@link CharSequence} into a 
+     * {@link ByteBuffer} of the exact size obtained from the given 
+     * allocator. Direct buffers are filled in blocks of
+     * {@link #BLOCK_SIZE} bytes.
+     *
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param allocator Allocates a {@link ByteBuffer} of the given capacity
+     * @return Decoded bytes between position and limit of the buffer
+     * @throws IllegalArgumentException If the input is no valid Base64
+     */
+    static ByteBuffer decode(CharSequence src, int start, int end,
+            IntFunction<ByteBuffer> allocator) 
+            throws IllegalArgumentException {
+        int length;
+        try {
+            length = getDecodedLength(src, start, end);
+        } catch (IllegalInputException e) {
+            throw locate(src, start, end, e);
+        }
+        ByteBuffer buffer = allocator.apply(length);
+        int position = buffer.position();
+        if (buffer.hasArray()) {
+            decode(src, start, end, buffer.array(), 
+                    buffer.arrayOffset() + position, null);
+            buffer.position(position + length);
+        } else {
+            byte[] block = new byte[BLOCK_SIZE];
+            int blockChars = BLOCK_SIZE / 3 * 4;
+            int i = start;
+            try {
+                while (end - i > blockChars) {
+                    decodeGroups(src, i, i + blockChars, block, 0);
+                    buffer.put(block);
+                    i += blockChars;
+                }
+                buffer.put(block, 0, decode(src, i, end, block, 0, null));
+            } catch (IllegalInputException e) {
+                throw locate(src, start, end, e);
+            }
+        }
+        buffer.limit(buffer.position());
+        buffer.position(position);
+        return buffer;
+    }
+    
+    /**
+     * Finds the failure of a range that has been rejected by the whole 
+     * range checks of this class. A {@link ChunkDecoder} reads it character
+     * by character, so the failure is reported at the same offset as for a
+     * pushed or streamed payload.
+     *
+     * @param src Characters
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param e Failure found by the range checks
+     * @return Failure of the {@link ChunkDecoder} or e if it accepts the 
+     * range
+     */
+    private static IllegalInputException locate(CharSequence src, int start,
+            int end, IllegalInputException e) {
+        ChunkDecoder decoder = new ChunkDecoder(start);
+        byte[] block = new byte[Math.min(end - start, BLOCK_SIZE)];
+        try {
+            for (int i = start; i < end; i += block.length) {
+                int length = Math.min(block.length, end - i);
+                for (int j = 0; j < length; j++) {
+                    char c = src.charAt(i + j);
+                    // Characters outside of US-ASCII are illegal anyway
+                    block[j] = (byte) (c < 128 ? c : 0xFF);
+                }
+                decoder.decode(ByteBuffer.wrap(block, 0, length));
+            }
+            decoder.finish();
+        } catch (IllegalInputException located) {
+            return located;
+        }
+        return e;
+    }
+    
+    /**
+     * Gets the number of padding characters at the end of the given range
+     *
+     * @param src Characters
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @return Number of padding characters, at most 2
+     */
+    private static int getPadding(CharSequence src, int start, int end) {
+        int padding = 0;
+        if (end - start > 0 && src.charAt(end - 1) == '=') {
+            padding++;
+            if (end - start > 1 && src.charAt(end - 2) == '=') {
+                padding++;
+            }
+        }
+        return padding;
+    }
+    
+    /**
+     * Gets the exact number of bytes the given range of a 
+     * {@link CharSequence} is decoded to. Checks that the length of the
+     * range and its padding are valid.
+     *
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @return Number of decoded bytes
+     * @throws IllegalArgumentException If the length or padding is invalid
+     */
+    private static int getDecodedLength(CharSequence src, int start, 
+            int end) throws IllegalArgumentException {
+        int length = end - start;
+        int padding = getPadding(src, start, end);
+        int chars = length - padding;
+        int remainder = chars & 3;
+        if (remainder == 1 || (padding > 0 && (length & 3) != 0)) {
+            throw new IllegalInputException(
+                    "Illegal Base64 ending at " + (start + chars), 
+                    start + chars);
+        }
+        return chars / 4 * 3 + (remainder == 0 ? 0 : remainder - 1);
+    }
+    
+    /**
+     * Decodes the given range of a {@link CharSequence}, that has been
+     * checked by {@link #getDecodedLength(CharSequence, int, int)}, into the
+     * given buffer
+     *
+     * @param src Characters to decode, must not be modified concurrently
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param dst Target buffer
+     * @param dstOff Offset in the target buffer
+     * @param pool Pool to decode in parallel or {@code null}
+     * @return Number of written bytes
+     * @throws IllegalArgumentException If a character is illegal
+     */
+    private static int decode(CharSequence src, int start, int end, 
+            byte[] dst, int dstOff, ForkJoinPool pool) 
+            throws IllegalArgumentException {
+        int chars = end - start - getPadding(src, start, end);
+        int remainder = chars & 3;
+        int i = start + chars - remainder;
+        int pos = dstOff + (i - start) / 4 * 3;
+        if (pool == null || pos - dstOff <= PARALLEL_CHUNK_SIZE) {
+            decodeGroups(src, start, i, dst, dstOff);
+        } else {
+            AtomicInteger failure = new AtomicInteger(Integer.MAX_VALUE);
+            pool.invoke(new DecodeTask(src, start, i, dst, dstOff, failure));
+            if (failure.get() != Integer.MAX_VALUE) {
+                throw new IllegalInputException(
+                        "Illegal Base64 character at " + failure.get(),
+                        failure.get());
+            }
+        }
+        if (remainder == 2) {
+            int bits = value(src, i) << 18 | value(src, i + 1) << 12;
+            dst[pos++] = (byte) (bits >> 16);
+        } else if (remainder == 3) {
+            int bits = value(src, i) << 18 | value(src, i + 1) << 12
+                    | value(src, i + 2) << 6;
+            dst[pos++] = (byte) (bits >> 16);
+            dst[pos++] = (byte) (bits >> 8);
+        }
+        return pos - dstOff;
+    }
+    
+    /**
+     * Decodes whole 4 character groups
+     *
+     * @param src Characters to decode
+     * @param start Start of the groups, inclusive
+     * @param end End of the groups, exclusive
+     * @param dst Target buffer
+     * @param dstOff Offset in the target buffer
+     * @throws IllegalArgumentException If a character is illegal
+     */
+    private static void decodeGroups(CharSequence src, int start, int end,
+            byte[] dst, int dstOff) throws IllegalArgumentException {
+        int pos = dstOff;
+        for (int i = start; i < end; i += 4) {
+            int bits = value(src, i) << 18 | value(src, i + 1) << 12
+                    | value(src, i + 2) << 6 | value(src, i + 3);
+            dst[pos++] = (byte) (bits >> 16);
+            dst[pos++] = (byte) (bits >> 8);
+            dst[pos++] = (byte) bits;
+        }
+    }
+    
+    /**
+     * Encodes the remaining bytes of a {@link ByteBuffer} to US-ASCII bytes
+     * and puts them into the target buffer. Buffers without accessible 
+     * array are processed in blocks of {@link #BLOCK_SIZE} bytes.
+     *
+     * @param src Bytes to encode, the position is advanced
+     * @param dst Target buffer, the position is advanced
+     * @return Number of written bytes
+     * @throws BufferOverflowException If the target buffer is too small
+     */
+    static int encode(ByteBuffer src, ByteBuffer dst) 
+            throws BufferOverflowException {
+        int length = src.remaining();
+        int encodedLength = (int) getEncodedLength(length);
+        if (dst.remaining() < encodedLength) {
+            throw new BufferOverflowException();
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            encode(src.array(), src.arrayOffset() + src.position(), length, 
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.limit());
+            dst.position(dst.position() + encodedLength);
+            return encodedLength;
+        }
+        byte[] block = new byte[BLOCK_SIZE];
+        byte[] encoded = new byte[BLOCK_SIZE / 3 * 4];
+        while (src.hasRemaining()) {
+            int n = Math.min(BLOCK_SIZE, src.remaining());
+            src.get(block, 0, n);
+            dst.put(encoded, 0, encode(block, 0, n, encoded, 0));
+        }
+        return encodedLength;
+    }
+    
+    /**
+     * Encodes the given bytes in parallel to US-ASCII bytes
+     *
+     * @param src Bytes to encode
+     * @param dst Target buffer
+     * @param dstOff Offset in the target buffer
+     * @param pool Pool to encode in
+     * @return Number of written bytes
+     */
+    static int encode(byte[] src, byte[] dst, int dstOff, ForkJoinPool pool) {
+        pool.invoke(new EncodeTask(src, 0, src.length, dst, null, dstOff));
+        return (int) getEncodedLength(src.length);
+    }
+    
+    /**
+     * Encodes the given bytes in parallel to characters
+     *
+     * @param src Bytes to encode
+     * @param dst Target buffer
+     * @param dstOff Offset in the target buffer
+     * @param pool Pool to encode in
+     * @return Number of written characters
+     */
+    static int encode(byte[] src, char[] dst, int dstOff, ForkJoinPool pool) {
+        pool.invoke(new EncodeTask(src, 0, src.length, null, dst, dstOff));
+        return (int) getEncodedLength(src.length);
+    }
+    
+    /**
+     * Gets the 6 bit value of the character at the given index
+     *
+     * @param src Characters
+     * @param index Index
+     * @return 6 bit value
+     * @throws IllegalArgumentException If the character is illegal
+     */
+    private static int value(CharSequence src, int index) 
+            throws IllegalArgumentException {
+        int value = value(src.charAt(index));
+        if (value == -1) {
+            throw new IllegalInputException(
+                    "Illegal Base64 character at " + index, index);
+        }
+        return value;
+    }
+    
+    /**
+     * Gets the 6 bit value of the given character
+     *
+     * @param c Character
+     * @return 6 bit value or {@code -1} if the character is illegal
+     */
+    private static int value(char c) {
+        return c < 128 ? DECODE_TABLE[c] : -1;
+    }
+
+    @Override
+    public String getEncodingName() {
+        return DataUrlEncoding.BASE64.getEncodingName();
+    }
+
+    @Override
+    public byte[] decode(Charset charset, CharSequence src, int start, 
+            int end) throws IllegalArgumentException {
+        return decode(src, start, end);
+    }
+
+    @Override
+    public int getDecodedLengthEstimate(CharSequence src, int start, 
+            int end) {
+        int length = end - start;
+        if (length > 0 && src.charAt(end - 1) == '=') {
+            length--;
+            if (length > 0 && src.charAt(end - 2) == '=') {
+                length--;
+            }
+        }
+        return (int) (length * 3L / 4);
+    }
+
+    @Override
+    public byte[] decode(Charset charset, CharSequence src, int start, 
+            int end, long maxLength) throws IllegalArgumentException {
+        // The estimate of valid Base64 is exact
+        if (getDecodedLengthEstimate(src, start, end) > maxLength) {
+            return null;
+        }
+        return decode(src, start, end);
+    }
+
+    @Override
+    public long getEncodedLength(Charset charset, byte[] data) {
+        return getEncodedLength(data.length);
+    }
+
+    @Override
+    public int encodeTo(Charset charset, byte[] data, byte[] dst, int off) {
+        return encode(data, 0, data.length, dst, off);
+    }
+
+    @Override
+    public int encodeTo(Charset charset, byte[] data, char[] dst, int off) {
+        return encode(data, 0, data.length, dst, off);
+    }
+
+    @Override
+    public ByteBuffer decode(Charset charset, CharSequence src, int start,
+            int end, IntFunction<ByteBuffer> allocator) 
+            throws IllegalArgumentException {
+        return decode(src, start, end, allocator);
+    }
+
+    @Override
+    public long getEncodedLength(Charset charset, ByteBuffer data) {
+        return getEncodedLength(data.remaining());
+    }
+
+    @Override
+    public int encodeTo(Charset charset, ByteBuffer data, ByteBuffer dst) {
+        return encode(data, dst);
+    }
+
+    @Override
+    public OutputStream wrap(Charset charset, OutputStream out) {
+        return Base64.getEncoder().wrap(out);
+    }
+
+    @Override
+    public InputStream wrap(Charset charset, InputStream in) {
+        return new ChunkDecoderInputStream(in, new ChunkDecoder(0));
+    }
+
+    @Override
+    public boolean usesCharset(boolean decode) {
+        return false;
+    }
+
+    @Override
+    public boolean isBlockCodec() {
+        return true;
+    }
+
+    @Override
+    public boolean isParallelCodec() {
+        return true;
+    }
+
+    @Override
+    public byte[] decode(Charset charset, CharSequence src, int start, 
+            int end, ForkJoinPool pool) throws IllegalArgumentException {
+        return decode(src, start, end, pool);
+    }
+
+    @Override
+    public int encodeTo(Charset charset, byte[] data, byte[] dst, int off,
+            ForkJoinPool pool) {
+        if (pool == null || data.length <= PARALLEL_CHUNK_SIZE) {
+            return encode(data, 0, data.length, dst, off);
+        }
+        return encode(data, dst, off, pool);
+    }
+
+    @Override
+    public int encodeTo(Charset charset, byte[] data, char[] dst, int off,
+            ForkJoinPool pool) {
+        if (pool == null || data.length <= PARALLEL_CHUNK_SIZE) {
+            return encode(data, 0, data.length, dst, off);
+        }
+        return encode(data, dst, off, pool);
+    }
+
+    @Override
+    public IDataUrlChunkDecoder newChunkDecoder(Charset charset) {
+        return new ChunkDecoder(0);
+    }
+    
+    /**
+     * Decodes Base64 pushed in chunks. Keeps at most 3 characters of an
+     * incomplete group between chunks. Accepts the same input as
+     * {@link Base64Codec#decode(CharSequence, int, int)}.
+     *
+     * @author Max Schuster
+     */
+    private static final class ChunkDecoder implements IDataUrlChunkDecoder {
+        
+        /**
+         * Bits of the incomplete group
+         */
+        private int bits = 0;
+        
+        /**
+         * Number of characters in the incomplete group
+         */
+        private int count = 0;
+        
+        /**
+         * Number of padding characters still expected
+         */
+        private int paddingLeft = 0;
+        
+        /**
+         * Padding was completed, no more characters are allowed
+         */
+        private boolean ended = false;
+        
+        /**
+         * Offset of the next character
+         */
+        private long offset;
+        
+        /**
+         * Reused buffer for the decoded bytes
+         */
+        private byte[] decoded = new byte[0];
+        
+        /**
+         * Reused copy of chunks without accessible array
+         */
+        private byte[] staging = new byte[0];
+
+        /**
+         * Creates a new ChunkDecoder
+         * @param offset Offset failures at the first character are
+         * reported at
+         */
+        public ChunkDecoder(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public ByteBuffer decode(ByteBuffer src) 
+                throws IllegalArgumentException {
+            int length = src.remaining();
+            byte[] in;
+            int start;
+            if (src.hasArray()) {
+                in = src.array();
+                start = src.arrayOffset() + src.position();
+            } else {
+                if (staging.length < length) {
+                    staging = new byte[length];
+                }
+                in = staging;
+                start = 0;
+                src.duplicate().get(in, 0, length);
+            }
+            int capacity = (count + length + 3) / 4 * 3;
+            if (decoded.length < capacity) {
+                decoded = new byte[capacity];
+            }
+            int end = start + length;
+            int pos = 0;
+            int i = start;
+            while (i < end) {
+                if (count == 0 && paddingLeft == 0 && !ended) {
+                    // Fast path for whole groups
+                    while (end - i >= 4) {
+                        int group = value((char) (in[i] & 0xFF)) << 18
+                                | value((char) (in[i + 1] & 0xFF)) << 12
+                                | value((char) (in[i + 2] & 0xFF)) << 6
+                                | value((char) (in[i + 3] & 0xFF));
+                        if (group < 0) {
+                            break;
+                        }
+                        decoded[pos++] = (byte) (group >> 16);
+                        decoded[pos++] = (byte) (group >> 8);
+                        decoded[pos++] = (byte) group;
+                        i += 4;
+                    }
+                    if (i == end) {
+                        break;
+                    }
+                }
+                pos = decode(in[i] & 0xFF, offset + i - start, pos);
+                i++;
+            }
+            offset += length;
+            src.position(src.limit());
+            return ByteBuffer.wrap(decoded, 0, pos);
+        }
+        
+        /**
+         * Decodes a single character
+         * @param c Character
+         * @param index Offset of the character in the payload
+         * @param pos Position in the decoded buffer
+         * @return New position in the decoded buffer
+         * @throws IllegalArgumentException If the character is illegal
+         */
+        private int decode(int c, long index, int pos) 
+                throws IllegalArgumentException {
+            if (c == '=' && !ended) {
+                if (paddingLeft > 0) {
+                    paddingLeft = 0;
+                    ended = true;
+                } else if (count == 2) {
+                    decoded[pos++] = (byte) (bits >> 4);
+                    paddingLeft = 1;
+                } else if (count == 3) {
+                    decoded[pos++] = (byte) (bits >> 10);
+                    decoded[pos++] = (byte) (bits >> 2);
+                    ended = true;
+                } else {
+                    throw new IllegalInputException(
+                            "Illegal Base64 ending at " + index, index);
+                }
+                bits = 0;
+                count = 0;
+                return pos;
+            }
+            int value = value((char) c);
+            if (value == -1 || ended || paddingLeft > 0) {
+                throw new IllegalInputException(
+                        "Illegal Base64 character at " + index, index);
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                decoded[pos++] = (byte) (bits >> 16);
+                decoded[pos++] = (byte) (bits >> 8);
+                decoded[pos++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+            return pos;
+        }
+
+        @Override
+        public ByteBuffer finish() throws IllegalArgumentException {
+            if (paddingLeft > 0 || count == 1) {
+                throw new IllegalInputException(
+                        "Illegal Base64 ending at " + offset, offset);
+            }
+            byte[] rest = new byte[count == 0 ? 0 : count - 1];
+            if (count == 2) {
+                rest[0] = (byte) (bits >> 4);
+            } else if (count == 3) {
+                rest[0] = (byte) (bits >> 10);
+                rest[1] = (byte) (bits >> 2);
+            }
+            bits = 0;
+            count = 0;
+            return ByteBuffer.wrap(rest);
+        }
+        
+    }
+    
+    /**
+     * Encodes a range of bytes, splitting it at 3 byte boundaries until it
+     * fits into {@link #PARALLEL_CHUNK_SIZE}. Only the last chunk can be
+     * padded.
+     *
+     * @author Max Schuster
+     */
+    private static final class EncodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * Bytes to encode
+         */
+        private final byte[] src;
+        
+        /**
+         * Start of the range, inclusive
+         */
+        private final int start;
+        
+        /**
+         * End of the range, exclusive
+         */
+        private final int end;
+        
+        /**
+         * Target buffer or {@code null} if {@link #chars} is used
+         */
+        private final byte[] bytes;
+        
+        /**
+         * Target buffer or {@code null} if {@link #bytes} is used
+         */
+        private final char[] chars;
+        
+        /**
+         * Offset of the range in the target buffer
+         */
+        private final int dstOff;
+
+        public EncodeTask(byte[] src, int start, int end, byte[] bytes, 
+                char[] chars, int dstOff) {
+            this.src = src;
+            this.start = start;
+            this.end = end;
+            this.bytes = bytes;
+            this.chars = chars;
+            this.dstOff = dstOff;
+        }
+
+        @Override
+        protected void compute() {
+            int length = end - start;
+            if (length <= PARALLEL_CHUNK_SIZE) {
+                if (bytes != null) {
+                    encode(src, start, length, bytes, dstOff);
+                } else {
+                    encode(src, start, length, chars, dstOff);
+                }
+                return;
+            }
+            int mid = start + length / 6 * 3;
+            invokeAll(
+                    new EncodeTask(src, start, mid, bytes, chars, dstOff),
+                    new EncodeTask(src, mid, end, bytes, chars, 
+                            dstOff + (mid - start) / 3 * 4));
+        }
+        
+    }
+    
+    /**
+     * Decodes a range of whole 4 character groups, splitting it until it
+     * fits into {@link #PARALLEL_CHUNK_SIZE} bytes. Instead of throwing,
+     * chunks record the lowest offset of an illegal character, so the
+     * reported offset doesn't depend on the scheduling.
+     *
+     * @author Max Schuster
+     */
+    private static final class DecodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * Maximum number of characters of a chunk
+         */
+        private static final int CHUNK_CHARS = PARALLEL_CHUNK_SIZE / 3 * 4;
+        
+        /**
+         * Characters to decode
+         */
+        private final CharSequence src;
+        
+        /**
+         * Start of the range, inclusive
+         */
+        private final int start;
+        
+        /**
+         * End of the range, exclusive
+         */
+        private final int end;
+        
+        /**
+         * Target buffer
+         */
+        private final byte[] dst;
+        
+        /**
+         * Offset of the range in the target buffer
+         */
+        private final int dstOff;
+        
+        /**
+         * Lowest offset of an illegal character or 
+         * {@link Integer#MAX_VALUE}
+         */
+        private final AtomicInteger failure;
+
+        public DecodeTask(CharSequence src, int start, int end, byte[] dst,
+                int dstOff, AtomicInteger failure) {
+            this.src = src;
+            this.start = start;
+            this.end = end;
+            this.dst = dst;
+            this.dstOff = dstOff;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            if (failure.get() < start) {
+                return;
+            }
+            int length = end - start;
+            if (length <= CHUNK_CHARS) {
+                try {
+                    decodeGroups(src, start, end, dst, dstOff);
+                } catch (IllegalArgumentException e) {
+                    int index = start;
+                    while (value(src.charAt(index)) != -1) {
+                        index++;
+                    }
+                    failure.accumulateAndGet(index, Math::min);
+                }
+                return;
+            }
+            int mid = start + length / 8 * 4;
+            invokeAll(
+                    new DecodeTask(src, start, mid, dst, dstOff, failure),
+                    new DecodeTask(src, mid, end, dst, 
+                            dstOff + (mid - start) / 4 * 3, failure));
+        }
+        
+    }
+    
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Collects the whole payload and decodes it at once with a codec that has
+ * no incremental decoder
+ *
+ * @author Max Schuster
+ */
+final class BufferingChunkDecoder implements IDataUrlChunkDecoder {
+
+    /**
+     * Returned while the payload is collected
+     */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /**
+     * Codec of the payload
+     */
+    private final IDataUrlCodec codec;
+
+    /**
+     * Applied charset
+     */
+    private final Charset charset;
+
+    /**
+     * Collected payload
+     */
+    private final ByteArrayOutputStream collected =
+            new ByteArrayOutputStream();
+
+    BufferingChunkDecoder(IDataUrlCodec codec, Charset charset) {
+        this.codec = codec;
+        this.charset = charset;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer src) {
+        if (src.hasArray()) {
+            collected.write(src.array(), src.arrayOffset() + src.position(),
+                    src.remaining());
+            src.position(src.limit());
+        } else {
+            while (src.hasRemaining()) {
+                collected.write(src.get());
+            }
+        }
+        return EMPTY.duplicate();
+    }
+
+    @Override
+    public ByteBuffer finish() throws IllegalArgumentException {
+        String payload = new String(collected.toByteArray(),
+                StandardCharsets.ISO_8859_1);
+        collected.reset();
+        return ByteBuffer.wrap(codec.decode(charset, payload, 0,
+                payload.length()));
+    }
+
+}
@@ -0,0 +1,607 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Decorates an {@link IDataUrlSerializer} with a cache of serialized
+ * data urls and a cache of unserialized data urls. Both caches evict the
+ * least recently used entries once the total number of cached characters
+ * exceeds their limit. As {@link DataUrl}s are immutable, the serialized
+ * {@link String} of a {@link DataUrl} can be reused as long as it is equal.
+ * <p>
+ * Only {@link #serialize(DataUrl)} and {@link #unserialize(String)} fill the
+ * caches. The streaming methods use cached entries, but never add entries,
+ * since they are meant for data urls that are too large to hold in memory.
+ * Serialized data urls are keyed by the SHA-256 digest of the payload, so
+ * cached entries don't keep the payloads reachable.
+ * </p>
+ * @author Max Schuster
+ */
+public class CachingDataUrlSerializer implements IDataUrlSerializer {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Decorated serializer
+     */
+    private final IDataUrlSerializer delegate;
+
+    /**
+     * Maximum number of cached characters of serialized data urls
+     */
+    private final long maxSerializedChars;
+
+    /**
+     * Maximum number of cached characters of unserialized data urls
+     */
+    private final long maxUnserializedChars;
+
+    /**
+     * Serialized data urls by {@link DataUrl}
+     */
+    private final transient LruCache<SerializeKey, String> serializeCache;
+
+    /**
+     * Unserialized data urls by serialized data url
+     */
+    private final transient LruCache<String, DataUrl> unserializeCache;
+
+    /**
+     * Creates a new CachingDataUrlSerializer
+     * @param delegate Decorated serializer
+     * @param maxSerializedChars Maximum number of cached characters of
+     * serialized data urls, {@code 0} disables the cache
+     * @param maxUnserializedChars Maximum number of characters of the
+     * serialized data urls whose {@link DataUrl}s are cached, {@code 0}
+     * disables the cache
+     * @throws NullPointerException if delegate is {@code null}
+     * @throws IllegalArgumentException if a limit is negative
+     */
+    public CachingDataUrlSerializer(IDataUrlSerializer delegate,
+            long maxSerializedChars, long maxUnserializedChars)
+            throws NullPointerException, IllegalArgumentException {
+        if (delegate == null) {
+            throw new NullPointerException("delegate is null!");
+        } else if (maxSerializedChars < 0) {
+            throw new IllegalArgumentException(
+                    "maxSerializedChars is negative!");
+        } else if (maxUnserializedChars < 0) {
+            throw new IllegalArgumentException(
+                    "maxUnserializedChars is negative!");
+        }
+        this.delegate = delegate;
+        this.maxSerializedChars = maxSerializedChars;
+        this.maxUnserializedChars = maxUnserializedChars;
+        this.serializeCache = new LruCache<>(maxSerializedChars);
+        this.unserializeCache = new LruCache<>(maxUnserializedChars);
+    }
+
+    @Override
+    public String serialize(DataUrl dataURL) throws MalformedURLException {
+        SerializeKey key = keyOf(dataURL);
+        String serialized = serializeCache.get(key);
+        if (serialized == null) {
+            serialized = delegate.serialize(dataURL);
+            serializeCache.put(key, serialized, serialized.length());
+        }
+        return serialized;
+    }
+
+    @Override
+    public void serialize(DataUrl dataURL, OutputStream out)
+            throws IOException {
+        String serialized = lookup(dataURL);
+        if (serialized == null) {
+            delegate.serialize(dataURL, out);
+        } else if (out == null) {
+            throw new NullPointerException("out is null!");
+        } else {
+            out.write(serialized.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void serialize(DataUrl dataURL, Appendable out) throws IOException {
+        String serialized = lookup(dataURL);
+        if (serialized == null) {
+            delegate.serialize(dataURL, out);
+        } else if (out == null) {
+            throw new NullPointerException("out is null!");
+        } else {
+            out.append(serialized);
+        }
+    }
+
+    @Override
+    public long computeSerializedLength(DataUrl dataURL)
+            throws MalformedURLException {
+        String serialized = lookup(dataURL);
+        if (serialized == null) {
+            return delegate.computeSerializedLength(dataURL);
+        }
+        return serialized.length();
+    }
+
+    @Override
+    public DataUrl unserialize(String urlString) throws MalformedURLException {
+        DataUrl dataURL = unserializeCache.get(urlString);
+        if (dataURL == null) {
+            dataURL = delegate.unserialize(urlString);
+            unserializeCache.put(urlString, dataURL, urlString.length());
+        }
+        return dataURL;
+    }
+
+    @Override
+    public DataUrl unserialize(CharSequence src, int start, int end)
+            throws MalformedURLException {
+        if (src instanceof String && start == 0 && end == src.length()) {
+            return unserialize((String) src);
+        }
+        return delegate.unserialize(src, start, end);
+    }
+
+    @Override
+    public DataUrl unserialize(ByteBuffer src) throws MalformedURLException {
+        return delegate.unserialize(src);
+    }
+
+    @Override
+    public DataUrl unserialize(InputStream in) throws IOException {
+        return delegate.unserialize(in);
+    }
+
+    @Override
+    public DataUrl unserialize(Reader in) throws IOException {
+        return delegate.unserialize(in);
+    }
+
+    @Override
+    public DataUrlBatchResult<String> serializeAll(
+            Collection<DataUrl> dataURLs) {
+        String[] results = new String[dataURLs.size()];
+        MalformedURLException[] failures =
+                new MalformedURLException[results.length];
+        int i = 0;
+        for (DataUrl dataURL : dataURLs) {
+            try {
+                results[i] = serialize(dataURL);
+            } catch (MalformedURLException e) {
+                failures[i] = e;
+            }
+            i++;
+        }
+        return new DataUrlBatchResult<>(results, failures);
+    }
+
+    @Override
+    public DataUrlBatchResult<String> serializeAll(Stream<DataUrl> dataURLs) {
+        return serializeAll(dataURLs.collect(Collectors.toList()));
+    }
+
+    @Override
+    public DataUrlBatchResult<DataUrl> unserializeAll(
+            List<? extends CharSequence> urlStrings) {
+        DataUrl[] results = new DataUrl[urlStrings.size()];
+        MalformedURLException[] failures =
+                new MalformedURLException[results.length];
+        int i = 0;
+        for (CharSequence urlString : urlStrings) {
+            try {
+                results[i] = unserialize(urlString, 0, urlString.length());
+            } catch (MalformedURLException e) {
+                failures[i] = e;
+            }
+            i++;
+        }
+        return new DataUrlBatchResult<>(results, failures);
+    }
+
+    @Override
+    public DataUrlBatchResult<DataUrl> unserializeAll(
+            Stream<? extends CharSequence> urlStrings) {
+        return unserializeAll(urlStrings.collect(Collectors.toList()));
+    }
+
+    /**
+     * Looks up the serialized data url of the given {@link DataUrl}
+     * @param dataURL {@link DataUrl}
+     * @return Serialized data url or {@code null}
+     * @throws MalformedURLException If a lazily unserialized payload can't
+     * be decoded to compute its digest
+     */
+    private String lookup(DataUrl dataURL) throws MalformedURLException {
+        return serializeCache.get(keyOf(dataURL));
+    }
+
+    /**
+     * Creates the cache key of the given {@link DataUrl}. The payload is
+     * decoded and hashed here, outside of the lock of the cache.
+     * @param dataURL {@link DataUrl}
+     * @return Cache key
+     * @throws MalformedURLException If a lazily unserialized payload can't
+     * be decoded to compute its digest
+     */
+    private static SerializeKey keyOf(DataUrl dataURL) 
+            throws MalformedURLException {
+        try {
+            return new SerializeKey(dataURL);
+        } catch (UncheckedIOException e) {
+            throw (MalformedURLException) e.getCause();
+        }
+    }
+
+    /**
+     * Gets the decorated serializer
+     * @return Decorated serializer
+     */
+    public IDataUrlSerializer getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Gets the statistics of the cache of serialized data urls
+     * @return Snapshot of the statistics
+     */
+    public Statistics getSerializeStatistics() {
+        return serializeCache.getStatistics();
+    }
+
+    /**
+     * Gets the statistics of the cache of unserialized data urls
+     * @return Snapshot of the statistics
+     */
+    public Statistics getUnserializeStatistics() {
+        return unserializeCache.getStatistics();
+    }
+
+    /**
+     * Removes all entries from both caches. The statistics are kept.
+     */
+    public void clear() {
+        serializeCache.clear();
+        unserializeCache.clear();
+    }
+
+    /**
+     * Creates empty caches after deserialization
+     * @return New CachingDataUrlSerializer with the same delegate and limits
+     */
+    private Object readResolve() {
+        return new CachingDataUrlSerializer(delegate, maxSerializedChars,
+                maxUnserializedChars);
+    }
+
+    /**
+     * Snapshot of the statistics of a cache
+     *
+     * @author Max Schuster
+     */
+    public static final class Statistics {
+
+        /**
+         * Number of lookups that found an entry
+         */
+        private final long hits;
+
+        /**
+         * Number of lookups that found no entry
+         */
+        private final long misses;
+
+        /**
+         * Number of entries removed to stay within the limit
+         */
+        private final long evictions;
+
+        /**
+         * Number of cached entries
+         */
+        private final int size;
+
+        /**
+         * Number of cached characters
+         */
+        private final long chars;
+
+        /**
+         * Maximum number of cached characters
+         */
+        private final long maxChars;
+
+        Statistics(long hits, long misses, long evictions, int size,
+                long chars, long maxChars) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.chars = chars;
+            this.maxChars = maxChars;
+        }
+
+        /**
+         * Gets the number of lookups that found an entry
+         * @return Number of hits
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Gets the number of lookups that found no entry
+         * @return Number of misses
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Gets the ratio of hits to lookups
+         * @return Hit ratio between {@code 0} and {@code 1}, {@code 0} if
+         * there was no lookup
+         */
+        public double getHitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        /**
+         * Gets the number of entries removed to stay within the limit
+         * @return Number of evictions
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Gets the number of cached entries
+         * @return Number of entries
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Gets the number of cached characters
+         * @return Number of characters
+         */
+        public long getChars() {
+            return chars;
+        }
+
+        /**
+         * Gets the maximum number of cached characters
+         * @return Maximum number of characters
+         */
+        public long getMaxChars() {
+            return maxChars;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{ "
+                    + "hits = \"" + hits + "\", "
+                    + "misses = \"" + misses + "\", "
+                    + "evictions = \"" + evictions + "\", "
+                    + "size = \"" + size + "\", "
+                    + "chars = \"" + chars + "\", "
+                    + "maxChars = \"" + maxChars + "\" }";
+        }
+
+    }
+
+    /**
+     * Least recently used cache bounded by the total weight of its entries
+     *
+     * @author Max Schuster
+     * @param <K> Type of the keys
+     * @param <V> Type of the values
+     */
+    private static final class LruCache<K, V> {
+
+        /**
+         * Entries in access order
+         */
+        private final LinkedHashMap<K, Entry<V>> entries =
+                new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * Maximum total weight
+         */
+        private final long maxWeight;
+
+        /**
+         * Total weight of the entries
+         */
+        private long weight;
+
+        /**
+         * Number of lookups that found an entry
+         */
+        private long hits;
+
+        /**
+         * Number of lookups that found no entry
+         */
+        private long misses;
+
+        /**
+         * Number of evicted entries
+         */
+        private long evictions;
+
+        public LruCache(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        /**
+         * Gets the value of the given key and marks it as recently used
+         * @param key Key
+         * @return Value or {@code null}
+         */
+        public synchronized V get(K key) {
+            if (maxWeight == 0) {
+                return null;
+            }
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.value;
+        }
+
+        /**
+         * Adds the given value and evicts the least recently used entries
+         * until the total weight fits. Values heavier than the maximum total
+         * weight are not added.
+         * @param key Key
+         * @param value Value
+         * @param valueWeight Weight of the value
+         */
+        public synchronized void put(K key, V value, long valueWeight) {
+            if (valueWeight > maxWeight) {
+                return;
+            }
+            Entry<V> previous = entries.put(key, new Entry<>(value,
+                    valueWeight));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += valueWeight;
+            Iterator<Entry<V>> it = entries.values().iterator();
+            while (weight > maxWeight) {
+                weight -= it.next().weight;
+                it.remove();
+                evictions++;
+            }
+        }
+
+        /**
+         * Removes all entries
+         */
+        public synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+
+        /**
+         * Gets a snapshot of the statistics
+         * @return Statistics
+         */
+        public synchronized Statistics getStatistics() {
+            return new Statistics(hits, misses, evictions, entries.size(),
+                    weight, maxWeight);
+        }
+
+    }
+
+    /**
+     * Key of a serialized {@link DataUrl}. It identifies the payload by its
+     * SHA-256 digest, so lookups don't decode or compare payloads while
+     * holding the lock of the cache and entries don't retain them.
+     */
+    private static final class SerializeKey {
+
+        private final String mimeType;
+
+        private final DataUrlEncoding encoding;
+
+        private final Map<String, String> headers;
+
+        private final byte[] digest;
+
+        private final int hashCode;
+
+        public SerializeKey(DataUrl dataURL) throws UncheckedIOException {
+            this.mimeType = dataURL.getMimeType();
+            this.encoding = dataURL.getEncoding();
+            this.headers = dataURL.getHeaders();
+            this.digest = dataURL.getDigest();
+            int hash = Arrays.hashCode(digest);
+            hash = 97 * hash + (mimeType != null ? mimeType.hashCode() : 0);
+            hash = 97 * hash + (encoding != null ? encoding.hashCode() : 0);
+            hash = 97 * hash + (headers != null ? headers.hashCode() : 0);
+            this.hashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (!(obj instanceof SerializeKey)) {
+                return false;
+            }
+            final SerializeKey other = (SerializeKey) obj;
+            return hashCode == other.hashCode
+                    && encoding == other.encoding
+                    && Objects.equals(mimeType, other.mimeType)
+                    && Objects.equals(headers, other.headers)
+                    && MessageDigest.isEqual(digest, other.digest);
+        }
+
+    }
+
+    /**
+     * Cached value and its weight
+     *
+     * @param <V> Type of the value
+     */
+    private static final class Entry<V> {
+
+        /**
+         * Cached value
+         */
+        private final V value;
+
+        /**
+         * Weight of the value
+         */
+        private final long weight;
+
+        public Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+
+    }
+
+}
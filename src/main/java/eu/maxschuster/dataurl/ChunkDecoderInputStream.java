@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the bytes read from the wrapped {@link InputStream} with an
+ * {@link IDataUrlChunkDecoder}, so a payload that is read is decoded the 
+ * same way as a pushed one. Malformed input is reported as 
+ * {@link IOException} caused by the {@link IllegalArgumentException} of the
+ * decoder.
+ *
+ * @author Max Schuster
+ */
+final class ChunkDecoderInputStream extends FilterInputStream {
+
+    /**
+     * Number of bytes read from the wrapped {@link InputStream} at once
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Decoder of the read bytes
+     */
+    private final IDataUrlChunkDecoder decoder;
+
+    /**
+     * Reused buffer for the read bytes
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Decoded bytes that have not been read yet
+     */
+    private ByteBuffer decoded = ByteBuffer.allocate(0);
+
+    /**
+     * End of the wrapped {@link InputStream} reached
+     */
+    private boolean finished = false;
+
+    ChunkDecoderInputStream(InputStream in, IDataUrlChunkDecoder decoder) {
+        super(in);
+        this.decoder = decoder;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        while (!decoded.hasRemaining()) {
+            if (finished) {
+                return -1;
+            }
+            fill();
+        }
+        int n = Math.min(len, decoded.remaining());
+        decoded.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] b = new byte[(int) Math.min(n, BUFFER_SIZE)];
+        long skipped = 0;
+        int r;
+        while (skipped < n && (r = read(b, 0, 
+                (int) Math.min(n - skipped, b.length))) != -1) {
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return decoded.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads and decodes the next chunk
+     * @throws IOException If reading fails or the chunk can't be decoded
+     */
+    private void fill() throws IOException {
+        int r = in.read(buffer);
+        try {
+            if (r == -1) {
+                finished = true;
+                decoded = decoder.finish();
+            } else {
+                decoded = decoder.decode(ByteBuffer.wrap(buffer, 0, r));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+}
@@ -15,10 +15,26 @@
  */
 package eu.maxschuster.dataurl;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -33,9 +49,58 @@ public final class DataUrl implements Serializable {
     private final static long serialVersionUID = 1L;
     
     /**
-     * Payload of this data url
+     * Version of the binary format of {@link #writeTo(DataOutput)}
      */
-    private final byte[] data;
+    private static final int BINARY_VERSION = 1;
+    
+    /**
+     * Maximum number of headers accepted by {@link #readFrom(DataInput)}
+     */
+    private static final int MAX_BINARY_HEADERS = 65536;
+    
+    /**
+     * Initial buffer size used by {@link #readFrom(DataInput)} to read 
+     * length prefixed bytes
+     */
+    private static final int BINARY_CHUNK_SIZE = 8192;
+    
+    /**
+     * Payload of this data url, {@code null} until a lazily unserialized
+     * payload is decoded or if it is backed by a {@link ByteBuffer}
+     */
+    private volatile byte[] data;
+    
+    /**
+     * Read-only payload of this data url if it is backed by a 
+     * {@link ByteBuffer}, otherwise {@code null}
+     */
+    private final transient ByteBuffer dataBuffer;
+    
+    /**
+     * Undecoded payload, {@code null} if the payload is decoded
+     */
+    private transient EncodedData encodedData;
+    
+    /**
+     * Cached hash code, {@code 0} if not computed yet
+     */
+    private transient int cachedHashCode;
+    
+    /**
+     * Cached SHA-256 digest of the payload, {@code null} if not computed yet
+     */
+    private transient volatile byte[] digest;
+
+    /**
+     * Lazily parsed MIME-Type
+     */
+    private transient MimeType parsedMimeType;
+    
+    /**
+     * Length of the encoded payload or {@code -1}. It isn't part of the
+     * serialized form.
+     */
+    private final transient int encodedLength;
     
     /**
      * Encoding method
@@ -68,14 +133,53 @@ public final class DataUrl implements Serializable {
             throw new NullPointerException("encoding is null!");
         }
         this.data = data;
+        this.dataBuffer = null;
+        this.encodedLength = -1;
         this.encoding = encoding;
         this.mimeType = mimeType;
-        if (headers != null) {
-            this.headers = Collections.unmodifiableMap(
-                    new LinkedHashMap<>(headers));
-        } else {
-            this.headers = Collections.emptyMap();
+        this.headers = HeaderMap.copyOf(headers);
+    }
+    
+    /**
+     * Consturcts a new DataUrl backed by the remaining bytes of the given
+     * {@link ByteBuffer}. The bytes are not copied, so the payload can stay 
+     * in a direct or memory-mapped buffer outside of the Java heap. The
+     * content of the buffer must not be modified afterwards.
+     * @param data Payload of this data url. Must not be {@code null}
+     * @param encoding Encoding method. Must not be {@code null}
+     * @param mimeType MIME-Type of this data urls content
+     * @param headers Headers/parameters of this data url
+     * @throws NullPointerException if data or encoding is {@code null}
+     */
+    public DataUrl(ByteBuffer data, DataUrlEncoding encoding, String mimeType,
+            Map<String, String> headers) throws NullPointerException {
+        if (data == null) {
+            throw new NullPointerException("data is null!");
+        } else if (encoding == null) {
+            throw new NullPointerException("encoding is null!");
         }
+        this.dataBuffer = data.slice().asReadOnlyBuffer();
+        this.encodedLength = -1;
+        this.encoding = encoding;
+        this.mimeType = mimeType;
+        this.headers = HeaderMap.copyOf(headers);
+    }
+    
+    /**
+     * Constructs a new DataUrl whose payload is decoded on first access
+     * @param encodedData Undecoded payload
+     * @param encoding Encoding method
+     * @param mimeType MIME-Type of this data urls content
+     * @param headers Headers/parameters of this data url
+     */
+    DataUrl(EncodedData encodedData, DataUrlEncoding encoding, 
+            String mimeType, Map<String, String> headers) {
+        this.encodedData = encodedData;
+        this.dataBuffer = null;
+        this.encodedLength = encodedData.getEncodedLength();
+        this.encoding = encoding;
+        this.mimeType = mimeType;
+        this.headers = HeaderMap.copyOf(headers);
     }
     
     /**
@@ -113,11 +217,112 @@ public final class DataUrl implements Serializable {
     }
 
     /**
-     * Gets the payload of this data url
+     * Gets the payload of this data url. A lazily unserialized payload is
+     * decoded on the first call. A payload backed by a {@link ByteBuffer} is
+     * copied to a new byte[] on every call, use {@link #getDataBuffer()} to
+     * access it without copying.
      * @return Payload of this data url
+     * @throws UncheckedIOException if a lazily unserialized payload can't
+     * be decoded. The cause is a {@link MalformedURLException}.
+     */
+    public byte[] getData() throws UncheckedIOException {
+        if (dataBuffer != null) {
+            byte[] copy = new byte[dataBuffer.limit()];
+            dataBuffer.duplicate().get(copy);
+            return copy;
+        }
+        byte[] result = data;
+        if (result == null) {
+            synchronized (this) {
+                result = data;
+                if (result == null) {
+                    try {
+                        result = encodedData.decode();
+                    } catch (MalformedURLException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    data = result;
+                    encodedData = null;
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the payload of this data url as read-only {@link ByteBuffer}. Its
+     * position is zero and its limit is the size of the payload. A payload
+     * backed by a {@link ByteBuffer} is not copied, a byte[] payload is
+     * wrapped.
+     * @return New read-only {@link ByteBuffer} of the payload
+     * @throws UncheckedIOException if a lazily unserialized payload can't
+     * be decoded. The cause is a {@link MalformedURLException}.
+     */
+    public ByteBuffer getDataBuffer() throws UncheckedIOException {
+        if (dataBuffer != null) {
+            return dataBuffer.duplicate();
+        }
+        return ByteBuffer.wrap(getData()).asReadOnlyBuffer();
+    }
+    
+    /**
+     * Checks if the payload is backed by a {@link ByteBuffer} instead of a
+     * byte[]
+     * @return {@code true} if the payload is backed by a {@link ByteBuffer}
+     * @see #getDataBuffer()
+     */
+    public boolean hasDataBuffer() {
+        return dataBuffer != null;
+    }
+    
+    /**
+     * Checks if the payload is decoded. Only lazily unserialized data urls
+     * can have an undecoded payload.
+     * @return {@code true} if the payload is decoded
+     */
+    public boolean isDecoded() {
+        return data != null || dataBuffer != null;
+    }
+    
+    /**
+     * Gets the length of the encoded payload this data url was lazily
+     * unserialized from. This doesn't decode the payload.
+     * @return Length of the encoded payload or {@code -1} if it is unknown
+     */
+    public int getEncodedLength() {
+        return encodedLength;
+    }
+    
+    /**
+     * Gets the size of the payload without decoding it. While the payload is
+     * not decoded this is an upper bound, afterwards it is exact.
+     * @return Estimated size of the payload in bytes
+     */
+    public int getDecodedLengthEstimate() {
+        if (dataBuffer != null) {
+            return dataBuffer.limit();
+        }
+        byte[] result = data;
+        if (result != null) {
+            return result.length;
+        }
+        synchronized (this) {
+            if (data != null) {
+                return data.length;
+            }
+            return encodedData.getDecodedLengthEstimate();
+        }
+    }
+
+    /**
+     * Opens an {@link InputStream} to read the payload of this data url
+     * @return New {@link InputStream} of the payload
      */
-    public byte[] getData() {
-        return data;
+    public InputStream openDataStream() {
+        if (dataBuffer != null) {
+            return new ByteBufferInputStream(dataBuffer.duplicate());
+        }
+        return new ByteArrayInputStream(getData());
     }
 
     /**
@@ -128,6 +333,22 @@ public final class DataUrl implements Serializable {
         return mimeType;
     }
 
+    /**
+     * Gets the parsed MIME-Type of this data urls content. Common MIME-Types
+     * are interned.
+     * @return Parsed MIME-Type or {@code null}
+     * @throws IllegalArgumentException if the MIME-Type is not of the form
+     * {@code type/subtype}
+     */
+    public MimeType getParsedMimeType() throws IllegalArgumentException {
+        MimeType parsed = parsedMimeType;
+        if (parsed == null && mimeType != null) {
+            parsed = MimeType.valueOf(mimeType);
+            parsedMimeType = parsed;
+        }
+        return parsed;
+    }
+
     /**
      * Gets the encoding method
      * @return Encoding method
@@ -146,35 +367,88 @@ public final class DataUrl implements Serializable {
 
     @Override
     public int hashCode() {
-        int hash = 3;
-        hash = 97 * hash + Arrays.hashCode(this.data);
-        hash = 97 * hash + (this.mimeType != null ? this.mimeType.hashCode() : 0);
-        hash = 97 * hash + (this.encoding != null ? this.encoding.hashCode() : 0);
-        hash = 97 * hash + (this.headers != null ? this.headers.hashCode() : 0);
+        int hash = cachedHashCode;
+        if (hash == 0) {
+            hash = 3;
+            hash = 97 * hash + dataHashCode();
+            hash = 97 * hash + (this.mimeType != null ? this.mimeType.hashCode() : 0);
+            hash = 97 * hash + (this.encoding != null ? this.encoding.hashCode() : 0);
+            hash = 97 * hash + (this.headers != null ? this.headers.hashCode() : 0);
+            cachedHashCode = hash;
+        }
         return hash;
     }
 
+    /**
+     * Compares the cheap fields first. The payloads are only compared if
+     * the sizes of decoded payloads, cached hash codes and computed digests
+     * don't already tell them apart.
+     * @param obj Other object
+     * @return {@code true} if the given object is an equal {@link DataUrl}
+     */
     @Override
     public boolean equals(Object obj) {
-        if (obj == null) {
+        if (obj == this) {
+            return true;
+        } else if (obj == null) {
             return false;
         }
         if (getClass() != obj.getClass()) {
             return false;
         }
         final DataUrl other = (DataUrl) obj;
-        if (!Arrays.equals(this.data, other.data)) {
+        if (this.encoding != other.encoding) {
             return false;
         } else if ((this.mimeType == null) ? (other.mimeType != null) : 
                 !this.mimeType.equals(other.mimeType)) {
             return false;
-        } else if (this.encoding != other.encoding) {
-            return false;
         } else if (this.headers != other.headers && (this.headers == null || 
                 !this.headers.equals(other.headers))) {
             return false;
+        } else if (isDecoded() && other.isDecoded() 
+                && getDecodedLengthEstimate() 
+                        != other.getDecodedLengthEstimate()) {
+            return false;
+        } else if (cachedHashCode != 0 && other.cachedHashCode != 0 
+                && cachedHashCode != other.cachedHashCode) {
+            return false;
+        }
+        byte[] thisDigest = digest;
+        byte[] otherDigest = other.digest;
+        if (thisDigest != null && otherDigest != null 
+                && !MessageDigest.isEqual(thisDigest, otherDigest)) {
+            return false;
         }
-        return true;
+        return dataEquals(other);
+    }
+    
+    /**
+     * Gets the SHA-256 digest of the payload. It is computed on the first
+     * call and cached. Equal payloads have equal digests, so it can be used
+     * to find identical payloads without comparing them byte by byte.
+     * @return New copy of the 32 byte SHA-256 digest
+     * @throws UncheckedIOException if a lazily unserialized payload can't
+     * be decoded. The cause is a {@link MalformedURLException}.
+     */
+    public byte[] getDigest() throws UncheckedIOException {
+        byte[] result = digest;
+        if (result == null) {
+            MessageDigest sha256;
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+            if (dataBuffer != null) {
+                sha256.update(dataBuffer.duplicate());
+            } else {
+                sha256.update(getData());
+            }
+            result = sha256.digest();
+            digest = result;
+        }
+        return result.clone();
     }
 
     @Override
@@ -183,9 +457,350 @@ public final class DataUrl implements Serializable {
                 + "mimeType = \"" + mimeType + "\", "
                 + "encoding = \"" + encoding + "\", "
                 + "headers = \"" + headers + "\", "
-                + "data.length = \"" + data.length + " bytes\" }";
+                + "data.length = \"" + (isDecoded() 
+                        ? getDecodedLengthEstimate() + " bytes\" }" 
+                        : "not decoded\" }");
+    }
+    
+    /**
+     * Computes the hash code of the payload like 
+     * {@link Arrays#hashCode(byte[])}, without copying a payload backed by a
+     * {@link ByteBuffer}
+     * @return Hash code of the payload
+     */
+    private int dataHashCode() {
+        if (dataBuffer == null) {
+            return Arrays.hashCode(getData());
+        }
+        int hash = 1;
+        for (int i = 0, n = dataBuffer.limit(); i < n; i++) {
+            hash = 31 * hash + dataBuffer.get(i);
+        }
+        return hash;
+    }
+    
+    /**
+     * Compares the payloads of this and the given data url, without copying
+     * payloads backed by a {@link ByteBuffer}
+     * @param other Other data url
+     * @return {@code true} if the payloads are equal
+     */
+    private boolean dataEquals(DataUrl other) {
+        if (dataBuffer == null && other.dataBuffer == null) {
+            return Arrays.equals(getData(), other.getData());
+        }
+        return getDataBuffer().equals(other.getDataBuffer());
+    }
+    
+    /**
+     * Writes this data url in a compact binary format. After a version byte
+     * the encoding, MIME-Type and headers are written as UTF-8 strings with
+     * a varint length prefix, followed by the varint length of the payload
+     * and the raw payload. The payload is not encoded, so the format is
+     * smaller than the serialized data url and fast to read back with 
+     * {@link #readFrom(DataInput)}.
+     * @param out Target
+     * @throws IOException If writing fails or a lazily unserialized payload
+     * can't be decoded
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(BINARY_VERSION);
+        writeString(out, encoding.getEncodingName());
+        if (mimeType == null) {
+            writeVarint(out, 0);
+        } else {
+            writeVarint(out, 1);
+            writeString(out, mimeType);
+        }
+        writeVarint(out, headers.size());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            writeString(out, header.getKey());
+            writeString(out, header.getValue());
+        }
+        if (dataBuffer != null) {
+            ByteBuffer payload = dataBuffer.duplicate();
+            writeVarint(out, payload.remaining());
+            byte[] block = new byte[8192];
+            while (payload.hasRemaining()) {
+                int n = Math.min(block.length, payload.remaining());
+                payload.get(block, 0, n);
+                out.write(block, 0, n);
+            }
+        } else {
+            byte[] payload;
+            try {
+                payload = getData();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writeVarint(out, payload.length);
+            out.write(payload);
+        }
+    }
+    
+    /**
+     * Reads a data url written by {@link #writeTo(DataOutput)}. Length 
+     * prefixes are not trusted: buffers grow only as far as bytes are 
+     * actually read.
+     * @param in Source
+     * @return Read data url
+     * @throws IOException If reading fails
+     * @throws StreamCorruptedException If the read data is no valid data url,
+     * e.g. because it is truncated
+     */
+    public static DataUrl readFrom(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != BINARY_VERSION) {
+            throw new StreamCorruptedException("Unsupported version " 
+                    + version);
+        }
+        DataUrlEncoding encoding;
+        try {
+            encoding = DataUrlEncoding.valueOfEncodingName(readString(in));
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException("Unknown encoding");
+        }
+        String mimeType = readVarint(in) != 0 ? readString(in) : null;
+        int headerCount = readVarint(in);
+        if (headerCount > MAX_BINARY_HEADERS) {
+            throw new StreamCorruptedException("Too many headers " 
+                    + headerCount);
+        }
+        HeaderMap.Builder headers = new HeaderMap.Builder();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(readString(in), readString(in));
+        }
+        byte[] payload = readBytes(in, readVarint(in));
+        return new DataUrl(payload, encoding, mimeType, headers.build());
+    }
+    
+    /**
+     * Writes an unsigned varint
+     * @param out Target
+     * @param value Non-negative value
+     * @throws IOException If writing fails
+     */
+    private static void writeVarint(DataOutput out, int value) 
+            throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    /**
+     * Reads an unsigned varint
+     * @param in Source
+     * @return Non-negative value
+     * @throws IOException If reading fails
+     * @throws StreamCorruptedException If the varint is longer than 5 bytes
+     * or exceeds {@link Integer#MAX_VALUE}
+     */
+    private static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+    
+    /**
+     * Writes a UTF-8 string with a varint length prefix
+     * @param out Target
+     * @param s String
+     * @throws IOException If writing fails
+     */
+    private static void writeString(DataOutput out, String s) 
+            throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
     }
     
+    /**
+     * Reads a UTF-8 string with a varint length prefix
+     * @param in Source
+     * @return String
+     * @throws IOException If reading fails
+     */
+    private static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in, readVarint(in)), 
+                StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Reads the given number of bytes. The buffer starts at 
+     * {@link #BINARY_CHUNK_SIZE} and doubles while bytes are read, so a 
+     * corrupt length can't allocate more than twice the remaining input.
+     * @param in Source
+     * @param length Number of bytes
+     * @return Read bytes
+     * @throws IOException If reading fails
+     * @throws StreamCorruptedException If the input ends early
+     */
+    private static byte[] readBytes(DataInput in, int length) 
+            throws IOException {
+        byte[] bytes = new byte[Math.min(length, BINARY_CHUNK_SIZE)];
+        int read = 0;
+        try {
+            while (read < length) {
+                if (read == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, 
+                            (int) Math.min(length, 2L * bytes.length));
+                }
+                in.readFully(bytes, read, bytes.length - read);
+                read = bytes.length;
+            }
+        } catch (EOFException e) {
+            throw new StreamCorruptedException("Length " + length 
+                    + " exceeds the remaining input");
+        }
+        return bytes;
+    }
+    
+    /**
+     * Replaces this data url by a {@link SerializedForm} that uses the
+     * binary format of {@link #writeTo(DataOutput)}
+     * @return Serialized form
+     */
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+    
+    /**
+     * Recreates a data url read from a stream that was written before the
+     * {@link SerializedForm} was introduced. Otherwise the fields missing 
+     * in those streams would keep their default values.
+     * @return Recreated data url
+     * @throws ObjectStreamException if the payload or encoding is missing
+     */
+    private Object readResolve() throws ObjectStreamException {
+        if (data == null || encoding == null) {
+            throw new InvalidObjectException("data or encoding is null!");
+        }
+        return new DataUrl(data, encoding, mimeType, headers);
+    }
+    
+    /**
+     * Serialized form of a {@link DataUrl}, written in the binary format of
+     * {@link DataUrl#writeTo(DataOutput)}
+     */
+    private static final class SerializedForm implements Externalizable {
+
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * Written or read data url
+         */
+        private DataUrl dataUrl;
+
+        /**
+         * Creates an empty SerializedForm to read a data url into
+         */
+        public SerializedForm() {
+        }
+
+        public SerializedForm(DataUrl dataUrl) {
+            this.dataUrl = dataUrl;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            dataUrl.writeTo(out);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            dataUrl = readFrom(in);
+        }
+        
+        /**
+         * Resolves the read data url
+         * @return Read data url
+         */
+        private Object readResolve() {
+            return dataUrl;
+        }
+        
+    }
+    
+    /**
+     * Undecoded payload of a lazily unserialized data url
+     */
+    interface EncodedData {
+        
+        /**
+         * Decodes the payload
+         * @return Decoded payload
+         * @throws MalformedURLException If the payload can't be decoded
+         */
+        public byte[] decode() throws MalformedURLException;
+        
+        /**
+         * Gets the length of the encoded payload
+         * @return Length of the encoded payload
+         */
+        public int getEncodedLength();
+        
+        /**
+         * Gets an upper bound of the size of the decoded payload
+         * @return Estimated size of the decoded payload in bytes
+         */
+        public int getDecodedLengthEstimate();
+        
+    }
     
+    /**
+     * Reads a payload backed by a {@link ByteBuffer}
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        
+        /**
+         * Remaining payload
+         */
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.remaining();
+        }
+        
+    }
     
 }
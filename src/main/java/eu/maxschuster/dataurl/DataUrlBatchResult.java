@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Result of a batch serialization or unserialization. Holds a result for
+ * each item of the batch in its original order and the failures of the
+ * items that could not be processed.
+ * @author Max Schuster
+ * @param <T> Type of the results
+ */
+public final class DataUrlBatchResult<T> {
+    
+    /**
+     * Results by index, {@code null} for failed items
+     */
+    private final List<T> results;
+    
+    /**
+     * Failures by index
+     */
+    private final SortedMap<Integer, MalformedURLException> failures;
+
+    /**
+     * Creates a new DataUrlBatchResult
+     * @param results Results by index, {@code null} for failed items
+     * @param failures Failures by index, {@code null} for successful items
+     */
+    DataUrlBatchResult(T[] results, MalformedURLException[] failures) {
+        this.results = Collections.unmodifiableList(Arrays.asList(results));
+        TreeMap<Integer, MalformedURLException> failureMap = new TreeMap<>();
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] != null) {
+                failureMap.put(i, failures[i]);
+            }
+        }
+        this.failures = Collections.unmodifiableSortedMap(failureMap);
+    }
+    
+    /**
+     * Gets the number of items in the batch
+     * @return Number of items
+     */
+    public int size() {
+        return results.size();
+    }
+    
+    /**
+     * Gets the result of the item at the given index
+     * @param index Index of the item
+     * @return Result or {@code null} if the item failed
+     * @throws IndexOutOfBoundsException If the index is out of bounds
+     */
+    public T get(int index) throws IndexOutOfBoundsException {
+        return results.get(index);
+    }
+    
+    /**
+     * Gets the results of all items in their original order
+     * @return Unmodifiable {@link List} of the results, {@code null} for
+     * failed items
+     */
+    public List<T> getResults() {
+        return results;
+    }
+    
+    /**
+     * Checks if all items were processed successfully
+     * @return {@code true} if no item failed
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+    
+    /**
+     * Gets the failure of the item at the given index
+     * @param index Index of the item
+     * @return Failure or {@code null} if the item was processed successfully
+     */
+    public MalformedURLException getFailure(int index) {
+        return failures.get(index);
+    }
+    
+    /**
+     * Gets the failures of all failed items
+     * @return Unmodifiable {@link SortedMap} of the failures by index
+     */
+    public SortedMap<Integer, MalformedURLException> getFailures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return "DataUrlBatchResult{ "
+                + "size = \"" + results.size() + "\", "
+                + "failures = \"" + failures.keySet() + "\" }";
+    }
+    
+}
@@ -15,8 +15,13 @@
  */
 package eu.maxschuster.dataurl;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -31,6 +36,11 @@ public class DataUrlBuilder implements Serializable {
      * Payload of this data url
      */
     private byte[] data;
+    
+    /**
+     * Payload of this data url backed by a {@link ByteBuffer}
+     */
+    private transient ByteBuffer dataBuffer;
 
     /**
      * MIME-Type of this data urls content
@@ -53,11 +63,14 @@ public class DataUrlBuilder implements Serializable {
      * @throws NullPointerException if data or encoding is {@code null}
      */
     public DataUrl build() throws NullPointerException {
-        if (data == null) {
+        if (data == null && dataBuffer == null) {
             throw new NullPointerException("data is null!");
         } else if (encoding == null) {
             throw new NullPointerException("encoding is null!");
         }
+        if (dataBuffer != null) {
+            return new DataUrl(dataBuffer, encoding, mimeType, headers);
+        }
         return new DataUrl(data, encoding, mimeType, headers);
     }
 
@@ -76,9 +89,71 @@ public class DataUrlBuilder implements Serializable {
      */
     public DataUrlBuilder setData(byte[] data) {
         this.data = data;
+        this.dataBuffer = null;
+        return this;
+    }
+    
+    /**
+     * Gets the payload of the data url backed by a {@link ByteBuffer}
+     * @return Payload of the data url or {@code null} if it isn't backed by
+     * a {@link ByteBuffer}
+     */
+    public ByteBuffer getDataBuffer() {
+        return dataBuffer;
+    }
+    
+    /**
+     * Sets the payload of the data url to the remaining bytes of the given
+     * {@link ByteBuffer}. The bytes are not copied.
+     * @param data Payload of the data url
+     * @return This {@link DataUrlBuilder} instance
+     * @see DataUrl#DataUrl(ByteBuffer, DataUrlEncoding, String, Map)
+     */
+    public DataUrlBuilder setData(ByteBuffer data) {
+        this.dataBuffer = data;
+        this.data = null;
         return this;
     }
 
+    /**
+     * Sets the payload of the data url to the content of the given file. The
+     * file is memory-mapped read-only, so its content is not copied to the
+     * heap. The mapping stays valid until the built {@link DataUrl}s are
+     * garbage collected, the file must not be modified in the meantime.
+     * @param file File to map
+     * @return This {@link DataUrlBuilder} instance
+     * @throws IOException If the file can't be mapped or is larger than
+     * {@link Integer#MAX_VALUE} bytes
+     */
+    public DataUrlBuilder setData(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, 
+                StandardOpenOption.READ)) {
+            return setData(channel);
+        }
+    }
+    
+    /**
+     * Sets the payload of the data url to the content of the given 
+     * {@link FileChannel} from its current position to its end. The content
+     * is memory-mapped read-only, so it is not copied to the heap. The
+     * position of the channel is not changed and the channel may be closed 
+     * afterwards.
+     * @param channel {@link FileChannel} to map
+     * @return This {@link DataUrlBuilder} instance
+     * @throws IOException If the channel can't be mapped or more than
+     * {@link Integer#MAX_VALUE} bytes remain
+     */
+    public DataUrlBuilder setData(FileChannel channel) throws IOException {
+        long position = channel.position();
+        long size = Math.max(0, channel.size() - position);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File is too large to map: " + size 
+                    + " bytes");
+        }
+        return setData(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                size));
+    }
+
     /**
      * Gets the MIME-Type of the data urls content
      * @return MIME-Type of the data urls content
@@ -124,24 +199,26 @@ public class DataUrlBuilder implements Serializable {
     }
 
     /**
-     * Set the headers/parameters of the data url
+     * Set the headers/parameters of the data url. The given map is copied,
+     * its iteration order is kept.
      * @param headers Headers/parameters of the data url
      * @return This {@link DataUrlBuilder} instance
      */
     public DataUrlBuilder setHeaders(Map<String, String> headers) {
-        this.headers = headers;
+        this.headers = headers != null ? new LinkedHashMap<>(headers) : null;
         return this;
     }
     
     /**
-     * Shorthand to set a header/parameter
+     * Shorthand to set a header/parameter. Headers/parameters keep the
+     * order they are set in.
      * @param name Name of the header/parameter
      * @param value Value of the header/parameter
      * @return This {@link DataUrlBuilder} instance
      */
     public DataUrlBuilder setHeader(String name, String value) {
         if (headers == null) {
-            headers = new HashMap<>();
+            headers = new LinkedHashMap<>();
         }
         headers.put(name, value);
         return this;
@@ -164,7 +241,11 @@ public class DataUrlBuilder implements Serializable {
      * @return This {@link DataUrlBuilder} instance
      */
     public DataUrlBuilder setDataUrl(DataUrl template) {
-        setData(template.getData());
+        if (template.hasDataBuffer()) {
+            setData(template.getDataBuffer());
+        } else {
+            setData(template.getData());
+        }
         setEncoding(template.getEncoding());
         setHeaders(template.getHeaders());
         setMimeType(template.getMimeType());
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves {@link IDataUrlCodec}s by the name of their encoding. A new
+ * registry contains the built-in {@link Base64Codec} and
+ * {@link URLEncodedCodec}. Registering a codec replaces the codec with the
+ * same encoding name. Only the encodings of {@link DataUrlEncoding} can 
+ * appear in a header, so codecs can replace the built-in ones but can't add 
+ * new encodings.
+ * @author Max Schuster
+ */
+public class DataUrlCodecRegistry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Registered codecs by the name of their encoding
+     */
+    private final Map<String, IDataUrlCodec> codecs = 
+            new ConcurrentHashMap<>();
+    
+    /**
+     * Rejects changes if {@code true}
+     */
+    private boolean unmodifiable;
+
+    /**
+     * Constructs a new DataUrlCodecRegistry with the built-in codecs
+     */
+    public DataUrlCodecRegistry() {
+        register(new Base64Codec());
+        register(new URLEncodedCodec());
+    }
+    
+    /**
+     * Constructs a new DataUrlCodecRegistry with the codecs of the given
+     * registry. Use it to customize the {@link #getDefault()} registry.
+     * @param registry Registry to copy
+     * @throws NullPointerException if registry is {@code null}
+     */
+    public DataUrlCodecRegistry(DataUrlCodecRegistry registry) 
+            throws NullPointerException {
+        if (registry == null) {
+            throw new NullPointerException("registry is null!");
+        }
+        codecs.putAll(registry.codecs);
+    }
+    
+    /**
+     * Gets the shared unmodifiable registry with the built-in codecs and the
+     * codecs provided as {@link ServiceLoader} services by the context class
+     * loader
+     * @return Shared registry
+     * @see #DataUrlCodecRegistry(DataUrlCodecRegistry)
+     */
+    public static DataUrlCodecRegistry getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+    
+    /**
+     * Registers the given codec. It replaces the codec with the same encoding
+     * name.
+     * @param codec Codec to register
+     * @return This {@link DataUrlCodecRegistry} instance
+     * @throws NullPointerException if codec is {@code null}
+     * @throws IllegalArgumentException if the encoding name of the codec 
+     * can't appear in a header
+     * @throws UnsupportedOperationException if this is the 
+     * {@link #getDefault()} registry
+     */
+    public DataUrlCodecRegistry register(IDataUrlCodec codec) 
+            throws NullPointerException, IllegalArgumentException,
+            UnsupportedOperationException {
+        if (codec == null) {
+            throw new NullPointerException("codec is null!");
+        }
+        checkModifiable();
+        String encodingName = codec.getEncodingName();
+        try {
+            DataUrlEncoding.valueOfEncodingName(encodingName);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Encoding \"" + encodingName 
+                    + "\" can't appear in a data url header", e);
+        }
+        codecs.put(encodingName, codec);
+        return this;
+    }
+    
+    /**
+     * Registers all codecs provided as {@link ServiceLoader} services of
+     * {@link IDataUrlCodec} by the given class loader
+     * @param classLoader Class loader or {@code null} for the system class
+     * loader
+     * @return This {@link DataUrlCodecRegistry} instance
+     * @throws IllegalArgumentException if the encoding name of a codec 
+     * can't appear in a header
+     * @throws UnsupportedOperationException if this is the 
+     * {@link #getDefault()} registry
+     */
+    public DataUrlCodecRegistry registerServices(ClassLoader classLoader) 
+            throws IllegalArgumentException, UnsupportedOperationException {
+        checkModifiable();
+        for (IDataUrlCodec codec 
+                : ServiceLoader.load(IDataUrlCodec.class, classLoader)) {
+            register(codec);
+        }
+        return this;
+    }
+    
+    /**
+     * Gets the codec of the given encoding
+     * @param encodingName Name of the encoding in a data url
+     * @return Matching codec or {@code null}
+     */
+    public IDataUrlCodec getCodec(String encodingName) {
+        return codecs.get(encodingName);
+    }
+    
+    /**
+     * Gets the codec of the given encoding
+     * @param encoding Encoding
+     * @return Matching codec or {@code null}
+     */
+    public IDataUrlCodec getCodec(DataUrlEncoding encoding) {
+        return codecs.get(encoding.getEncodingName());
+    }
+    
+    /**
+     * Throws if this registry is unmodifiable
+     * @throws UnsupportedOperationException if this registry is unmodifiable
+     */
+    private void checkModifiable() throws UnsupportedOperationException {
+        if (unmodifiable) {
+            throw new UnsupportedOperationException(
+                    "The default registry is unmodifiable!");
+        }
+    }
+    
+    /**
+     * Lazily creates the shared registry
+     */
+    private static class DefaultHolder {
+        
+        private static final DataUrlCodecRegistry INSTANCE = create();
+        
+        private static DataUrlCodecRegistry create() {
+            DataUrlCodecRegistry registry = new DataUrlCodecRegistry()
+                    .registerServices(
+                            Thread.currentThread().getContextClassLoader());
+            registry.unmodifiable = true;
+            return registry;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Provides the decoded payload of a data url read from an
+ * {@link InputStream}. The header is already parsed when an instance is
+ * created, so the payload can be rejected before it is read.
+ * @author Max Schuster
+ * @see DataUrlSerializer#openStream(java.io.InputStream)
+ */
+public class DataUrlInputStream extends FilterInputStream {
+    
+    /**
+     * Size of the buffer used by {@link #readDataUrl()}
+     */
+    private static final int BUFFER_SIZE = 8192;
+    
+    /**
+     * Encoded source
+     */
+    private final SourceInputStream source;
+    
+    /**
+     * Encoding method
+     */
+    private final DataUrlEncoding encoding;
+
+    /**
+     * MIME-Type of this data urls content
+     */
+    private final String mimeType;
+
+    /**
+     * Headers/parameters of this data url
+     */
+    private final Map<String, String> headers;
+    
+    /**
+     * Resource limits
+     */
+    private final DataUrlLimits limits;
+    
+    /**
+     * Offset of the payload in the data url
+     */
+    private final long payloadOffset;
+    
+    /**
+     * Number of decoded bytes read so far
+     */
+    private long decodedSize = 0;
+
+    /**
+     * Constructs a new DataUrlInputStream
+     * @param source Encoded source positioned behind the comma
+     * @param codec Codec of the payload
+     * @param charset Applied charset
+     * @param encoding Encoding method
+     * @param mimeType MIME-Type of this data urls content
+     * @param headers Headers/parameters of this data url
+     * @param limits Resource limits
+     * @param headerLength Number of characters read up to and including the
+     * comma
+     */
+    DataUrlInputStream(InputStream source, IDataUrlCodec codec,
+            Charset charset, DataUrlEncoding encoding, String mimeType, 
+            Map<String, String> headers, DataUrlLimits limits, 
+            long headerLength) {
+        super(new SourceInputStream(source, limits, headerLength));
+        this.source = (SourceInputStream) in;
+        this.in = codec.wrap(charset, this.source);
+        this.encoding = encoding;
+        this.mimeType = mimeType;
+        this.headers = headers;
+        this.limits = limits;
+        this.payloadOffset = headerLength;
+    }
+
+    /**
+     * Gets the MIME-Type of this data urls content.
+     * @return MIME-Type of this data urls content or {@code null}.
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Gets the encoding method
+     * @return Encoding method
+     */
+    public DataUrlEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Gets the headers/parameters of this data url
+     * @return Headers/parameters of this data url
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+    
+    /**
+     * Gets the number of characters read from the source so far, including
+     * the header
+     * @return Number of characters
+     */
+    long getEncodedLength() {
+        return source.encodedLength;
+    }
+    
+    /**
+     * Reads the remaining payload and creates a {@link DataUrl} of it. This
+     * stream is not closed.
+     * @return New {@link DataUrl} instance
+     * @throws MalformedURLException If the payload can't be decoded
+     * @throws IOException If reading fails
+     */
+    public DataUrl readDataUrl() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int r;
+        while ((r = read(buffer)) != -1) {
+            os.write(buffer, 0, r);
+        }
+        return new DataUrl(os.toByteArray(), encoding, mimeType, headers);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b;
+        try {
+            b = super.read();
+        } catch (IOException e) {
+            throw translate(e);
+        }
+        if (b != -1) {
+            limits.checkDecodedSize(++decodedSize);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n;
+        try {
+            n = super.read(b, off, len);
+        } catch (IOException e) {
+            throw translate(e);
+        }
+        if (n > 0) {
+            decodedSize += n;
+            limits.checkDecodedSize(decodedSize);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped;
+        try {
+            skipped = super.skip(n);
+        } catch (IOException e) {
+            throw translate(e);
+        }
+        decodedSize += skipped;
+        limits.checkDecodedSize(decodedSize);
+        return skipped;
+    }
+    
+    /**
+     * Decoding errors are reported as {@link DataUrlParseException}, errors
+     * of the source are passed as they are. Failures of the built-in codecs
+     * are reported at the offending character, others at the number of 
+     * characters read so far.
+     * @param e Catched {@link IOException}
+     * @return {@link IOException} to throw
+     */
+    private IOException translate(IOException e) {
+        if (e == source.failure || e instanceof DataUrlParseException) {
+            return e;
+        }
+        // Chunk decoders count from the start of the payload
+        long offset = e.getCause() instanceof IllegalInputException
+                ? payloadOffset 
+                        + ((IllegalInputException) e.getCause()).getIndex()
+                : source.encodedLength;
+        DataUrlParseException malformed = new DataUrlParseException(
+                e.getMessage(), DataUrlParseException.Phase.PAYLOAD,
+                DataUrlParseException.Reason.MALFORMED_PAYLOAD, offset);
+        malformed.initCause(e);
+        return malformed;
+    }
+    
+    /**
+     * Remembers the last failure of the wrapped {@link InputStream} and
+     * enforces the maximum encoded length
+     * 
+     * @author Max Schuster
+     */
+    private static class SourceInputStream extends FilterInputStream {
+        
+        /**
+         * Resource limits
+         */
+        private final DataUrlLimits limits;
+        
+        /**
+         * Number of characters read so far, including the header
+         */
+        private long encodedLength;
+        
+        /**
+         * Last failure of the wrapped {@link InputStream}
+         */
+        private IOException failure;
+
+        public SourceInputStream(InputStream in, DataUrlLimits limits,
+                long headerLength) {
+            super(in);
+            this.limits = limits;
+            this.encodedLength = headerLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            if (b != -1) {
+                limits.checkEncodedLength(++encodedLength,
+                        DataUrlParseException.Phase.PAYLOAD);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = super.read(b, off, len);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            if (n > 0) {
+                encodedLength += n;
+                limits.checkEncodedLength(encodedLength,
+                        DataUrlParseException.Phase.PAYLOAD);
+            }
+            return n;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import eu.maxschuster.dataurl.DataUrlParseException.Phase;
+import eu.maxschuster.dataurl.DataUrlParseException.Reason;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Resource limits a {@link DataUrlSerializer} enforces while it
+ * unserializes. The limits are checked while the header is scanned and
+ * before or while the payload is decoded, so hostile input is rejected
+ * before big buffers are allocated. Violations are reported as
+ * {@link DataUrlParseException}.
+ *
+ * @author Max Schuster
+ * @see DataUrlSerializer#setLimits(DataUrlLimits)
+ */
+public final class DataUrlLimits implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * No limits at all
+     */
+    public static final DataUrlLimits UNLIMITED = new Builder().build();
+
+    /**
+     * Maximum length of the whole data url in characters, {@code -1} if
+     * unlimited
+     */
+    private final long maxEncodedLength;
+
+    /**
+     * Maximum size of the decoded payload in bytes, {@code -1} if unlimited
+     */
+    private final long maxDecodedSize;
+
+    /**
+     * Maximum number of headers/parameters, {@code -1} if unlimited
+     */
+    private final int maxParameterCount;
+
+    /**
+     * Maximum length of a {@code name=value} field in characters,
+     * {@code -1} if unlimited
+     */
+    private final int maxParameterLength;
+
+    /**
+     * Allowed lower case MIME-Types, {@code null} if all are allowed
+     */
+    private final Set<String> allowedMimeTypes;
+
+    private DataUrlLimits(Builder builder) {
+        this.maxEncodedLength = builder.maxEncodedLength;
+        this.maxDecodedSize = builder.maxDecodedSize;
+        this.maxParameterCount = builder.maxParameterCount;
+        this.maxParameterLength = builder.maxParameterLength;
+        this.allowedMimeTypes = builder.allowedMimeTypes == null ? null
+                : Collections.unmodifiableSet(
+                        new HashSet<>(builder.allowedMimeTypes));
+    }
+
+    /**
+     * Gets the maximum length of the whole data url
+     * @return Length in characters, {@code -1} if unlimited
+     */
+    public long getMaxEncodedLength() {
+        return maxEncodedLength;
+    }
+
+    /**
+     * Gets the maximum size of the decoded payload
+     * @return Size in bytes, {@code -1} if unlimited
+     */
+    public long getMaxDecodedSize() {
+        return maxDecodedSize;
+    }
+
+    /**
+     * Gets the maximum number of headers/parameters
+     * @return Number of headers/parameters, {@code -1} if unlimited
+     */
+    public int getMaxParameterCount() {
+        return maxParameterCount;
+    }
+
+    /**
+     * Gets the maximum length of a {@code name=value} field
+     * @return Length in characters, {@code -1} if unlimited
+     */
+    public int getMaxParameterLength() {
+        return maxParameterLength;
+    }
+
+    /**
+     * Gets the allowed MIME-Types. A data url without MIME-Type is treated
+     * as {@code text/plain}.
+     * @return Lower case MIME-Types, {@code null} if all are allowed
+     */
+    public Set<String> getAllowedMimeTypes() {
+        return allowedMimeTypes;
+    }
+
+    /**
+     * Checks if the given length exceeds the maximum length of the whole
+     * data url
+     * @param length Length in characters
+     * @return {@code true} if the length exceeds the limit
+     */
+    boolean exceedsEncodedLength(long length) {
+        return maxEncodedLength != -1 && length > maxEncodedLength;
+    }
+
+    /**
+     * Checks the length of the whole data url
+     * @param length Length in characters
+     * @param phase Part of the data url that reaches the limit
+     * @throws DataUrlParseException If the length exceeds the limit
+     */
+    void checkEncodedLength(long length, Phase phase)
+            throws DataUrlParseException {
+        if (exceedsEncodedLength(length)) {
+            throw new DataUrlParseException("Data url exceeds "
+                    + maxEncodedLength + " characters", phase,
+                    Reason.ENCODED_LENGTH_EXCEEDED, maxEncodedLength);
+        }
+    }
+
+    /**
+     * Checks if the given size exceeds the maximum size of the decoded
+     * payload
+     * @param size Size in bytes
+     * @return {@code true} if the size exceeds the limit
+     */
+    boolean exceedsDecodedSize(long size) {
+        return maxDecodedSize != -1 && size > maxDecodedSize;
+    }
+
+    /**
+     * Checks the size of the decoded payload
+     * @param size Size in bytes
+     * @throws DataUrlParseException If the size exceeds the limit
+     */
+    void checkDecodedSize(long size) throws DataUrlParseException {
+        if (exceedsDecodedSize(size)) {
+            throw new DataUrlParseException("Payload exceeds "
+                    + maxDecodedSize + " bytes", Phase.PAYLOAD,
+                    Reason.DECODED_SIZE_EXCEEDED, -1);
+        }
+    }
+
+    /**
+     * Checks a {@code name=value} field
+     * @param index Zero based index of the field
+     * @param length Length of the field in characters
+     * @param offset Offset of the field in the data url
+     * @throws DataUrlParseException If a limit is exceeded
+     */
+    void checkParameter(int index, int length, long offset)
+            throws DataUrlParseException {
+        if (maxParameterCount != -1 && index >= maxParameterCount) {
+            throw new DataUrlParseException("More than "
+                    + maxParameterCount + " parameters", Phase.PARAMETER,
+                    Reason.PARAMETER_COUNT_EXCEEDED, offset);
+        } else if (maxParameterLength != -1 && length > maxParameterLength) {
+            throw new DataUrlParseException("Parameter exceeds "
+                    + maxParameterLength + " characters", Phase.PARAMETER,
+                    Reason.PARAMETER_LENGTH_EXCEEDED, offset);
+        }
+    }
+
+    /**
+     * Checks if the given MIME-Type is allowed
+     * @param mimeType MIME-Type or {@code null} for {@code text/plain}
+     * @throws DataUrlParseException If the MIME-Type is not allowed
+     */
+    void checkMimeType(String mimeType) throws DataUrlParseException {
+        if (allowedMimeTypes == null) {
+            return;
+        }
+        String type = mimeType != null
+                ? mimeType.toLowerCase(Locale.ROOT) : "text/plain";
+        if (!allowedMimeTypes.contains(type)) {
+            // The MIME-Type is the first field behind "data:"
+            throw new DataUrlParseException("MIME-Type \"" + type
+                    + "\" is not allowed", Phase.HEADER,
+                    Reason.MIME_TYPE_NOT_ALLOWED, "data:".length());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DataUrlLimits{ "
+                + "maxEncodedLength = \"" + maxEncodedLength + "\", "
+                + "maxDecodedSize = \"" + maxDecodedSize + "\", "
+                + "maxParameterCount = \"" + maxParameterCount + "\", "
+                + "maxParameterLength = \"" + maxParameterLength + "\", "
+                + "allowedMimeTypes = \"" + allowedMimeTypes + "\" }";
+    }
+
+    /**
+     * Builds {@link DataUrlLimits}. All limits are disabled by default.
+     *
+     * @author Max Schuster
+     */
+    public static final class Builder {
+
+        private long maxEncodedLength = -1;
+
+        private long maxDecodedSize = -1;
+
+        private int maxParameterCount = -1;
+
+        private int maxParameterLength = -1;
+
+        private Set<String> allowedMimeTypes;
+
+        /**
+         * Sets the maximum length of the whole data url
+         * @param maxEncodedLength Length in characters, {@code -1} if
+         * unlimited
+         * @return This builder
+         * @throws IllegalArgumentException if the value is less than
+         * {@code -1}
+         */
+        public Builder setMaxEncodedLength(long maxEncodedLength)
+                throws IllegalArgumentException {
+            this.maxEncodedLength = checkLimit(maxEncodedLength);
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of the decoded payload
+         * @param maxDecodedSize Size in bytes, {@code -1} if unlimited
+         * @return This builder
+         * @throws IllegalArgumentException if the value is less than
+         * {@code -1}
+         */
+        public Builder setMaxDecodedSize(long maxDecodedSize)
+                throws IllegalArgumentException {
+            this.maxDecodedSize = checkLimit(maxDecodedSize);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of headers/parameters
+         * @param maxParameterCount Number of headers/parameters, {@code -1}
+         * if unlimited
+         * @return This builder
+         * @throws IllegalArgumentException if the value is less than
+         * {@code -1}
+         */
+        public Builder setMaxParameterCount(int maxParameterCount)
+                throws IllegalArgumentException {
+            this.maxParameterCount = (int) checkLimit(maxParameterCount);
+            return this;
+        }
+
+        /**
+         * Sets the maximum length of a {@code name=value} field
+         * @param maxParameterLength Length in characters, {@code -1} if
+         * unlimited
+         * @return This builder
+         * @throws IllegalArgumentException if the value is less than
+         * {@code -1}
+         */
+        public Builder setMaxParameterLength(int maxParameterLength)
+                throws IllegalArgumentException {
+            this.maxParameterLength = (int) checkLimit(maxParameterLength);
+            return this;
+        }
+
+        /**
+         * Sets the allowed MIME-Types. A data url without MIME-Type is
+         * treated as {@code text/plain}.
+         * @param allowedMimeTypes MIME-Types, {@code null} to allow all
+         * @return This builder
+         */
+        public Builder setAllowedMimeTypes(
+                Collection<String> allowedMimeTypes) {
+            if (allowedMimeTypes == null) {
+                this.allowedMimeTypes = null;
+            } else {
+                this.allowedMimeTypes = new HashSet<>();
+                for (String mimeType : allowedMimeTypes) {
+                    this.allowedMimeTypes.add(
+                            mimeType.toLowerCase(Locale.ROOT));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Builds the {@link DataUrlLimits}
+         * @return New {@link DataUrlLimits}
+         */
+        public DataUrlLimits build() {
+            return new DataUrlLimits(this);
+        }
+
+        /**
+         * Checks a limit
+         * @param limit Limit
+         * @return The limit
+         * @throws IllegalArgumentException if the limit is less than
+         * {@code -1}
+         */
+        private static long checkLimit(long limit)
+                throws IllegalArgumentException {
+            if (limit < -1) {
+                throw new IllegalArgumentException("Illegal limit " + limit);
+            }
+            return limit;
+        }
+
+    }
+
+}
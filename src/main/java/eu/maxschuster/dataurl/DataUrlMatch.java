@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+/**
+ * A data url found by a {@link DataUrlScanner}
+ *
+ * @author Max Schuster
+ */
+public final class DataUrlMatch {
+
+    /**
+     * Offset of the first character of the data url in the document
+     */
+    private final long start;
+
+    /**
+     * Offset behind the last character of the data url in the document
+     */
+    private final long end;
+
+    /**
+     * Unserialized data url
+     */
+    private final DataUrl dataUrl;
+
+    DataUrlMatch(long start, long end, DataUrl dataUrl) {
+        this.start = start;
+        this.end = end;
+        this.dataUrl = dataUrl;
+    }
+
+    /**
+     * Gets the offset of the first character of the data url in the
+     * document
+     * @return Start offset, inclusive
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the offset behind the last character of the data url in the
+     * document
+     * @return End offset, exclusive
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Gets the unserialized data url. Its payload is decoded on first
+     * access if the serializer of the scanner decodes lazily.
+     * @return Unserialized data url
+     */
+    public DataUrl getDataUrl() {
+        return dataUrl;
+    }
+
+    @Override
+    public String toString() {
+        return "DataUrlMatch{ "
+                + "start = \"" + start + "\", "
+                + "end = \"" + end + "\", "
+                + "dataUrl = \"" + dataUrl + "\" }";
+    }
+
+}
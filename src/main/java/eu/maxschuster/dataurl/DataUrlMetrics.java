@@ -0,0 +1,384 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records counts, byte totals and latency histograms by operation,
+ * {@link DataUrlEncoding} and MIME-Type as well as failures by reason.
+ * Recording doesn't lock, so a single instance can be shared by all
+ * serializers. Register it with an {@link javax.management.MBeanServer} to
+ * publish the numbers through JMX.
+ * <p>
+ * At most {@value #MAX_MIME_TYPES} MIME-Types are tracked per operation and
+ * encoding, further MIME-Types are counted as {@value #OTHER}.
+ * </p>
+ * @author Max Schuster
+ * @see DataUrlSerializer#setMetricsListener(IDataUrlMetricsListener)
+ */
+public final class DataUrlMetrics implements IDataUrlMetricsListener,
+        DataUrlMetricsMXBean {
+
+    /**
+     * Maximum number of tracked MIME-Types per operation and encoding
+     */
+    public static final int MAX_MIME_TYPES = 64;
+
+    /**
+     * MIME-Type the untracked MIME-Types are counted as
+     */
+    public static final String OTHER = "other";
+
+    /**
+     * Upper bounds of the latency buckets in nanoseconds
+     */
+    private static final long[] LATENCY_BUCKET_BOUNDS = {
+        1000L, 4000L, 16000L, 64000L, 256000L,
+        1000000L, 4000000L, 16000000L, 64000000L, 256000000L,
+        1000000000L
+    };
+
+    /**
+     * Name of the serialize operation
+     */
+    private static final String SERIALIZE = "serialize";
+
+    /**
+     * Name of the unserialize operation
+     */
+    private static final String UNSERIALIZE = "unserialize";
+
+    /**
+     * All {@link DataUrlEncoding}s
+     */
+    private static final DataUrlEncoding[] ENCODINGS = DataUrlEncoding.values();
+
+    /**
+     * Statistics by MIME-Type. Serialize statistics come first, followed by
+     * the unserialize statistics, each indexed by the ordinal of the
+     * encoding.
+     */
+    private final List<ConcurrentMap<String, Stats>> stats;
+
+    /**
+     * Number of failed calls by {@code operation: type}
+     */
+    private final ConcurrentMap<String, LongAdder> failures =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new DataUrlMetrics
+     */
+    public DataUrlMetrics() {
+        stats = new ArrayList<>(2 * ENCODINGS.length);
+        for (int i = 0; i < 2 * ENCODINGS.length; i++) {
+            stats.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public void onSerialize(DataUrl dataUrl, long encodedLength, long nanos) {
+        getStats(0, dataUrl).record(dataUrl, encodedLength, nanos);
+    }
+
+    @Override
+    public void onUnserialize(DataUrl dataUrl, long encodedLength,
+            long nanos) {
+        getStats(1, dataUrl).record(dataUrl, encodedLength, nanos);
+    }
+
+    @Override
+    public void onSerializeFailure(IOException cause, long nanos) {
+        recordFailure(SERIALIZE, cause);
+    }
+
+    @Override
+    public void onUnserializeFailure(IOException cause, long nanos) {
+        recordFailure(UNSERIALIZE, cause);
+    }
+
+    @Override
+    public long getSerializeCount() {
+        long count = 0;
+        for (Stats s : getStats()) {
+            if (s.getOperation().equals(SERIALIZE)) {
+                count += s.getCount();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getUnserializeCount() {
+        long count = 0;
+        for (Stats s : getStats()) {
+            if (s.getOperation().equals(UNSERIALIZE)) {
+                count += s.getCount();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getFailureCount() {
+        long count = 0;
+        for (LongAdder adder : failures.values()) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public long getEncodedBytes() {
+        long bytes = 0;
+        for (Stats s : getStats()) {
+            bytes += s.getEncodedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getDecodedBytes() {
+        long bytes = 0;
+        for (Stats s : getStats()) {
+            bytes += s.getDecodedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : failures.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    @Override
+    public List<Stats> getStats() {
+        List<Stats> result = new ArrayList<>();
+        for (ConcurrentMap<String, Stats> byMimeType : stats) {
+            result.addAll(byMimeType.values());
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getLatencyBucketBounds() {
+        return LATENCY_BUCKET_BOUNDS.clone();
+    }
+
+    @Override
+    public void reset() {
+        for (ConcurrentMap<String, Stats> byMimeType : stats) {
+            byMimeType.clear();
+        }
+        failures.clear();
+    }
+
+    /**
+     * Gets the statistics of the given data url
+     * @param operation {@code 0} to serialize, {@code 1} to unserialize
+     * @param dataUrl Data url
+     * @return Statistics
+     */
+    private Stats getStats(int operation, DataUrl dataUrl) {
+        DataUrlEncoding encoding = dataUrl.getEncoding();
+        ConcurrentMap<String, Stats> byMimeType =
+                stats.get(operation * ENCODINGS.length + encoding.ordinal());
+        String mimeType = dataUrl.getMimeType();
+        // Returns the same instance if it is lower case already
+        String key = mimeType == null 
+                ? "text/plain" : mimeType.toLowerCase(Locale.ROOT);
+        Stats s = byMimeType.get(key);
+        if (s == null) {
+            if (byMimeType.size() >= MAX_MIME_TYPES) {
+                key = OTHER;
+            }
+            final String mimeTypeKey = key;
+            s = byMimeType.computeIfAbsent(key, k -> new Stats(
+                    operation == 0 ? SERIALIZE : UNSERIALIZE, encoding,
+                    mimeTypeKey));
+        }
+        return s;
+    }
+
+    /**
+     * Counts a failure by its {@link DataUrlParseException.Reason} or else
+     * by its type
+     * @param operation Name of the operation
+     * @param cause Failure
+     */
+    private void recordFailure(String operation, IOException cause) {
+        String type = cause instanceof DataUrlParseException
+                ? ((DataUrlParseException) cause).getReason().name()
+                : cause.getClass().getSimpleName();
+        String key = operation + ": " + type;
+        LongAdder adder = failures.get(key);
+        if (adder == null) {
+            adder = failures.computeIfAbsent(key, k -> new LongAdder());
+        }
+        adder.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "DataUrlMetrics{ "
+                + "serializeCount = \"" + getSerializeCount() + "\", "
+                + "unserializeCount = \"" + getUnserializeCount() + "\", "
+                + "failureCount = \"" + getFailureCount() + "\", "
+                + "encodedBytes = \"" + getEncodedBytes() + "\", "
+                + "decodedBytes = \"" + getDecodedBytes() + "\" }";
+    }
+
+    /**
+     * Statistics of a single operation, encoding and MIME-Type
+     *
+     * @author Max Schuster
+     */
+    public static final class Stats {
+
+        private final String operation;
+
+        private final DataUrlEncoding encoding;
+
+        private final String mimeType;
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder encodedBytes = new LongAdder();
+
+        private final LongAdder decodedBytes = new LongAdder();
+
+        private final LongAdder[] latencies =
+                new LongAdder[LATENCY_BUCKET_BOUNDS.length + 1];
+
+        private Stats(String operation, DataUrlEncoding encoding,
+                String mimeType) {
+            this.operation = operation;
+            this.encoding = encoding;
+            this.mimeType = mimeType;
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records a call
+         * @param dataUrl Serialized or unserialized data url
+         * @param encodedLength Length of the serialized data url
+         * @param nanos Duration in nanoseconds
+         */
+        private void record(DataUrl dataUrl, long encodedLength, long nanos) {
+            count.increment();
+            if (encodedLength > 0) {
+                encodedBytes.add(encodedLength);
+            }
+            // Exact once decoded, an upper bound for lazy data urls
+            decodedBytes.add(dataUrl.getDecodedLengthEstimate());
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKET_BOUNDS.length
+                    && nanos > LATENCY_BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            latencies[bucket].increment();
+        }
+
+        /**
+         * Gets the name of the operation
+         * @return {@code serialize} or {@code unserialize}
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * Gets the name of the encoding
+         * @return Name of the {@link DataUrlEncoding}
+         */
+        public String getEncoding() {
+            return encoding.name();
+        }
+
+        /**
+         * Gets the lower case MIME-Type. Data urls without MIME-Type are
+         * counted as {@code text/plain}.
+         * @return MIME-Type or {@value DataUrlMetrics#OTHER}
+         */
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * Gets the number of calls
+         * @return Number of calls
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Gets the total length of the serialized data urls
+         * @return Length in characters or bytes
+         */
+        public long getEncodedBytes() {
+            return encodedBytes.sum();
+        }
+
+        /**
+         * Gets the total size of the decoded payloads. Payloads that were
+         * not decoded yet are counted with their estimated size.
+         * @return Size in bytes
+         */
+        public long getDecodedBytes() {
+            return decodedBytes.sum();
+        }
+
+        /**
+         * Gets the number of calls per latency bucket
+         * @return Number of calls per bucket
+         * @see DataUrlMetrics#getLatencyBucketBounds()
+         */
+        public long[] getLatencyHistogram() {
+            long[] histogram = new long[latencies.length];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = latencies[i].sum();
+            }
+            return histogram;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{ "
+                    + "operation = \"" + operation + "\", "
+                    + "encoding = \"" + encoding + "\", "
+                    + "mimeType = \"" + mimeType + "\", "
+                    + "count = \"" + getCount() + "\" }";
+        }
+
+    }
+
+}
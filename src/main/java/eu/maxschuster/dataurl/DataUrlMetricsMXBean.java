@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of {@link DataUrlMetrics}. Register a
+ * {@link DataUrlMetrics} instance with an {@link javax.management.MBeanServer}
+ * to publish its numbers through JMX.
+ *
+ * @author Max Schuster
+ */
+public interface DataUrlMetricsMXBean {
+
+    /**
+     * Gets the number of serialized data urls
+     * @return Number of serialized data urls
+     */
+    public long getSerializeCount();
+
+    /**
+     * Gets the number of unserialized data urls
+     * @return Number of unserialized data urls
+     */
+    public long getUnserializeCount();
+
+    /**
+     * Gets the number of failed calls
+     * @return Number of failed calls
+     */
+    public long getFailureCount();
+
+    /**
+     * Gets the total length of all serialized and unserialized data urls
+     * @return Length in characters or bytes
+     */
+    public long getEncodedBytes();
+
+    /**
+     * Gets the total size of all decoded payloads. Payloads that were not
+     * decoded because of lazy decoding are counted with their estimated
+     * size, see {@link DataUrl#getDecodedLengthEstimate()}.
+     * @return Size in bytes
+     */
+    public long getDecodedBytes();
+
+    /**
+     * Gets the number of failed calls by operation and failure type. The
+     * type of a {@link DataUrlParseException} is its reason.
+     * @return Number of failed calls by {@code operation: type}
+     */
+    public Map<String, Long> getFailures();
+
+    /**
+     * Gets the statistics by operation, encoding and MIME-Type
+     * @return Statistics
+     */
+    public List<DataUrlMetrics.Stats> getStats();
+
+    /**
+     * Gets the upper bounds of the latency histogram buckets. The last
+     * bucket of a histogram counts all longer calls.
+     * @return Upper bounds in nanoseconds, inclusive
+     */
+    public long[] getLatencyBucketBounds();
+
+    /**
+     * Discards all recorded numbers
+     */
+    public void reset();
+
+}
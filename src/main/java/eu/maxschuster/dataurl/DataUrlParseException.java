@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.net.MalformedURLException;
+
+/**
+ * Thrown if a data url can't be unserialized. Tells where and why parsing
+ * failed.
+ * <p>
+ * Exceptions created while {@link DataUrlSerializer#tryUnserialize(String)}
+ * runs don't capture a stack trace, since the input is the problem and
+ * capturing it costs more than parsing.
+ * </p>
+ * @author Max Schuster
+ */
+public class DataUrlParseException extends MalformedURLException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Threads that currently don't capture stack traces
+     */
+    private static final ThreadLocal<Boolean> STACKLESS =
+            new ThreadLocal<>();
+
+    /**
+     * Part of the data url that failed
+     */
+    public enum Phase {
+        /**
+         * Protocol, MIME-Type or encoding
+         */
+        HEADER,
+        /**
+         * A {@code name=value} header/parameter
+         */
+        PARAMETER,
+        /**
+         * Encoded payload behind the comma
+         */
+        PAYLOAD
+    }
+
+    /**
+     * Reason of the failure
+     */
+    public enum Reason {
+        /**
+         * Doesn't start with {@code data:}
+         */
+        WRONG_PROTOCOL,
+        /**
+         * No comma after the header
+         */
+        MISSING_COMMA,
+        /**
+         * Header is longer than the parser accepts
+         */
+        HEADER_TOO_LONG,
+        /**
+         * Header field is neither MIME-Type, encoding nor {@code name=value}
+         */
+        MALFORMED_FIELD,
+        /**
+         * Illegal escape sequence in a header value
+         */
+        MALFORMED_VALUE,
+        /**
+         * Encoding is unknown
+         */
+        UNKNOWN_ENCODING,
+        /**
+         * No codec is registered for the encoding
+         */
+        NO_CODEC,
+        /**
+         * Charset is unknown or unsupported
+         */
+        UNKNOWN_CHARSET,
+        /**
+         * Payload can't be decoded
+         */
+        MALFORMED_PAYLOAD,
+        /**
+         * Data url exceeds {@link DataUrlLimits#getMaxEncodedLength()}
+         */
+        ENCODED_LENGTH_EXCEEDED,
+        /**
+         * Payload exceeds {@link DataUrlLimits#getMaxDecodedSize()}
+         */
+        DECODED_SIZE_EXCEEDED,
+        /**
+         * More than {@link DataUrlLimits#getMaxParameterCount()} parameters
+         */
+        PARAMETER_COUNT_EXCEEDED,
+        /**
+         * Parameter exceeds {@link DataUrlLimits#getMaxParameterLength()}
+         */
+        PARAMETER_LENGTH_EXCEEDED,
+        /**
+         * MIME-Type is not in {@link DataUrlLimits#getAllowedMimeTypes()}
+         */
+        MIME_TYPE_NOT_ALLOWED
+    }
+
+    /**
+     * Part of the data url that failed
+     */
+    private final Phase phase;
+
+    /**
+     * Reason of the failure
+     */
+    private final Reason reason;
+
+    /**
+     * Offset of the failure from the start of the data url
+     */
+    private final long offset;
+
+    /**
+     * Creates a new DataUrlParseException
+     * @param message Detail message
+     * @param phase Part of the data url that failed
+     * @param reason Reason of the failure
+     * @param offset Offset of the failure from the start of the data url or
+     * {@code -1} if it is unknown
+     */
+    DataUrlParseException(String message, Phase phase, Reason reason,
+            long offset) {
+        super(message);
+        this.phase = phase;
+        this.reason = reason;
+        this.offset = offset;
+    }
+
+    /**
+     * Gets the part of the data url that failed
+     * @return Part of the data url
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Gets the reason of the failure
+     * @return Reason of the failure
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the offset of the failure from the start of the data url, which
+     * is the {@code 'd'} of {@code data:}. Streams report the number of
+     * characters read when the failure was detected.
+     * @return Offset in characters or {@code -1} if it is unknown
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return isStackless() ? this : super.fillInStackTrace();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + ": " + getMessage() + " ("
+                + phase + ", " + reason + ", offset " + offset + ")";
+    }
+
+    /**
+     * Checks if the current thread captures no stack traces for parse
+     * failures
+     * @return {@code true} if no stack traces are captured
+     */
+    static boolean isStackless() {
+        return STACKLESS.get() != null;
+    }
+
+    /**
+     * Enables or disables stack traces for parse failures of the current
+     * thread
+     * @param stackless {@code true} to capture no stack traces
+     * @return The previous setting
+     */
+    static boolean setStackless(boolean stackless) {
+        boolean previous = isStackless();
+        if (stackless) {
+            STACKLESS.set(Boolean.TRUE);
+        } else {
+            STACKLESS.remove();
+        }
+        return previous;
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+/**
+ * Outcome of {@link DataUrlSerializer#tryUnserialize(String)}. Either holds
+ * the unserialized {@link DataUrl} or the failure.
+ *
+ * @author Max Schuster
+ */
+public final class DataUrlParseResult {
+
+    /**
+     * Unserialized data url or {@code null}
+     */
+    private final DataUrl dataUrl;
+
+    /**
+     * Failure or {@code null}
+     */
+    private final DataUrlParseException failure;
+
+    DataUrlParseResult(DataUrl dataUrl, DataUrlParseException failure) {
+        this.dataUrl = dataUrl;
+        this.failure = failure;
+    }
+
+    /**
+     * Checks if the data url has been unserialized
+     * @return {@code true} on success
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * Gets the unserialized data url
+     * @return Unserialized data url or {@code null} on failure
+     */
+    public DataUrl getDataUrl() {
+        return dataUrl;
+    }
+
+    /**
+     * Gets the failure. It has no stack trace.
+     * @return Failure or {@code null} on success
+     */
+    public DataUrlParseException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets the unserialized data url or throws the failure
+     * @return Unserialized data url
+     * @throws DataUrlParseException If the data url can't be unserialized
+     */
+    public DataUrl get() throws DataUrlParseException {
+        if (failure != null) {
+            throw failure;
+        }
+        return dataUrl;
+    }
+
+    @Override
+    public String toString() {
+        return "DataUrlParseResult{ "
+                + "dataUrl = \"" + dataUrl + "\", "
+                + "failure = \"" + failure + "\" }";
+    }
+
+}
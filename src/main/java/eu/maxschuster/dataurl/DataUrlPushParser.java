@@ -0,0 +1,296 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import eu.maxschuster.dataurl.DataUrlParseException.Phase;
+import eu.maxschuster.dataurl.DataUrlParseException.Reason;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Non-blocking parser for a data url that arrives in chunks of bytes, e.g.
+ * from a network connection. Bytes outside of US-ASCII are read as UTF-8
+ * encoded characters, the same way as by 
+ * {@link DataUrlSerializer#unserialize(java.io.InputStream)}. The header is reported to the
+ * {@link IDataUrlPushListener} as soon as the comma arrives, the payload is
+ * decoded chunk by chunk and passed on. Only an incomplete group of
+ * characters is kept between chunks, so the memory used does not grow with
+ * the payload.
+ * <p>
+ * Once a call fails the parser can't be used anymore. Instances are not
+ * thread-safe.
+ * </p>
+ * @author Max Schuster
+ * @see DataUrlSerializer#newPushParser(IDataUrlPushListener)
+ */
+public final class DataUrlPushParser {
+
+    /**
+     * Expected protocol
+     */
+    private static final String PROTOCOL = "data:";
+
+    /**
+     * Maximum number of bytes between {@code data:} and the comma
+     */
+    static final int MAX_HEADER_LENGTH = 8192;
+
+    /**
+     * Maximum number of bytes decoded at once
+     */
+    private static final int WINDOW_SIZE = 8192;
+
+    /**
+     * Parser states
+     */
+    private enum State {
+        PROTOCOL, HEADER, PAYLOAD, FINISHED, FAILED
+    }
+
+    /**
+     * Serializer that parses the header and resolves the codec
+     */
+    private final DataUrlSerializer serializer;
+
+    /**
+     * Receives the parsed header and the decoded payload
+     */
+    private final IDataUrlPushListener listener;
+
+    /**
+     * Resource limits
+     */
+    private final DataUrlLimits limits;
+
+    /**
+     * Current state
+     */
+    private State state = State.PROTOCOL;
+
+    /**
+     * Number of matched protocol characters
+     */
+    private int protocolLength = 0;
+
+    /**
+     * Header fields read so far, {@code null} once parsed
+     */
+    private ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+    /**
+     * Decoder of the payload
+     */
+    private IDataUrlChunkDecoder decoder;
+
+    /**
+     * Number of bytes fed so far
+     */
+    private long encodedLength = 0;
+
+    /**
+     * Offset of the payload in the data url
+     */
+    private long payloadOffset = -1;
+
+    /**
+     * Number of decoded bytes passed to the listener
+     */
+    private long decodedLength = 0;
+
+    /**
+     * Creates a new DataUrlPushParser
+     * @param serializer Serializer that parses the header and resolves the
+     * codec
+     * @param listener Receives the parsed header and the decoded payload
+     */
+    DataUrlPushParser(DataUrlSerializer serializer,
+            IDataUrlPushListener listener) {
+        this.serializer = serializer;
+        this.listener = listener;
+        this.limits = serializer.getLimits();
+    }
+
+    /**
+     * Parses the remaining bytes of the given chunk. The position of the
+     * chunk is advanced to its limit.
+     * @param src Next chunk of the data url
+     * @throws MalformedURLException If the data url is malformed or exceeds
+     * the {@link DataUrlLimits} of the serializer
+     * @throws IOException If the listener rejects the data url
+     * @throws IllegalStateException If the parser is finished or failed
+     * before
+     * @throws NullPointerException if src is {@code null}
+     */
+    public void feed(ByteBuffer src) throws IOException,
+            IllegalStateException, NullPointerException {
+        if (src == null) {
+            throw new NullPointerException("src is null!");
+        }
+        checkState();
+        boolean success = false;
+        try {
+            encodedLength += src.remaining();
+            limits.checkEncodedLength(encodedLength, 
+                    state == State.PAYLOAD ? Phase.PAYLOAD : Phase.HEADER);
+            while (src.hasRemaining() && state != State.PAYLOAD) {
+                parseHeader(src.get() & 0xFF);
+            }
+            while (src.hasRemaining()) {
+                ByteBuffer window = src.duplicate();
+                window.limit(window.position()
+                        + Math.min(WINDOW_SIZE, window.remaining()));
+                src.position(window.limit());
+                emit(decode(window, false));
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                state = State.FAILED;
+            }
+        }
+    }
+
+    /**
+     * Signals the end of the data url and decodes the rest of the payload
+     * @throws MalformedURLException If the data url is malformed, incomplete
+     * or exceeds the {@link DataUrlLimits} of the serializer
+     * @throws IOException If the listener rejects the data url
+     * @throws IllegalStateException If the parser is finished or failed
+     * before
+     */
+    public void finish() throws IOException, IllegalStateException {
+        checkState();
+        State current = state;
+        state = State.FAILED;
+        if (current == State.PROTOCOL) {
+            throw new DataUrlParseException("Wrong protocol", Phase.HEADER,
+                    Reason.WRONG_PROTOCOL, protocolLength);
+        } else if (current == State.HEADER) {
+            throw new DataUrlParseException("Missing comma", Phase.HEADER,
+                    Reason.MISSING_COMMA, encodedLength);
+        }
+        emit(decode(null, true));
+        state = State.FINISHED;
+    }
+
+    /**
+     * Checks if the header has been parsed and reported
+     * @return {@code true} if the header has been parsed
+     */
+    public boolean isHeaderParsed() {
+        return decoder != null;
+    }
+
+    /**
+     * Gets the number of decoded bytes passed to the listener so far
+     * @return Number of decoded bytes
+     */
+    public long getDecodedLength() {
+        return decodedLength;
+    }
+
+    /**
+     * Parses a single byte of the protocol or header
+     * @param c Byte
+     * @throws IOException If the protocol or header is malformed or the
+     * listener rejects the header
+     */
+    private void parseHeader(int c) throws IOException {
+        if (state == State.PROTOCOL) {
+            if (c != PROTOCOL.charAt(protocolLength)) {
+                throw new DataUrlParseException("Wrong protocol", 
+                        Phase.HEADER, Reason.WRONG_PROTOCOL, protocolLength);
+            } else if (++protocolLength == PROTOCOL.length()) {
+                state = State.HEADER;
+            }
+        } else if (c != ',') {
+            if (header.size() == MAX_HEADER_LENGTH) {
+                throw new DataUrlParseException("Header exceeds "
+                        + MAX_HEADER_LENGTH + " bytes", Phase.HEADER,
+                        Reason.HEADER_TOO_LONG, 
+                        PROTOCOL.length() + MAX_HEADER_LENGTH);
+            }
+            header.write(c);
+        } else {
+            String text = new String(header.toByteArray(), 
+                    StandardCharsets.UTF_8);
+            DataUrlSerializer.Header parsed =
+                    serializer.parseHeader(text, 0, text.length());
+            IDataUrlCodec codec = serializer.getCodec(parsed.encoding);
+            Charset charset = serializer.resolveCharset(codec, parsed);
+            decoder = codec.newChunkDecoder(charset);
+            payloadOffset = PROTOCOL.length() + header.size() + 1;
+            header = null;
+            state = State.PAYLOAD;
+            listener.onHeader(parsed.encoding, parsed.mimeType,
+                    parsed.headers);
+        }
+    }
+
+    /**
+     * Decodes a chunk of the payload
+     * @param src Encoded chunk
+     * @param last Finish the payload instead
+     * @return Decoded bytes
+     * @throws DataUrlParseException If the payload can't be decoded
+     */
+    private ByteBuffer decode(ByteBuffer src, boolean last)
+            throws DataUrlParseException {
+        try {
+            return last ? decoder.finish() : decoder.decode(src);
+        } catch (IllegalArgumentException e) {
+            // Chunk decoders count from the start of the payload
+            long index = e instanceof IllegalInputException
+                    ? ((IllegalInputException) e).getIndex() : 0;
+            DataUrlParseException dpe = new DataUrlParseException(
+                    e.getMessage(), Phase.PAYLOAD, Reason.MALFORMED_PAYLOAD,
+                    payloadOffset + index);
+            dpe.initCause(e);
+            throw dpe;
+        }
+    }
+
+    /**
+     * Passes decoded bytes to the listener
+     * @param data Decoded bytes
+     * @throws IOException If the listener rejects the data url
+     */
+    private void emit(ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        if (length > 0) {
+            limits.checkDecodedSize(decodedLength + length);
+            decodedLength += length;
+            listener.onData(data);
+        }
+    }
+
+    /**
+     * Checks that the parser can still be used
+     * @throws IllegalStateException If the parser is finished or failed
+     */
+    private void checkState() throws IllegalStateException {
+        if (state == State.FINISHED) {
+            throw new IllegalStateException("Parser is finished");
+        } else if (state == State.FAILED) {
+            throw new IllegalStateException("Parser has failed");
+        }
+    }
+
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Finds the data urls embedded in large documents like HTML, CSS or JSON in
+ * a single pass. A data url starts with {@code data:} that does not follow
+ * a letter or digit and ends before the first whitespace, quote,
+ * {@code ')'}, {@code '<'}, {@code '>'}, {@code '`'} or {@code '\'}.
+ * Candidates that can't be unserialized are skipped. With lazy decoding
+ * only the header is validated, a broken payload surfaces as
+ * {@link java.io.UncheckedIOException} when the data is accessed.
+ * <p>
+ * Documents given as {@link CharSequence} or file are not copied, the
+ * found {@link DataUrl}s are views of the document. Documents read from a
+ * {@link Reader} are streamed, only the characters of a single data url are
+ * kept at once.
+ * </p>
+ * @author Max Schuster
+ */
+public class DataUrlScanner {
+
+    /**
+     * Start of every data url
+     */
+    private static final String PROTOCOL = "data:";
+
+    /**
+     * Size of the buffer used to read from a {@link Reader}
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Unserializes the found data urls
+     */
+    private final IDataUrlSerializer serializer;
+
+    /**
+     * Creates a new DataUrlScanner that decodes the payloads of the found
+     * data urls lazily
+     */
+    public DataUrlScanner() {
+        DataUrlSerializer lazySerializer = new DataUrlSerializer();
+        lazySerializer.setLazy(true);
+        this.serializer = lazySerializer;
+    }
+
+    /**
+     * Creates a new DataUrlScanner
+     * @param serializer Unserializes the found data urls. Enable
+     * {@link DataUrlSerializer#setLazy(boolean) lazy} decoding to decode
+     * the payloads on first access only.
+     * @throws NullPointerException if serializer is {@code null}
+     */
+    public DataUrlScanner(IDataUrlSerializer serializer)
+            throws NullPointerException {
+        if (serializer == null) {
+            throw new NullPointerException("serializer is null!");
+        }
+        this.serializer = serializer;
+    }
+
+    /**
+     * Finds all data urls in the given document
+     * @param src Document
+     * @param consumer Receives the found data urls in document order
+     * @return Number of found data urls
+     * @throws NullPointerException if src or consumer is {@code null}
+     */
+    public int scan(CharSequence src, Consumer<? super DataUrlMatch> consumer)
+            throws NullPointerException {
+        if (src == null) {
+            throw new NullPointerException("src is null!");
+        } else if (consumer == null) {
+            throw new NullPointerException("consumer is null!");
+        }
+        int count = 0;
+        DataUrlMatch match = find(src, 0);
+        while (match != null) {
+            consumer.accept(match);
+            count++;
+            match = find(src, (int) match.getEnd());
+        }
+        return count;
+    }
+
+    /**
+     * Finds all data urls in the document read from the given
+     * {@link Reader}. The {@link Reader} is read until its end but not
+     * closed.
+     * @param in Document
+     * @param consumer Receives the found data urls in document order
+     * @return Number of found data urls
+     * @throws IOException If reading fails
+     * @throws NullPointerException if in or consumer is {@code null}
+     */
+    public int scan(Reader in, Consumer<? super DataUrlMatch> consumer)
+            throws IOException, NullPointerException {
+        if (in == null) {
+            throw new NullPointerException("in is null!");
+        } else if (consumer == null) {
+            throw new NullPointerException("consumer is null!");
+        }
+        return scan(in, null, null, consumer);
+    }
+
+    /**
+     * Finds all data urls in the given file. The file is memory-mapped
+     * read-only and viewed as UTF-8 encoded text, so the offsets are byte
+     * offsets. The found {@link DataUrl}s keep the mapping alive.
+     * @param file Document
+     * @param consumer Receives the found data urls in document order
+     * @return Number of found data urls
+     * @throws IOException If the file can't be mapped or is larger than
+     * {@link Integer#MAX_VALUE} bytes
+     * @throws NullPointerException if file or consumer is {@code null}
+     */
+    public int scan(Path file, Consumer<? super DataUrlMatch> consumer)
+            throws IOException, NullPointerException {
+        if (consumer == null) {
+            throw new NullPointerException("consumer is null!");
+        }
+        return scan(new DataUrlSerializer.ByteBufferCharSequence(map(file)),
+                consumer);
+    }
+
+    /**
+     * Copies the given document to the given {@link Appendable}, replacing
+     * every data url
+     * @param src Document
+     * @param out Receives the rewritten document
+     * @param replacer Gets the replacement of a data url, e.g. the URL it
+     * was uploaded to, or {@code null} to keep it
+     * @return Number of found data urls
+     * @throws IOException If appending fails
+     * @throws NullPointerException if src, out or replacer is {@code null}
+     */
+    public int rewrite(CharSequence src, Appendable out,
+            Function<? super DataUrlMatch, String> replacer)
+            throws IOException, NullPointerException {
+        if (src == null) {
+            throw new NullPointerException("src is null!");
+        } else if (out == null) {
+            throw new NullPointerException("out is null!");
+        } else if (replacer == null) {
+            throw new NullPointerException("replacer is null!");
+        }
+        int count = 0;
+        int last = 0;
+        DataUrlMatch match = find(src, 0);
+        while (match != null) {
+            int start = (int) match.getStart();
+            int end = (int) match.getEnd();
+            out.append(src, last, start);
+            String replacement = replacer.apply(match);
+            if (replacement != null) {
+                out.append(replacement);
+            } else {
+                out.append(src, start, end);
+            }
+            count++;
+            last = end;
+            match = find(src, end);
+        }
+        out.append(src, last, src.length());
+        return count;
+    }
+
+    /**
+     * Copies the document read from the given {@link Reader} to the given
+     * {@link Appendable}, replacing every data url. The {@link Reader} is
+     * read until its end but not closed.
+     * @param in Document
+     * @param out Receives the rewritten document
+     * @param replacer Gets the replacement of a data url, e.g. the URL it
+     * was uploaded to, or {@code null} to keep it
+     * @return Number of found data urls
+     * @throws IOException If reading or appending fails
+     * @throws NullPointerException if in, out or replacer is {@code null}
+     */
+    public int rewrite(Reader in, Appendable out,
+            Function<? super DataUrlMatch, String> replacer)
+            throws IOException, NullPointerException {
+        if (in == null) {
+            throw new NullPointerException("in is null!");
+        } else if (out == null) {
+            throw new NullPointerException("out is null!");
+        } else if (replacer == null) {
+            throw new NullPointerException("replacer is null!");
+        }
+        return scan(in, out, replacer, null);
+    }
+
+    /**
+     * Copies the given file to the given {@link OutputStream}, replacing
+     * every data url. The file is memory-mapped read-only and viewed as
+     * US-ASCII compatible text. The bytes between the data urls are written
+     * as they are, replacements are written UTF-8 encoded. The
+     * {@link OutputStream} is not closed.
+     * @param file Document
+     * @param out Receives the rewritten document
+     * @param replacer Gets the replacement of a data url, e.g. the URL it
+     * was uploaded to, or {@code null} to keep it
+     * @return Number of found data urls
+     * @throws IOException If the file can't be mapped or writing fails
+     * @throws NullPointerException if file, out or replacer is {@code null}
+     */
+    public int rewrite(Path file, OutputStream out,
+            Function<? super DataUrlMatch, String> replacer)
+            throws IOException, NullPointerException {
+        if (out == null) {
+            throw new NullPointerException("out is null!");
+        } else if (replacer == null) {
+            throw new NullPointerException("replacer is null!");
+        }
+        ByteBuffer bytes = map(file);
+        CharSequence src = new DataUrlSerializer.ByteBufferCharSequence(bytes);
+        WritableByteChannel channel = Channels.newChannel(out);
+        int count = 0;
+        int last = 0;
+        DataUrlMatch match = find(src, 0);
+        while (match != null) {
+            int start = (int) match.getStart();
+            int end = (int) match.getEnd();
+            write(channel, bytes, last, start);
+            String replacement = replacer.apply(match);
+            if (replacement != null) {
+                out.write(replacement.getBytes(StandardCharsets.UTF_8));
+            } else {
+                write(channel, bytes, start, end);
+            }
+            count++;
+            last = end;
+            match = find(src, end);
+        }
+        write(channel, bytes, last, src.length());
+        return count;
+    }
+
+    /**
+     * Finds the next data url
+     * @param src Document
+     * @param from Offset to start searching at
+     * @return Next data url or {@code null}
+     */
+    private DataUrlMatch find(CharSequence src, int from) {
+        int length = src.length();
+        // All candidates of a run of non-terminators share its end and the
+        // first comma after them, so both are only searched once per run
+        int end = -1;
+        int comma = -1;
+        for (int i = from; i <= length - PROTOCOL.length(); i++) {
+            if (src.charAt(i) != 'd'
+                    || (i > 0 && isSchemeChar(src.charAt(i - 1)))
+                    || !startsWithProtocol(src, i)) {
+                continue;
+            }
+            if (i >= end) {
+                end = i + PROTOCOL.length();
+                while (end < length && !isTerminator(src.charAt(end))) {
+                    end++;
+                }
+            }
+            if (comma < i) {
+                comma = i + PROTOCOL.length();
+                while (comma < end && src.charAt(comma) != ',') {
+                    comma++;
+                }
+                if (comma == end) {
+                    // No candidate of the run can be a data url
+                    i = end;
+                    continue;
+                }
+            }
+            DataUrl dataUrl = tryUnserialize(src, i, comma, end);
+            if (dataUrl != null) {
+                return new DataUrlMatch(i, end, dataUrl);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Streams the document read from the given {@link Reader}
+     * @param in Document
+     * @param out Receives the rewritten document or {@code null}
+     * @param replacer Gets the replacement of a data url or {@code null}
+     * @param consumer Receives the found data urls or {@code null}
+     * @return Number of found data urls
+     * @throws IOException If reading or appending fails
+     */
+    private int scan(Reader in, Appendable out,
+            Function<? super DataUrlMatch, String> replacer,
+            Consumer<? super DataUrlMatch> consumer) throws IOException {
+        long maxLength = serializer instanceof DataUrlSerializer
+                ? ((DataUrlSerializer) serializer).getLimits()
+                        .getMaxEncodedLength() : -1;
+        char[] buffer = new char[BUFFER_SIZE];
+        CharBuffer view = CharBuffer.wrap(buffer);
+        StringBuilder candidate = new StringBuilder();
+        boolean inCandidate = false;
+        long candidateStart = 0;
+        long offset = 0;
+        char previous = ' ';
+        int count = 0;
+        int r;
+        while ((r = in.read(buffer)) != -1) {
+            int run = 0;
+            for (int i = 0; i < r; i++) {
+                char c = buffer[i];
+                if (inCandidate) {
+                    int length = candidate.length();
+                    if (length < PROTOCOL.length()
+                            ? c == PROTOCOL.charAt(length)
+                            : !isTerminator(c)) {
+                        candidate.append(c);
+                        previous = c;
+                        if (maxLength != -1
+                                && candidate.length() > maxLength) {
+                            // Too long to be accepted, pass it through
+                            if (out != null) {
+                                out.append(candidate);
+                            }
+                            candidate.setLength(0);
+                            inCandidate = false;
+                            run = i + 1;
+                        }
+                        continue;
+                    }
+                    count += endCandidate(candidate, candidateStart, out,
+                            replacer, consumer);
+                    candidate.setLength(0);
+                    inCandidate = false;
+                    run = i;
+                }
+                if (c == 'd' && !isSchemeChar(previous)) {
+                    if (out != null) {
+                        out.append(view, run, i);
+                    }
+                    candidate.append(c);
+                    candidateStart = offset + i;
+                    inCandidate = true;
+                }
+                previous = c;
+            }
+            if (!inCandidate && out != null) {
+                out.append(view, run, r);
+            }
+            offset += r;
+        }
+        if (inCandidate) {
+            count += endCandidate(candidate, candidateStart, out, replacer,
+                    consumer);
+        }
+        return count;
+    }
+
+    /**
+     * Handles a candidate read from a {@link Reader}. A candidate contains
+     * no terminator, so a data url found in it ends with it.
+     * @param candidate Candidate
+     * @param start Offset of the candidate in the document
+     * @param out Receives the rewritten document or {@code null}
+     * @param replacer Gets the replacement of a data url or {@code null}
+     * @param consumer Receives the found data url or {@code null}
+     * @return Number of found data urls
+     * @throws IOException If appending fails
+     */
+    private int endCandidate(StringBuilder candidate, long start, 
+            Appendable out, Function<? super DataUrlMatch, String> replacer,
+            Consumer<? super DataUrlMatch> consumer) throws IOException {
+        String text = candidate.toString();
+        DataUrlMatch found = find(text, 0);
+        if (found == null) {
+            if (out != null) {
+                out.append(text);
+            }
+            return 0;
+        }
+        int offset = (int) found.getStart();
+        DataUrlMatch match = new DataUrlMatch(start + offset, 
+                start + text.length(), found.getDataUrl());
+        if (consumer != null) {
+            consumer.accept(match);
+        }
+        if (out != null) {
+            out.append(text, 0, offset);
+            String replacement = replacer.apply(match);
+            if (replacement != null) {
+                out.append(replacement);
+            } else {
+                out.append(text, offset, text.length());
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Unserializes a candidate
+     * @param src Document
+     * @param start Start of the candidate, inclusive
+     * @param comma Index of the first comma of the candidate
+     * @param end End of the candidate, exclusive
+     * @return Unserialized data url or {@code null} if the candidate is no
+     * data url
+     */
+    private DataUrl tryUnserialize(CharSequence src, int start, int comma,
+            int end) {
+        if (serializer instanceof DataUrlSerializer) {
+            // Most candidates of a document fail, skip the stack traces
+            return ((DataUrlSerializer) serializer)
+                    .tryUnserialize(src, start, comma, end).getDataUrl();
+        }
+        try {
+            return serializer.unserialize(src, start, end);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if the given character can be part of a URI scheme, so a
+     * following {@code data:} is no data url
+     * @param c Character
+     * @return {@code true} if it is a scheme character
+     */
+    private static boolean isSchemeChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '+' || c == '-'
+                || c == '.';
+    }
+
+    /**
+     * Checks if the given character ends a data url
+     * @param c Character
+     * @return {@code true} if it ends a data url
+     */
+    private static boolean isTerminator(char c) {
+        return c <= ' ' || c == '"' || c == '\'' || c == ')' || c == '<'
+                || c == '>' || c == '`' || c == '\\' || c == 0x7F;
+    }
+
+    /**
+     * Checks if the protocol starts at the given offset
+     * @param src Document
+     * @param offset Offset
+     * @return {@code true} if the protocol starts at the offset
+     */
+    private static boolean startsWithProtocol(CharSequence src, int offset) {
+        for (int i = 0; i < PROTOCOL.length(); i++) {
+            if (src.charAt(offset + i) != PROTOCOL.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Maps the given file read-only
+     * @param file File
+     * @return Mapped file
+     * @throws IOException If the file can't be mapped or is larger than
+     * {@link Integer#MAX_VALUE} bytes
+     */
+    private static ByteBuffer map(Path file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file is null!");
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to map: " + size
+                        + " bytes");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Writes a range of the given buffer
+     * @param channel Target
+     * @param bytes Source buffer
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @throws IOException If writing fails
+     */
+    private static void write(WritableByteChannel channel, ByteBuffer bytes,
+            int start, int end) throws IOException {
+        ByteBuffer range = bytes.duplicate();
+        range.limit(end);
+        range.position(start);
+        while (range.hasRemaining()) {
+            channel.write(range);
+        }
+    }
+
+}
@@ -15,16 +15,42 @@
  */
 package eu.maxschuster.dataurl;
 
+import eu.maxschuster.dataurl.DataUrlParseException.Phase;
+import eu.maxschuster.dataurl.DataUrlParseException.Reason;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
-import java.util.Base64;
-import java.util.HashMap;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Used to serialize/unserialize {@link DataUrl}s
@@ -36,34 +62,507 @@ public class DataUrlSerializer implements IDataUrlSerializer {
     private static final long serialVersionUID = 1L;
     
     /**
-     * Pattern used to split header fields;
+     * Size of the buffers used while streaming
      */
-    private final Pattern PATTERN_META_SPLIT = Pattern.compile(";");
+    private static final int STREAM_BUFFER_SIZE = 8192;
     
     /**
-     * Pattern used to check MIME-Types
+     * Resolved charsets by name
      */
-    private static final Pattern PATTERN_MIMETYPE
-            = Pattern.compile("^[a-z\\-0-9]+\\/[a-z\\-0-9]+$");
+    private static final ConcurrentMap<String, Charset> CHARSETS = 
+            new ConcurrentHashMap<>();
     
     /**
-     * IEncoder for {@link DataUrlEncoding#BASE64} encoded {@link DataUrl}s
+     * Maximum number of items of a batch processed by one parallel task
      */
-    private final Base64Encoder base64Encoder = new Base64Encoder();
+    private static final int BATCH_CHUNK_SIZE = 64;
     
     /**
-     * IEncoder for {@link DataUrlEncoding#URL} encoded {@link DataUrl}s
+     * All {@link DataUrlEncoding}s
      */
-    private final URLEncodedEncoder urlEncodedEncoder = new URLEncodedEncoder();
+    private static final DataUrlEncoding[] ENCODINGS = DataUrlEncoding.values();
+    
+    /**
+     * Resolves the codecs of the encodings
+     */
+    private DataUrlCodecRegistry codecRegistry = 
+            DataUrlCodecRegistry.getDefault();
+    
+    /**
+     * Decode payloads on first access
+     */
+    private boolean lazy = false;
+    
+    /**
+     * Minimum payload size in bytes to encode and decode Base64 in
+     * parallel, {@code -1} if disabled
+     */
+    private int parallelThreshold = -1;
+    
+    /**
+     * Pool for parallel encoding and decoding, {@code null} for the common
+     * pool
+     */
+    private transient ForkJoinPool parallelPool;
+    
+    /**
+     * Spread batches across the {@link #parallelPool}
+     */
+    private boolean parallelBatches = false;
+    
+    /**
+     * Decode payloads into direct {@link ByteBuffer}s
+     */
+    private boolean directBuffers = false;
+    
+    /**
+     * Resource limits enforced while unserializing
+     */
+    private DataUrlLimits limits = DataUrlLimits.UNLIMITED;
+    
+    /**
+     * Serialize in canonical form
+     */
+    private boolean canonical = false;
+    
+    /**
+     * Receives the metrics of every call, {@code null} if disabled
+     */
+    private transient IDataUrlMetricsListener metricsListener;
 
     @Override
     public String serialize(DataUrl dataURL) throws MalformedURLException {
+        return serialize(dataURL, (ScratchBuffers) null);
+    }
+    
+    /**
+     * Serialize the given {@link DataUrl} to an RFC 2397 data url 
+     * {@link String}
+     * @param dataURL {@link DataUrl} to serialize
+     * @param scratch Reusable buffers or {@code null} to allocate buffers of
+     * the exact size
+     * @return The serialized RFC 2397 data url {@link String}
+     * @throws MalformedURLException If the given {@link DataUrl} can't be 
+     * serialized.
+     */
+    private String serialize(DataUrl dataURL, ScratchBuffers scratch) 
+            throws MalformedURLException {
+        IDataUrlMetricsListener listener = metricsListener;
+        if (listener != null) {
+            return measureSerialize(listener, dataURL, 
+                    () -> encode(dataURL, scratch), String::length);
+        }
+        return encode(dataURL, scratch);
+    }
+    
+    /**
+     * Encodes the given {@link DataUrl} to an RFC 2397 data url 
+     * {@link String}
+     * @param dataURL {@link DataUrl} to serialize
+     * @param scratch Reusable buffers or {@code null}
+     * @return The serialized RFC 2397 data url {@link String}
+     * @throws MalformedURLException If the given {@link DataUrl} can't be 
+     * serialized.
+     */
+    private String encode(DataUrl dataURL, ScratchBuffers scratch) 
+            throws MalformedURLException {
+        String header = buildHeader(dataURL);
+        IDataUrlCodec codec = getAppliedCodec(dataURL.getEncoding());
+        Charset appliedCharset = resolveCharset(codec, dataURL);
+        byte[] data = getData(dataURL);
+        int length = toArrayLength(header.length() 
+                + codec.getEncodedLength(appliedCharset, data));
+        
+        if (isAscii(header)) {
+            byte[] buffer = scratch != null 
+                    ? scratch.getBytes(length) : new byte[length];
+            int off = writeAscii(header, buffer, 0);
+            encodeTo(codec, appliedCharset, data, buffer, off);
+            return new String(buffer, 0, length, StandardCharsets.ISO_8859_1);
+        }
+        
+        char[] buffer = scratch != null 
+                ? scratch.getChars(length) : new char[length];
+        header.getChars(0, header.length(), buffer, 0);
+        encodeTo(codec, appliedCharset, data, buffer, header.length());
+        return new String(buffer, 0, length);
+    }
+    
+    @Override
+    public DataUrlBatchResult<String> serializeAll(
+            Collection<DataUrl> dataURLs) {
+        DataUrl[] items = dataURLs.toArray(new DataUrl[dataURLs.size()]);
+        String[] results = new String[items.length];
+        MalformedURLException[] failures = 
+                new MalformedURLException[items.length];
+        runBatch(items.length, (from, to) -> {
+            ScratchBuffers scratch = new ScratchBuffers();
+            for (int i = from; i < to; i++) {
+                try {
+                    results[i] = serialize(items[i], scratch);
+                } catch (MalformedURLException e) {
+                    failures[i] = e;
+                }
+            }
+        });
+        return new DataUrlBatchResult<>(results, failures);
+    }
+
+    @Override
+    public DataUrlBatchResult<String> serializeAll(Stream<DataUrl> dataURLs) {
+        return serializeAll(dataURLs.collect(Collectors.toList()));
+    }
+    
+    @Override
+    public long computeSerializedLength(DataUrl dataURL) 
+            throws MalformedURLException {
+        IDataUrlCodec codec = getAppliedCodec(dataURL.getEncoding());
+        Charset appliedCharset = resolveCharset(codec, dataURL);
+        if (dataURL.hasDataBuffer()) {
+            return buildHeader(dataURL).length() + codec.getEncodedLength(
+                    appliedCharset, dataURL.getDataBuffer());
+        }
+        return buildHeader(dataURL).length() 
+                + codec.getEncodedLength(appliedCharset, getData(dataURL));
+    }
+    
+    /**
+     * Serialize the given {@link DataUrl} to an US-ASCII encoded RFC 2397
+     * data url and write it to the given buffer.
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written bytes, equals 
+     * {@link #computeSerializedLength(DataUrl)}
+     * @throws MalformedURLException If the header of the given 
+     * {@link DataUrl} contains characters outside of US-ASCII.
+     * @throws IndexOutOfBoundsException If the target buffer is too small.
+     */
+    public int serialize(DataUrl dataURL, byte[] dst, int off) 
+            throws MalformedURLException {
+        IDataUrlMetricsListener listener = metricsListener;
+        if (listener != null) {
+            return measureSerialize(listener, dataURL, 
+                    () -> encode(dataURL, dst, off), Integer::longValue);
+        }
+        return encode(dataURL, dst, off);
+    }
+    
+    /**
+     * Encodes the given {@link DataUrl} to US-ASCII bytes
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written bytes
+     * @throws MalformedURLException If the header of the given 
+     * {@link DataUrl} contains characters outside of US-ASCII.
+     */
+    private int encode(DataUrl dataURL, byte[] dst, int off) 
+            throws MalformedURLException {
+        String header = buildHeader(dataURL);
+        if (!isAscii(header)) {
+            throw new MalformedURLException("Header is not US-ASCII");
+        }
+        IDataUrlCodec codec = getAppliedCodec(dataURL.getEncoding());
+        Charset appliedCharset = resolveCharset(codec, dataURL);
+        byte[] data = getData(dataURL);
+        checkBounds(dst.length, off, header.length() 
+                + codec.getEncodedLength(appliedCharset, data));
+        int pos = writeAscii(header, dst, off);
+        pos += encodeTo(codec, appliedCharset, data, dst, pos);
+        return pos - off;
+    }
+    
+    /**
+     * Serialize the given {@link DataUrl} to an RFC 2397 data url and write
+     * it to the given buffer.
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written characters, equals 
+     * {@link #computeSerializedLength(DataUrl)}
+     * @throws MalformedURLException If the given {@link DataUrl} can't be 
+     * serialized.
+     * @throws IndexOutOfBoundsException If the target buffer is too small.
+     */
+    public int serialize(DataUrl dataURL, char[] dst, int off) 
+            throws MalformedURLException {
+        IDataUrlMetricsListener listener = metricsListener;
+        if (listener != null) {
+            return measureSerialize(listener, dataURL, 
+                    () -> encode(dataURL, dst, off), Integer::longValue);
+        }
+        return encode(dataURL, dst, off);
+    }
+    
+    /**
+     * Encodes the given {@link DataUrl} to characters
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written characters
+     * @throws MalformedURLException If the given {@link DataUrl} can't be 
+     * serialized.
+     */
+    private int encode(DataUrl dataURL, char[] dst, int off) 
+            throws MalformedURLException {
+        String header = buildHeader(dataURL);
+        IDataUrlCodec codec = getAppliedCodec(dataURL.getEncoding());
+        Charset appliedCharset = resolveCharset(codec, dataURL);
+        byte[] data = getData(dataURL);
+        checkBounds(dst.length, off, header.length() 
+                + codec.getEncodedLength(appliedCharset, data));
+        header.getChars(0, header.length(), dst, off);
+        int pos = off + header.length();
+        pos += encodeTo(codec, appliedCharset, data, dst, pos);
+        return pos - off;
+    }
+
+    /**
+     * Serialize the given {@link DataUrl} to an US-ASCII encoded RFC 2397
+     * data url and put it into the given {@link ByteBuffer}. The payload is
+     * encoded straight from {@link DataUrl#getDataBuffer()}, so neither a
+     * payload backed by a direct buffer nor a direct target buffer is copied
+     * to the heap as a whole.
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param dst Target buffer. Its position is advanced.
+     * @return Number of written bytes, equals 
+     * {@link #computeSerializedLength(DataUrl)}
+     * @throws MalformedURLException If the header of the given 
+     * {@link DataUrl} contains characters outside of US-ASCII.
+     * @throws BufferOverflowException If the target buffer is too small. 
+     * Nothing is written in this case.
+     */
+    public int serialize(DataUrl dataURL, ByteBuffer dst) 
+            throws MalformedURLException, BufferOverflowException {
+        IDataUrlMetricsListener listener = metricsListener;
+        if (listener != null) {
+            return measureSerialize(listener, dataURL, 
+                    () -> encode(dataURL, dst), Integer::longValue);
+        }
+        return encode(dataURL, dst);
+    }
+    
+    /**
+     * Encodes the given {@link DataUrl} to US-ASCII bytes
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param dst Target buffer. Its position is advanced.
+     * @return Number of written bytes
+     * @throws MalformedURLException If the header of the given 
+     * {@link DataUrl} contains characters outside of US-ASCII.
+     * @throws BufferOverflowException If the target buffer is too small. 
+     */
+    private int encode(DataUrl dataURL, ByteBuffer dst) 
+            throws MalformedURLException, BufferOverflowException {
+        String header = buildHeader(dataURL);
+        if (!isAscii(header)) {
+            throw new MalformedURLException("Header is not US-ASCII");
+        }
+        IDataUrlCodec codec = getAppliedCodec(dataURL.getEncoding());
+        Charset appliedCharset = resolveCharset(codec, dataURL);
+        ByteBuffer data = getDataBuffer(dataURL);
+        if (dst.remaining() < header.length() 
+                + codec.getEncodedLength(appliedCharset, data)) {
+            throw new BufferOverflowException();
+        }
+        int position = dst.position();
+        dst.put(header.getBytes(StandardCharsets.US_ASCII));
+        codec.encodeTo(appliedCharset, data, dst);
+        return dst.position() - position;
+    }
+    
+    /**
+     * Serialize the given {@link DataUrl} to an RFC 2397 data url and write
+     * it to the given {@link WritableByteChannel}. The payload of the 
+     * built-in codecs is encoded in blocks from 
+     * {@link DataUrl#getDataBuffer()} into a direct buffer, so a payload 
+     * backed by a direct or memory-mapped buffer never passes through the
+     * heap as a whole. Other codecs are written like
+     * {@link #serialize(DataUrl, OutputStream)}.
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param out {@link WritableByteChannel} to write to. It will not be 
+     * closed.
+     * @throws MalformedURLException If the given {@link DataUrl} can't be 
+     * serialized.
+     * @throws IOException If writing to the {@link WritableByteChannel} 
+     * fails.
+     */
+    public void serialize(DataUrl dataURL, WritableByteChannel out) 
+            throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out is null!");
+        }
+        IDataUrlMetricsListener listener = metricsListener;
+        if (listener != null) {
+            measureSerialize(listener, dataURL, () -> write(dataURL, out), 
+                    Long::longValue);
+        } else {
+            write(dataURL, out);
+        }
+    }
+    
+    /**
+     * Writes the given {@link DataUrl} to the given 
+     * {@link WritableByteChannel}
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param out {@link WritableByteChannel} to write to
+     * @return Number of written bytes
+     * @throws IOException If serializing or writing fails
+     */
+    private long write(DataUrl dataURL, WritableByteChannel out) 
+            throws IOException {
+        IDataUrlCodec codec = getAppliedCodec(dataURL.getEncoding());
+        if (!codec.isBlockCodec()) {
+            return write(dataURL, Channels.newOutputStream(out));
+        }
+        Charset appliedCharset = resolveCharset(codec, dataURL);
+        byte[] header = buildHeader(dataURL).getBytes(StandardCharsets.UTF_8);
+        writeFully(out, ByteBuffer.wrap(header));
+        long written = header.length;
+        ByteBuffer data = getDataBuffer(dataURL);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+        // Base64 needs blocks of 3 bytes, URL encoding triples at most
+        int blockSize = STREAM_BUFFER_SIZE / 3 / 3 * 3;
+        while (data.hasRemaining()) {
+            ByteBuffer block = data.slice();
+            block.limit(Math.min(blockSize, block.remaining()));
+            data.position(data.position() + block.remaining());
+            buffer.clear();
+            codec.encodeTo(appliedCharset, block, buffer);
+            buffer.flip();
+            written += buffer.remaining();
+            writeFully(out, buffer);
+        }
+        return written;
+    }
+    
+    @Override
+    public void serialize(DataUrl dataURL, OutputStream out) 
+            throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out is null!");
+        }
+        IDataUrlMetricsListener listener = metricsListener;
+        if (listener != null) {
+            measureSerialize(listener, dataURL, () -> write(dataURL, out), 
+                    Long::longValue);
+        } else {
+            write(dataURL, out);
+        }
+    }
+    
+    /**
+     * Writes the given {@link DataUrl} to the given {@link OutputStream}
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param out {@link OutputStream} to write to
+     * @return Number of written bytes
+     * @throws IOException If serializing or writing fails
+     */
+    private long write(DataUrl dataURL, OutputStream out) 
+            throws IOException {
+        if (dataURL.hasDataBuffer() 
+                && getAppliedCodec(dataURL.getEncoding()).isBlockCodec()) {
+            return write(dataURL, Channels.newChannel(out));
+        }
+        StringBuilder sb = new StringBuilder();
+        appendHeader(dataURL, sb);
+        byte[] header = sb.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(header);
+        return header.length + writeData(dataURL, out);
+    }
+
+    @Override
+    public void serialize(DataUrl dataURL, Appendable out) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out is null!");
+        }
+        IDataUrlMetricsListener listener = metricsListener;
+        if (listener != null) {
+            measureSerialize(listener, dataURL, () -> append(dataURL, out), 
+                    Long::longValue);
+        } else {
+            append(dataURL, out);
+        }
+    }
+    
+    /**
+     * Appends the given {@link DataUrl} to the given {@link Appendable}
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param out {@link Appendable} to append to
+     * @return Number of appended characters
+     * @throws IOException If serializing or appending fails
+     */
+    private long append(DataUrl dataURL, Appendable out) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        appendHeader(dataURL, sb);
+        out.append(sb);
+        return sb.length() 
+                + writeData(dataURL, new AppendableOutputStream(out));
+    }
+    
+    /**
+     * Serializes a {@link DataUrl} and passes the outcome to the given
+     * listener
+     * @param <T> Type of the result
+     * @param <E> Type of the failure
+     * @param listener Receives the metrics
+     * @param dataURL {@link DataUrl} to serialize
+     * @param call Serializes the {@link DataUrl}
+     * @param encodedLength Gets the encoded length of the result
+     * @return Result
+     * @throws E If serializing fails
+     */
+    private static <T, E extends IOException> T measureSerialize(
+            IDataUrlMetricsListener listener, DataUrl dataURL, 
+            MeasuredCall<T, E> call, ToLongFunction<T> encodedLength) 
+            throws E {
+        long begin = System.nanoTime();
+        T result;
+        try {
+            result = call.call();
+        } catch (IOException e) {
+            listener.onSerializeFailure(e, System.nanoTime() - begin);
+            throw e;
+        }
+        long nanos = System.nanoTime() - begin;
+        listener.onSerialize(dataURL, encodedLength.applyAsLong(result), 
+                nanos);
+        return result;
+    }
+    
+    /**
+     * Builds the header of the given {@link DataUrl} including the leading
+     * {@code data:} and the trailing comma
+     * @param dataURL {@link DataUrl}
+     * @return Header
+     */
+    private String buildHeader(DataUrl dataURL) {
+        StringBuilder sb = new StringBuilder();
+        appendHeader(dataURL, sb);
+        return sb.toString();
+    }
+    
+    /**
+     * Appends the header of the given {@link DataUrl} including the leading
+     * {@code data:} and the trailing comma
+     * @param dataURL {@link DataUrl}
+     * @param sb Target {@link StringBuilder}
+     */
+    private void appendHeader(DataUrl dataURL, StringBuilder sb) {
         DataUrlEncoding encoding = dataURL.getEncoding();
-        IEncoder encoder = getAppliedEncoder(encoding);
         Map<String, String> headers = dataURL.getHeaders();
         int headerSize = headers != null ? headers.size() : 0;
-        StringBuilder sb = new StringBuilder("data:");
+        sb.append("data:");
         String mimeType = dataURL.getMimeType();
+        
+        if (canonical) {
+            if (mimeType != null) {
+                mimeType = mimeType.toLowerCase(Locale.ROOT);
+            }
+            if (headerSize > 0) {
+                headers = canonicalHeaders(headers);
+            }
+        }
 
         if (mimeType != null) {
             sb.append(mimeType);
@@ -75,12 +574,7 @@ public class DataUrlSerializer implements IDataUrlSerializer {
         if (headers != null && headerSize > 0) {
             int i = 0;
             for (Map.Entry<String, String> entry : headers.entrySet()) {
-                String value;
-                try {
-                    value = URLEncoding.encode(entry.getValue(), "UTF-8");
-                } catch (UnsupportedEncodingException e) {
-                    throw new AssertionError();
-                }
+                String value = URLEncoding.encode(entry.getValue());
                 sb.append(entry.getKey()).append('=').append(value);
                 i++;
                 if (i < headerSize || encoding != DataUrlEncoding.URL) {
@@ -96,16 +590,175 @@ public class DataUrlSerializer implements IDataUrlSerializer {
         }
 
         sb.append(',');
-        
-        String appliedCharset = getAppliedCharset(headers);
-                
+    }
+    
+    /**
+     * Sorts the given headers/parameters by name and lower cases the value
+     * of the charset
+     * @param headers Headers/parameters
+     * @return Canonical headers/parameters
+     */
+    private static Map<String, String> canonicalHeaders(
+            Map<String, String> headers) {
+        Map<String, String> sorted = new TreeMap<>(headers);
+        String charset = sorted.get("charset");
+        if (charset != null) {
+            sorted.put("charset", charset.toLowerCase(Locale.ROOT));
+        }
+        return sorted;
+    }
+    
+    /**
+     * Encodes the payload of the given {@link DataUrl} while writing it to
+     * the given {@link OutputStream}
+     * @param dataURL {@link DataUrl}
+     * @param out Target {@link OutputStream}. It will not be closed.
+     * @return Number of written bytes
+     * @throws IOException If writing fails
+     */
+    private long writeData(DataUrl dataURL, OutputStream out) 
+            throws IOException {
+        IDataUrlCodec codec = getAppliedCodec(dataURL.getEncoding());
+        Charset appliedCharset = resolveCharset(codec, dataURL);
+        NonClosingOutputStream counter = new NonClosingOutputStream(out);
+        OutputStream target = new BufferedOutputStream(counter, 
+                STREAM_BUFFER_SIZE);
+        try (OutputStream encoded = codec.wrap(appliedCharset, target)) {
+            if (dataURL.hasDataBuffer()) {
+                ByteBuffer data = dataURL.getDataBuffer();
+                byte[] block = new byte[STREAM_BUFFER_SIZE];
+                while (data.hasRemaining()) {
+                    int n = Math.min(block.length, data.remaining());
+                    data.get(block, 0, n);
+                    encoded.write(block, 0, n);
+                }
+            } else {
+                encoded.write(getData(dataURL));
+            }
+        }
+        return counter.count;
+    }
+
+    /**
+     * Encodes the payload to US-ASCII bytes, in parallel if enabled for its
+     * size
+     * @param codec Codec
+     * @param charset Applied charset
+     * @param data Payload
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written bytes
+     */
+    private int encodeTo(IDataUrlCodec codec, Charset charset, byte[] data, 
+            byte[] dst, int off) {
+        return codec.encodeTo(charset, data, dst, off, 
+                getAppliedPool(codec, data.length));
+    }
+    
+    /**
+     * Encodes the payload to characters, in parallel if enabled for its size
+     * @param codec Codec
+     * @param charset Applied charset
+     * @param data Payload
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written characters
+     */
+    private int encodeTo(IDataUrlCodec codec, Charset charset, byte[] data, 
+            char[] dst, int off) {
+        return codec.encodeTo(charset, data, dst, off, 
+                getAppliedPool(codec, data.length));
+    }
+    
+    /**
+     * Decodes the payload, in parallel if a pool is given
+     * @param codec Codec
+     * @param charset Applied charset
+     * @param pool Pool to decode in or {@code null}
+     * @param src Source
+     * @param origin Start of the data url
+     * @param start Start of the payload, inclusive
+     * @param end End of the payload, exclusive
+     * @return Decoded payload
+     * @throws DataUrlParseException If the payload can't be decoded
+     */
+    private static byte[] decode(IDataUrlCodec codec, Charset charset, 
+            ForkJoinPool pool, CharSequence src, int origin, int start, 
+            int end) throws DataUrlParseException {
         try {
-            sb.append(encoder.encode(appliedCharset, dataURL.getData()));
+            return codec.decode(charset, src, start, end, pool);
         } catch (Exception e) {
-            throw new MalformedURLException("Error encoding the data");
+            throw malformedPayload(e, origin, start);
         }
+    }
 
-        return sb.toString();
+    /**
+     * Decodes the payload unless it exceeds the maximum decoded size of the
+     * {@link DataUrlLimits}
+     * @param codec Codec
+     * @param charset Applied charset
+     * @param src Source
+     * @param origin Start of the data url
+     * @param start Start of the payload, inclusive
+     * @param end End of the payload, exclusive
+     * @return Decoded payload
+     * @throws DataUrlParseException If the payload can't be decoded or 
+     * exceeds the limit
+     */
+    private byte[] decodeLimited(IDataUrlCodec codec, Charset charset, 
+            CharSequence src, int origin, int start, int end) 
+            throws DataUrlParseException {
+        long maxDecodedSize = limits.getMaxDecodedSize();
+        byte[] data;
+        try {
+            data = codec.decode(charset, src, start, end, maxDecodedSize);
+        } catch (Exception e) {
+            throw malformedPayload(e, origin, start);
+        }
+        if (data == null || data.length > maxDecodedSize) {
+            // Always throws
+            limits.checkDecodedSize(maxDecodedSize + 1);
+        }
+        return data;
+    }
+
+    /**
+     * Decodes the payload into a direct {@link ByteBuffer}
+     * @param codec Codec
+     * @param charset Applied charset
+     * @param src Source
+     * @param origin Start of the data url
+     * @param start Start of the payload, inclusive
+     * @param end End of the payload, exclusive
+     * @return Decoded payload
+     * @throws DataUrlParseException If the payload can't be decoded
+     */
+    private static ByteBuffer decodeDirect(IDataUrlCodec codec, 
+            Charset charset, CharSequence src, int origin, int start, 
+            int end) throws DataUrlParseException {
+        try {
+            return codec.decode(charset, src, start, end, 
+                    ByteBuffer::allocateDirect);
+        } catch (Exception e) {
+            throw malformedPayload(e, origin, start);
+        }
+    }
+    
+    /**
+     * Reports a failure of a codec
+     * @param e Failure of the codec
+     * @param origin Start of the data url
+     * @param start Start of the payload
+     * @return {@link DataUrlParseException} to throw
+     */
+    private static DataUrlParseException malformedPayload(Exception e, 
+            long origin, long start) {
+        long index = e instanceof IllegalInputException
+                ? ((IllegalInputException) e).getIndex() : start;
+        DataUrlParseException dpe = new DataUrlParseException(e.getMessage(),
+                Phase.PAYLOAD, Reason.MALFORMED_PAYLOAD, index - origin);
+        dpe.initCause(e);
+        return dpe;
     }
 
     @Override
@@ -113,110 +766,1105 @@ public class DataUrlSerializer implements IDataUrlSerializer {
         if (urlString == null) {
             throw new NullPointerException();
         }
+        return unserialize(urlString, 0, urlString.length());
+    }
 
-        byte[] data = null;
-        String mimeType = null;
-        HashMap<String, String> headers = new HashMap<>();
+    @Override
+    public DataUrl unserialize(CharSequence src, int start, int end) 
+            throws MalformedURLException {
+        checkRange(src, start, end);
+        return measureParse(src, start, -1, end);
+    }
+    
+    /**
+     * Checks the range of a data url
+     * @param src Source
+     * @param start Start of the data url, inclusive
+     * @param end End of the data url, exclusive
+     * @throws NullPointerException if src is {@code null}
+     * @throws IndexOutOfBoundsException If the range is out of bounds
+     */
+    private static void checkRange(CharSequence src, int start, int end)
+            throws NullPointerException, IndexOutOfBoundsException {
+        if (src == null) {
+            throw new NullPointerException();
+        } else if (start < 0 || end > src.length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " 
+                    + end + ", length " + src.length());
+        }
+    }
+    
+    /**
+     * Unserializes the data url in the given range and passes the outcome
+     * to the metrics listener if set
+     * @param src Source
+     * @param start Start of the data url, inclusive
+     * @param comma Index of the first comma or {@code -1} if it is unknown
+     * @param end End of the data url, exclusive
+     * @return Unserialized {@link DataUrl}
+     * @throws DataUrlParseException If the data url can't be unserialized
+     */
+    private DataUrl measureParse(CharSequence src, int start, int comma,
+            int end) throws DataUrlParseException {
+        IDataUrlMetricsListener listener = metricsListener;
+        if (listener == null) {
+            return parse(src, start, comma, end);
+        }
+        long begin = System.nanoTime();
+        DataUrl dataUrl;
+        try {
+            dataUrl = parse(src, start, comma, end);
+        } catch (DataUrlParseException e) {
+            listener.onUnserializeFailure(e, System.nanoTime() - begin);
+            throw e;
+        }
+        listener.onUnserialize(dataUrl, end - start, System.nanoTime() - begin);
+        return dataUrl;
+    }
+    
+    /**
+     * Unserializes the given RFC 2397 data url {@link String} without 
+     * throwing if it is malformed. The failure is returned without a stack
+     * trace instead, which is considerably cheaper if a large share of the 
+     * input is invalid.
+     * @param urlString RFC 2397 data url {@link String}
+     * @return Unserialized {@link DataUrl} or the failure
+     * @throws NullPointerException if urlString is {@code null}
+     */
+    public DataUrlParseResult tryUnserialize(String urlString) 
+            throws NullPointerException {
+        if (urlString == null) {
+            throw new NullPointerException("urlString is null!");
+        }
+        return tryUnserialize(urlString, 0, urlString.length());
+    }
+    
+    /**
+     * Unserializes the RFC 2397 data url in the given range without 
+     * throwing if it is malformed
+     * @param src Source
+     * @param start Start of the data url, inclusive
+     * @param end End of the data url, exclusive
+     * @return Unserialized {@link DataUrl} or the failure
+     * @throws NullPointerException if src is {@code null}
+     * @throws IndexOutOfBoundsException If the range is out of bounds
+     * @see #tryUnserialize(String)
+     */
+    public DataUrlParseResult tryUnserialize(CharSequence src, int start, 
+            int end) throws NullPointerException, IndexOutOfBoundsException {
+        return tryUnserialize(src, start, -1, end);
+    }
+    
+    /**
+     * Unserializes the RFC 2397 data url in the given range without 
+     * throwing if it is malformed. The comma may already be known, e.g. to
+     * the {@link DataUrlScanner}, which saves searching for it again.
+     * @param src Source
+     * @param start Start of the data url, inclusive
+     * @param comma Index of the first comma after the protocol or 
+     * {@code -1} if it is unknown
+     * @param end End of the data url, exclusive
+     * @return Unserialized {@link DataUrl} or the failure
+     * @throws NullPointerException if src is {@code null}
+     * @throws IndexOutOfBoundsException If the range is out of bounds
+     */
+    DataUrlParseResult tryUnserialize(CharSequence src, int start, int comma,
+            int end) throws NullPointerException, IndexOutOfBoundsException {
+        checkRange(src, start, end);
+        boolean stackless = DataUrlParseException.setStackless(true);
+        try {
+            return new DataUrlParseResult(
+                    measureParse(src, start, comma, end), null);
+        } catch (DataUrlParseException e) {
+            return new DataUrlParseResult(null, e);
+        } finally {
+            DataUrlParseException.setStackless(stackless);
+        }
+    }
+    
+    /**
+     * Unserializes the data url in the given range
+     * @param src Source
+     * @param start Start of the data url, inclusive
+     * @param comma Index of the first comma or {@code -1} if it is unknown
+     * @param end End of the data url, exclusive
+     * @return Unserialized {@link DataUrl}
+     * @throws MalformedURLException If the data url can't be unserialized
+     */
+    private DataUrl parse(CharSequence src, int start, int comma, int end) 
+            throws DataUrlParseException {
+        if (limits.exceedsEncodedLength(end - start)) {
+            int limit = (int) limits.getMaxEncodedLength();
+            limits.checkEncodedLength(end - start, 
+                    indexOf(src, start, start + limit, ',') == -1 
+                            ? Phase.HEADER : Phase.PAYLOAD);
+        }
         
-
-        if (!urlString.startsWith("data:")) {
-            throw new MalformedURLException("Wrong protocol");
+        if (src instanceof ByteBufferCharSequence) {
+            ByteBufferCharSequence bytes = (ByteBufferCharSequence) src;
+            if (!bytes.isAscii(start, end)) {
+                String text = bytes.decode(start, end);
+                return parse(text, 0, -1, text.length());
+            }
         }
 
-        int colon = urlString.indexOf(':');
-        int comma = urlString.indexOf(',');
+        byte[] data = null;
+
+        if (!startsWith(src, start, end, "data:")) {
+            throw wrongProtocol(src, start, end);
+        }
 
-        String metaString = urlString.substring(colon + 1, comma);
-        String dataString = urlString.substring(comma + 1);
-        String encodingName = "";
+        int colon = start + 4;
+        if (comma == -1) {
+            comma = indexOf(src, colon + 1, end, ',');
+        }
+        if (comma == -1) {
+            throw new DataUrlParseException("Missing comma", Phase.HEADER,
+                    Reason.MISSING_COMMA, end - start);
+        }
 
-        String[] metaArray = PATTERN_META_SPLIT.split(metaString);
-        for (int i = 0; i < metaArray.length; i++) {
-            String meta = metaArray[i];
-            if (i == 0) {
-                Matcher m = PATTERN_MIMETYPE.matcher(meta);
-                if (m.matches()) {
-                    mimeType = meta;
-                    continue;
-                }
+        Header header = parseHeader(src, colon + 1, comma);
+        IDataUrlCodec codec = getCodec(header.encoding);
+        Charset appliedCharset = resolveCharset(codec, header);
+        
+        int estimate = codec.getDecodedLengthEstimate(src, comma + 1, end);
+        if (limits.exceedsDecodedSize(estimate)) {
+            // The estimate is an upper bound, let the codec stop early
+            data = decodeLimited(codec, appliedCharset, src, start, comma + 1,
+                    end);
+            if (directBuffers) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+                buffer.put(data);
+                buffer.flip();
+                return new DataUrl(buffer, header.encoding, header.mimeType,
+                        header.headers);
             }
+            return new DataUrl(data, header.encoding, header.mimeType,
+                    header.headers);
+        }
+        ForkJoinPool pool = getAppliedPool(codec, estimate);
+        
+        if (lazy) {
+            LazyData lazyData = new LazyData(codec, appliedCharset, pool, src,
+                    start, comma + 1, end);
+            return new DataUrl(lazyData, header.encoding, header.mimeType,
+                    header.headers);
+        }
+        
+        if (directBuffers) {
+            ByteBuffer buffer = decodeDirect(codec, appliedCharset, src, 
+                    start, comma + 1, end);
+            limits.checkDecodedSize(buffer.remaining());
+            return new DataUrl(buffer, header.encoding, header.mimeType,
+                    header.headers);
+        }
+        
+        data = decode(codec, appliedCharset, pool, src, start, comma + 1, 
+                end);
+        limits.checkDecodedSize(data.length);
+
+        DataUrl dataUrl = new DataUrl(data, header.encoding, header.mimeType,
+                header.headers);
+
+        return dataUrl;
+    }
 
-            if (i + 1 == metaArray.length) {
-                if (meta.indexOf('=') == -1) {
-                    encodingName = meta;
-                    continue;
+    @Override
+    public DataUrlBatchResult<DataUrl> unserializeAll(
+            List<? extends CharSequence> urlStrings) {
+        CharSequence[] items = 
+                urlStrings.toArray(new CharSequence[urlStrings.size()]);
+        DataUrl[] results = new DataUrl[items.length];
+        MalformedURLException[] failures = 
+                new MalformedURLException[items.length];
+        runBatch(items.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                try {
+                    results[i] = unserialize(items[i], 0, items[i].length());
+                } catch (MalformedURLException e) {
+                    failures[i] = e;
                 }
             }
+        });
+        return new DataUrlBatchResult<>(results, failures);
+    }
 
-            int equals = meta.indexOf('=');
-            if (equals < 1) {
-                throw new MalformedURLException();
-            }
+    @Override
+    public DataUrlBatchResult<DataUrl> unserializeAll(
+            Stream<? extends CharSequence> urlStrings) {
+        return unserializeAll(urlStrings.collect(Collectors.toList()));
+    }
+    
+    /**
+     * Runs a batch of the given size, in the {@link #getParallelPool()} if
+     * parallel batches are enabled
+     * @param size Number of items
+     * @param range Processes a range of items
+     */
+    private void runBatch(int size, BatchRange range) {
+        if (!parallelBatches || size <= BATCH_CHUNK_SIZE) {
+            range.process(0, size);
+        } else {
+            getParallelPool().invoke(new BatchTask(range, 0, size));
+        }
+    }
+    
+    @Override
+    public DataUrl unserialize(ByteBuffer src) throws MalformedURLException {
+        if (src == null) {
+            throw new NullPointerException();
+        }
+        return unserialize(new ByteBufferCharSequence(src), 0, 
+                src.remaining());
+    }
 
-            String name = meta.substring(0, equals);
-            String value = meta.substring(equals + 1);
+    @Override
+    public DataUrl unserialize(InputStream in) throws IOException {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        return read(in);
+    }
 
-            try {
-                headers.put(name, URLEncoding.decode(value, "UTF-8"));
-            } catch (UnsupportedEncodingException e) {
-                throw new AssertionError(e);
+    @Override
+    public DataUrl unserialize(Reader in) throws IOException {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        return read(new ReaderInputStream(in));
+    }
+
+    @Override
+    public DataUrl unserialize(ReadableByteChannel in) throws IOException {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        return read(Channels.newInputStream(in));
+    }
+    
+    /**
+     * Reads and decodes a whole data url from the given {@link InputStream}
+     * @param in {@link InputStream} positioned at the start of the data url
+     * @return Unserialized {@link DataUrl}
+     * @throws MalformedURLException If the data url can't be unserialized
+     * @throws IOException If reading from the {@link InputStream} fails
+     */
+    private DataUrl read(InputStream in) throws IOException {
+        IDataUrlMetricsListener listener = metricsListener;
+        if (listener == null) {
+            return openStream(in).readDataUrl();
+        }
+        long begin = System.nanoTime();
+        DataUrlInputStream stream;
+        DataUrl dataUrl;
+        try {
+            stream = openStream(in);
+            dataUrl = stream.readDataUrl();
+        } catch (IOException e) {
+            listener.onUnserializeFailure(e, System.nanoTime() - begin);
+            throw e;
+        }
+        listener.onUnserialize(dataUrl, stream.getEncodedLength(), 
+                System.nanoTime() - begin);
+        return dataUrl;
+    }
+    
+    /**
+     * Reads the header of the RFC 2397 data url from the given
+     * {@link InputStream} and returns a {@link DataUrlInputStream} that
+     * decodes the payload while it is read. Bytes outside of US-ASCII are
+     * read as UTF-8 encoded characters, so the result is the same as for
+     * {@link #unserialize(String)} of the decoded text.
+     * @param in {@link InputStream} positioned at the start of the data url.
+     * It is read until its end.
+     * @return {@link DataUrlInputStream} to read the decoded payload from
+     * @throws MalformedURLException If the header can't be unserialized
+     * @throws IOException If reading from the {@link InputStream} fails
+     */
+    public DataUrlInputStream openStream(InputStream in) throws IOException {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        InputStream source = new BufferedInputStream(in, STREAM_BUFFER_SIZE);
+        byte[] metaBytes = readMetaBytes(source);
+        String metaString = new String(metaBytes, StandardCharsets.UTF_8);
+        Header header = parseHeader(metaString, 0, metaString.length());
+        IDataUrlCodec codec = getCodec(header.encoding);
+        Charset appliedCharset = resolveCharset(codec, header);
+        return new DataUrlInputStream(source, codec, appliedCharset,
+                header.encoding, header.mimeType, header.headers, limits,
+                "data:".length() + metaBytes.length + 1);
+    }
+    
+    /**
+     * Reads the header of the RFC 2397 data url from the given
+     * {@link Reader} and returns a {@link DataUrlInputStream} that decodes
+     * the payload while it is read. The result is the same as for 
+     * {@link #unserialize(String)} of the read characters.
+     * @param in {@link Reader} positioned at the start of the data url. It is
+     * read until its end.
+     * @return {@link DataUrlInputStream} to read the decoded payload from
+     * @throws MalformedURLException If the header can't be unserialized
+     * @throws IOException If reading from the {@link Reader} fails
+     */
+    public DataUrlInputStream openStream(Reader in) throws IOException {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        return openStream(new ReaderInputStream(in));
+    }
+    
+    /**
+     * Reads the header of the RFC 2397 data url from the given
+     * {@link ReadableByteChannel} and returns a {@link DataUrlInputStream}
+     * that decodes the payload while it is read. Bytes are read the same way
+     * as by {@link #openStream(InputStream)}.
+     * @param in {@link ReadableByteChannel} positioned at the start of the
+     * data url. It is read until its end.
+     * @return {@link DataUrlInputStream} to read the decoded payload from
+     * @throws MalformedURLException If the header can't be unserialized
+     * @throws IOException If reading from the {@link ReadableByteChannel} 
+     * fails
+     */
+    public DataUrlInputStream openStream(ReadableByteChannel in) 
+            throws IOException {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        return openStream(Channels.newInputStream(in));
+    }
+    
+    /**
+     * Creates a non-blocking parser for a data url that arrives in chunks.
+     * The header and the decoded payload are passed to the given listener
+     * while the chunks are fed.
+     * @param listener Receives the parsed header and the decoded payload
+     * @return New {@link DataUrlPushParser}
+     * @throws NullPointerException if listener is {@code null}
+     */
+    public DataUrlPushParser newPushParser(IDataUrlPushListener listener)
+            throws NullPointerException {
+        if (listener == null) {
+            throw new NullPointerException("listener is null!");
+        }
+        return new DataUrlPushParser(this, listener);
+    }
+    
+    /**
+     * Reads the header fields between {@code data:} and the first comma from
+     * the given {@link InputStream}. The comma is consumed.
+     * @param in {@link InputStream}
+     * @return UTF-8 encoded header fields
+     * @throws MalformedURLException If the protocol is wrong or no comma was 
+     * found
+     * @throws IOException If reading from the {@link InputStream} fails
+     */
+    private byte[] readMetaBytes(InputStream in) throws IOException {
+        String protocol = "data:";
+        for (int i = 0; i < protocol.length(); i++) {
+            if (in.read() != protocol.charAt(i)) {
+                throw new DataUrlParseException("Wrong protocol", 
+                        Phase.HEADER, Reason.WRONG_PROTOCOL, i);
+            }
+        }
+        ByteArrayOutputStream meta = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != ',') {
+            if (c == -1) {
+                throw new DataUrlParseException("Missing comma", 
+                        Phase.HEADER, Reason.MISSING_COMMA, 
+                        protocol.length() + meta.size());
             }
+            meta.write(c);
+            limits.checkEncodedLength(protocol.length() + meta.size(), 
+                    Phase.HEADER);
         }
+        return meta.toByteArray();
+    }
+    
+    /**
+     * Parses the header fields between {@code data:} and the first comma in
+     * a single pass.
+     * <p>
+     * The first field is the MIME-Type if it looks like one. The last field
+     * is the encoding if it contains no {@code '='}. All other fields are
+     * {@code name=value} pairs. Trailing semicolons are ignored.
+     * </p>
+     * @param src Source
+     * @param start Start of the header fields, inclusive
+     * @param end End of the header fields (the comma), exclusive
+     * @return Parsed {@link Header}
+     * @throws DataUrlParseException If the header fields are malformed
+     */
+    Header parseHeader(CharSequence src, int start, int end) 
+            throws DataUrlParseException {
+        String mimeType = null;
+        HeaderMap.Builder headers = null;
+        DataUrlEncoding encoding = DataUrlEncoding.URL;
         
-        DataUrlEncoding encoding;
-        try {
-            encoding = DataUrlEncoding.valueOfEncodingName(encodingName);
-        } catch (IllegalArgumentException e) {
-            throw new MalformedURLException("Unknown encoding \"" + encodingName
-                    + "\"");
+        int last = end;
+        while (last > start && src.charAt(last - 1) == ';') {
+            last--;
+        }
+        if (last == start && last != end) {
+            // Nothing but semicolons
+            limits.checkMimeType(mimeType);
+            return new Header(mimeType, Collections.emptyMap(), encoding, -1);
+        }
+
+        int parameters = 0;
+        long charsetOffset = -1;
+        int fieldStart = start;
+        while (true) {
+            int slash = -1;
+            int equals = -1;
+            boolean mimeTypeChars = true;
+            int fieldEnd = fieldStart;
+            for (; fieldEnd < last; fieldEnd++) {
+                char c = src.charAt(fieldEnd);
+                if (c == ';') {
+                    break;
+                } else if (c == '/' && slash == -1) {
+                    slash = fieldEnd;
+                } else if (!isMimeTypeChar(c)) {
+                    mimeTypeChars = false;
+                    if (c == '=' && equals == -1) {
+                        equals = fieldEnd;
+                    }
+                }
+            }
+            
+            if (fieldStart == start && mimeTypeChars && slash > fieldStart
+                    && slash < fieldEnd - 1) {
+                MimeType common = MimeType.lookup(src, fieldStart, fieldEnd);
+                mimeType = common != null ? common.toString()
+                        : src.subSequence(fieldStart, fieldEnd).toString();
+            } else if (fieldEnd == last && equals == -1) {
+                encoding = getEncoding(src, start, fieldStart, fieldEnd);
+            } else if (equals - fieldStart < 1) {
+                throw new DataUrlParseException("Malformed header field \""
+                        + src.subSequence(fieldStart, fieldEnd) + "\"", 
+                        equals == -1 ? Phase.HEADER : Phase.PARAMETER, 
+                        Reason.MALFORMED_FIELD, 
+                        headerOffset(start, fieldStart));
+            } else {
+                limits.checkParameter(parameters++, fieldEnd - fieldStart,
+                        headerOffset(start, fieldStart));
+                if (headers == null) {
+                    headers = new HeaderMap.Builder();
+                }
+                String name = HeaderMap.intern(src, fieldStart, equals);
+                if ("charset".equals(name)) {
+                    charsetOffset = headerOffset(start, fieldStart);
+                }
+                headers.put(name, decodeValue(src, start, equals + 1, 
+                        fieldEnd));
+            }
+            
+            if (fieldEnd == last) {
+                break;
+            }
+            fieldStart = fieldEnd + 1;
         }
-        IEncoder encoder = getAppliedEncoder(encoding);
-        String appliedCharset = getAppliedCharset(headers);
         
+        limits.checkMimeType(mimeType);
+        return new Header(mimeType, headers != null ? headers.build()
+                : Collections.emptyMap(), encoding, charsetOffset);
+    }
+    
+    /**
+     * Checks if the given character is allowed in the type or subtype of a
+     * MIME-Type
+     * @param c Character
+     * @return {@code true} if it is allowed
+     */
+    private static boolean isMimeTypeChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-'
+                || c == '+' || c == '.';
+    }
+    
+    /**
+     * Gets the {@link DataUrlEncoding} with the name in the given range
+     * @param src Source
+     * @param header Start of the header fields
+     * @param start Start of the name, inclusive
+     * @param end End of the name, exclusive
+     * @return Matching {@link DataUrlEncoding}
+     * @throws DataUrlParseException If the encoding is unknown
+     */
+    private static DataUrlEncoding getEncoding(CharSequence src, int header,
+            int start, int end) throws DataUrlParseException {
+        for (DataUrlEncoding encoding : ENCODINGS) {
+            String name = encoding.getEncodingName();
+            if (name.length() == end - start 
+                    && startsWith(src, start, end, name)) {
+                return encoding;
+            }
+        }
+        throw new DataUrlParseException("Unknown encoding \"" 
+                + src.subSequence(start, end) + "\"", Phase.HEADER, 
+                Reason.UNKNOWN_ENCODING, headerOffset(header, start));
+    }
+    
+    /**
+     * Decodes the UTF-8 URL encoded header value in the given range
+     * @param src Source
+     * @param header Start of the header fields
+     * @param start Start of the value, inclusive
+     * @param end End of the value, exclusive
+     * @return Decoded value
+     * @throws DataUrlParseException If the value contains illegal escape
+     * sequences
+     */
+    private static String decodeValue(CharSequence src, int header, 
+            int start, int end) throws DataUrlParseException {
+        for (int i = start; i < end; i++) {
+            char c = src.charAt(i);
+            if (c == '%' || c == '+') {
+                try {
+                    return URLEncoding.decode(src, start, end);
+                } catch (IllegalArgumentException e) {
+                    int index = e instanceof IllegalInputException
+                            ? (int) ((IllegalInputException) e).getIndex()
+                            : start;
+                    DataUrlParseException dpe = new DataUrlParseException(
+                            e.getMessage(), Phase.PARAMETER, 
+                            Reason.MALFORMED_VALUE, 
+                            headerOffset(header, index));
+                    dpe.initCause(e);
+                    throw dpe;
+                }
+            }
+        }
+        return HeaderMap.intern(src, start, end);
+    }
+    
+    /**
+     * Gets the offset of a header character in the data url
+     * @param header Start of the header fields
+     * @param index Index of the character
+     * @return Offset from the start of the data url
+     */
+    private static long headerOffset(int header, int index) {
+        return "data:".length() + index - header;
+    }
+    
+    /**
+     * Creates the failure of a data url that doesn't start with 
+     * {@code data:}
+     * @param src Source
+     * @param start Start of the data url, inclusive
+     * @param end End of the data url, exclusive
+     * @return {@link DataUrlParseException} to throw
+     */
+    private static DataUrlParseException wrongProtocol(CharSequence src, 
+            int start, int end) {
+        String protocol = "data:";
+        int i = 0;
+        while (start + i < end && i < protocol.length() 
+                && src.charAt(start + i) == protocol.charAt(i)) {
+            i++;
+        }
+        return new DataUrlParseException("Wrong protocol", Phase.HEADER,
+                Reason.WRONG_PROTOCOL, i);
+    }
+    
+    /**
+     * Gets the payload of the given {@link DataUrl}, decoding it if it was
+     * unserialized lazily
+     * @param dataURL {@link DataUrl}
+     * @return Payload
+     * @throws MalformedURLException If the payload can't be decoded
+     */
+    private static byte[] getData(DataUrl dataURL) 
+            throws MalformedURLException {
         try {
-            data = encoder.decode(appliedCharset, dataString);
-        } catch (Exception e) {
-            throw new MalformedURLException("");
+            return dataURL.getData();
+        } catch (UncheckedIOException e) {
+            throw (MalformedURLException) e.getCause();
+        }
+    }
+    
+    /**
+     * Gets the payload of the given {@link DataUrl} as {@link ByteBuffer}
+     * without copying it. A byte[] payload is wrapped, so its array stays
+     * accessible to the codec.
+     * @param dataURL {@link DataUrl}
+     * @return Payload
+     * @throws MalformedURLException If the payload can't be decoded
+     */
+    private static ByteBuffer getDataBuffer(DataUrl dataURL) 
+            throws MalformedURLException {
+        if (dataURL.hasDataBuffer()) {
+            return dataURL.getDataBuffer();
+        }
+        return ByteBuffer.wrap(getData(dataURL));
+    }
+    
+    /**
+     * Writes all remaining bytes of the given buffer to the given channel
+     * @param out Target channel
+     * @param src Bytes to write
+     * @throws IOException If writing fails
+     */
+    private static void writeFully(WritableByteChannel out, ByteBuffer src)
+            throws IOException {
+        while (src.hasRemaining()) {
+            out.write(src);
+        }
+    }
+    
+    /**
+     * Checks if the given {@link String} only contains US-ASCII characters
+     * @param s {@link String}
+     * @return {@code true} if it only contains US-ASCII characters
+     */
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Writes the given US-ASCII {@link String} to the given buffer
+     * @param s US-ASCII {@link String}
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Offset behind the written bytes
+     */
+    private static int writeAscii(String s, byte[] dst, int off) {
+        for (int i = 0; i < s.length(); i++) {
+            dst[off++] = (byte) s.charAt(i);
+        }
+        return off;
+    }
+    
+    /**
+     * Converts the given length to an array length
+     * @param length Length
+     * @return Array length
+     * @throws MalformedURLException If the length exceeds the maximum array 
+     * length
+     */
+    private static int toArrayLength(long length) 
+            throws MalformedURLException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new MalformedURLException("Data url too long");
+        }
+        return (int) length;
+    }
+    
+    /**
+     * Checks if a buffer has enough space
+     * @param capacity Capacity of the buffer
+     * @param off Offset in the buffer
+     * @param length Required length
+     * @throws IndexOutOfBoundsException If there is not enough space
+     */
+    private static void checkBounds(int capacity, int off, long length) 
+            throws IndexOutOfBoundsException {
+        if (off < 0 || off + length > capacity) {
+            throw new IndexOutOfBoundsException("offset " + off + ", length "
+                    + length + ", capacity " + capacity);
+        }
+    }
+    
+    /**
+     * Checks if the given range starts with the given prefix
+     * @param src Source
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param prefix Prefix
+     * @return {@code true} if the range starts with the prefix
+     */
+    private static boolean startsWith(CharSequence src, int start, int end,
+            String prefix) {
+        int length = prefix.length();
+        if (end - start < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (src.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Finds the first occurrence of the given character in the given range
+     * @param src Source
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param c Character to find
+     * @return Index of the character or {@code -1}
+     */
+    private static int indexOf(CharSequence src, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (src.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Gets the registry that resolves the codecs of the encodings
+     * @return Registry of the codecs
+     */
+    public DataUrlCodecRegistry getCodecRegistry() {
+        return codecRegistry;
+    }
+
+    /**
+     * Sets the registry that resolves the codecs of the encodings. Defaults
+     * to the unmodifiable {@link DataUrlCodecRegistry#getDefault()}, copy it
+     * with {@link DataUrlCodecRegistry#DataUrlCodecRegistry(
+     * DataUrlCodecRegistry)} to register custom codecs.
+     * @param codecRegistry Registry of the codecs
+     * @throws NullPointerException if codecRegistry is {@code null}
+     */
+    public void setCodecRegistry(DataUrlCodecRegistry codecRegistry) 
+            throws NullPointerException {
+        if (codecRegistry == null) {
+            throw new NullPointerException("codecRegistry is null!");
         }
+        this.codecRegistry = codecRegistry;
+    }
+    
+    /**
+     * Checks if payloads are decoded on first access
+     * @return {@code true} if payloads are decoded on first access
+     * @see #setLazy(boolean)
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
 
-        DataUrl dataUrl = new DataUrl(data, encoding, mimeType, headers);
+    /**
+     * Sets if payloads are decoded on first access. If enabled,
+     * {@link #unserialize(CharSequence, int, int)} and its variants only
+     * parse the header and the returned {@link DataUrl} keeps a reference to
+     * the source. The payload is decoded by the first call to
+     * {@link DataUrl#getData()}. The source must not be modified until then.
+     * Streams are always decoded immediately.
+     * @param lazy Decode payloads on first access
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+    
+    /**
+     * Gets the minimum payload size to encode and decode Base64 in parallel
+     * @return Minimum payload size in bytes, {@code -1} if disabled
+     * @see #setParallelThreshold(int)
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the minimum payload size to encode and decode Base64 in parallel.
+     * Payloads of at least this size are split into aligned chunks that are
+     * encoded or decoded concurrently in the {@link #getParallelPool()} into
+     * one shared buffer. The offset of an illegal character is reported like
+     * in sequential mode. Only applies to codecs that support it, see 
+     * {@link IDataUrlCodec#isParallelCodec()}, and to 
+     * {@link #unserialize(CharSequence, int, int)}, its variants and the 
+     * buffer based serialize methods. Disabled by default.
+     * @param parallelThreshold Minimum payload size in bytes, {@code -1} to
+     * disable
+     * @throws IllegalArgumentException if parallelThreshold is less than 
+     * {@code -1}
+     */
+    public void setParallelThreshold(int parallelThreshold) 
+            throws IllegalArgumentException {
+        if (parallelThreshold < -1) {
+            throw new IllegalArgumentException(
+                    "parallelThreshold is less than -1!");
+        }
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Gets the pool for parallel encoding and decoding
+     * @return Pool, {@link ForkJoinPool#commonPool()} if none is set
+     */
+    public ForkJoinPool getParallelPool() {
+        return parallelPool != null ? parallelPool 
+                : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Sets the pool for parallel encoding and decoding. The pool isn't 
+     * serialized.
+     * @param parallelPool Pool or {@code null} for the 
+     * {@link ForkJoinPool#commonPool()}
+     */
+    public void setParallelPool(ForkJoinPool parallelPool) {
+        this.parallelPool = parallelPool;
+    }
+    
+    /**
+     * Checks if batches are spread across the {@link #getParallelPool()}
+     * @return {@code true} if batches are processed in parallel
+     * @see #setParallelBatches(boolean)
+     */
+    public boolean isParallelBatches() {
+        return parallelBatches;
+    }
+
+    /**
+     * Sets if {@link #serializeAll(Collection)}, 
+     * {@link #unserializeAll(List)} and their {@link Stream} variants spread
+     * their items across the {@link #getParallelPool()}. Each task processes
+     * up to 64 consecutive items with its own scratch buffers. The order of
+     * the results is the same in both modes. Disabled by default.
+     * @param parallelBatches Process batches in parallel
+     */
+    public void setParallelBatches(boolean parallelBatches) {
+        this.parallelBatches = parallelBatches;
+    }
+    
+    /**
+     * Checks if payloads are decoded into direct {@link ByteBuffer}s
+     * @return {@code true} if payloads are decoded into direct buffers
+     * @see #setDirectBuffers(boolean)
+     */
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    /**
+     * Sets if payloads are decoded into direct {@link ByteBuffer}s outside
+     * of the Java heap. The returned {@link DataUrl}s are backed by these
+     * buffers, see {@link DataUrl#getDataBuffer()}. Applies to
+     * {@link #unserialize(CharSequence, int, int)} and its variants unless
+     * {@link #setLazy(boolean) lazy} decoding is enabled, which takes 
+     * precedence. Direct decoding is never parallel. Disabled by default.
+     * @param directBuffers Decode payloads into direct buffers
+     */
+    public void setDirectBuffers(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+    }
+    
+    /**
+     * Gets the resource limits enforced while unserializing
+     * @return Resource limits, never {@code null}
+     * @see #setLimits(DataUrlLimits)
+     */
+    public DataUrlLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Sets the resource limits enforced while unserializing. Applies to 
+     * {@link #unserialize(CharSequence, int, int)} and its variants, 
+     * {@link #openStream(InputStream)} and 
+     * {@link #newPushParser(IDataUrlPushListener)}. Violations are reported
+     * as {@link MalformedURLException}. Lazy decoding is skipped if the
+     * payload could exceed the maximum decoded size. Defaults to
+     * {@link DataUrlLimits#UNLIMITED}.
+     * @param limits Resource limits
+     * @throws NullPointerException if limits is {@code null}
+     */
+    public void setLimits(DataUrlLimits limits) throws NullPointerException {
+        if (limits == null) {
+            throw new NullPointerException("limits is null!");
+        }
+        this.limits = limits;
+    }
+    
+    /**
+     * Checks if data urls are serialized in canonical form
+     * @return {@code true} if data urls are serialized in canonical form
+     * @see #setCanonical(boolean)
+     */
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    /**
+     * Serialize data urls in canonical form, so equal data urls are always
+     * serialized to the same {@link String}, no matter in which order their
+     * headers/parameters were set. The MIME-Type and the value of the
+     * charset are lower cased and the headers/parameters are sorted by 
+     * name. Disabled by default.
+     * @param canonical Serialize in canonical form
+     */
+    public void setCanonical(boolean canonical) {
+        this.canonical = canonical;
+    }
+    
+    /**
+     * Gets the listener that receives the metrics of every call
+     * @return Listener or {@code null} if disabled
+     * @see #setMetricsListener(IDataUrlMetricsListener)
+     */
+    public IDataUrlMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the listener that receives the metrics of every call that
+     * serializes or unserializes a whole data url. Streams opened by 
+     * {@link #openStream(InputStream)} and push parsers are not measured.
+     * Nothing is measured while no listener is set. Disabled by default.
+     * @param metricsListener Listener or {@code null} to disable
+     * @see DataUrlMetrics
+     */
+    public void setMetricsListener(IDataUrlMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+    
+    /**
+     * Gets the pool to encode or decode a payload of the given size with
+     * @param codec Codec of the payload
+     * @param size Size of the payload in bytes
+     * @return Pool or {@code null} to encode or decode sequentially
+     */
+    private ForkJoinPool getAppliedPool(IDataUrlCodec codec, long size) {
+        if (parallelThreshold < 0 || size < parallelThreshold 
+                || !codec.isParallelCodec()) {
+            return null;
+        }
+        return getParallelPool();
+    }
+    
+    /**
+     * Gets the charset that should be used to encode the {@link DataUrl}
+     * @param headers Headers map
+     * @return Applied charset, never {@code null}
+     */
+    protected String getAppliedCharset(Map<String, String> headers) {
+        String encoding;
+        if (headers != null && (encoding = headers.get("charset")) != null) {
+            return encoding;
+        }
+        return "US-ASCII";
+    }
+
+    /**
+     * Resolves the charset the given codec uses to encode the given 
+     * {@link DataUrl}
+     * @param codec Applied codec
+     * @param dataURL {@link DataUrl} to serialize
+     * @return Applied charset or {@code null} if the codec doesn't use it
+     * @throws DataUrlParseException If the charset is unknown
+     */
+    private Charset resolveCharset(IDataUrlCodec codec, DataUrl dataURL)
+            throws DataUrlParseException {
+        return codec.usesCharset(false) 
+                ? resolveCharset(dataURL.getHeaders(), -1) : null;
+    }
+    
+    /**
+     * Resolves the charset the given codec uses to decode the payload of a
+     * data url with the given parsed {@link Header}
+     * @param codec Applied codec
+     * @param header Parsed header
+     * @return Applied charset or {@code null} if the codec doesn't use it
+     * @throws DataUrlParseException If the charset is unknown
+     */
+    Charset resolveCharset(IDataUrlCodec codec, Header header)
+            throws DataUrlParseException {
+        return codec.usesCharset(true) 
+                ? resolveCharset(header.headers, header.charsetOffset) : null;
+    }
+
+    /**
+     * Resolves the charset that should be used to encode the
+     * {@link DataUrl}. Resolved {@link Charset}s are cached by name.
+     * @param headers Headers map
+     * @param offset Offset of the charset parameter in the data url or 
+     * {@code -1}
+     * @return Applied charset, never {@code null}
+     * @throws DataUrlParseException If the charset is unknown
+     * @see #getAppliedCharset(java.util.Map)
+     */
+    private Charset resolveCharset(Map<String, String> headers, long offset)
+            throws DataUrlParseException {
+        String name = getAppliedCharset(headers);
+        Charset charset = CHARSETS.get(name);
+        if (charset == null) {
+            try {
+                charset = Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                throw new DataUrlParseException("Unknown charset \""
+                        + name + "\"", Phase.PARAMETER, 
+                        Reason.UNKNOWN_CHARSET, offset);
+            }
+            CHARSETS.putIfAbsent(name, charset);
+        }
+        return charset;
+    }
 
-        return dataUrl;
+    /**
+     * Get the matching codec for the given encoding
+     * @param encoding Encoding
+     * @return Matching codec
+     * @throws MalformedURLException If no codec is registered for the
+     * encoding
+     */
+    protected IDataUrlCodec getAppliedCodec(DataUrlEncoding encoding) 
+            throws MalformedURLException {
+        IDataUrlCodec codec = codecRegistry.getCodec(encoding);
+        if (codec == null) {
+            throw new DataUrlParseException("No codec for encoding \"" 
+                    + encoding.getEncodingName() + "\"", Phase.HEADER, 
+                    Reason.NO_CODEC, -1);
+        }
+        return codec;
     }
     
     /**
-     * Gets the charset that should be used to encode the {@link DataUrl}
-     * @param headers Headers map
-     * @return Applied charset, never {@code null}
+     * Gets the matching codec for the given encoding while unserializing
+     * @param encoding Encoding
+     * @return Matching codec
+     * @throws DataUrlParseException If no codec is registered for the
+     * encoding
+     * @see #getAppliedCodec(DataUrlEncoding)
      */
-    protected String getAppliedCharset(Map<String, String> headers) {
-        String encoding;
-        if (headers != null && (encoding = headers.get("charset")) != null) {
-            return encoding;
+    IDataUrlCodec getCodec(DataUrlEncoding encoding) 
+            throws DataUrlParseException {
+        try {
+            return getAppliedCodec(encoding);
+        } catch (DataUrlParseException e) {
+            throw e;
+        } catch (MalformedURLException e) {
+            // Thrown by an overriding method
+            DataUrlParseException dpe = new DataUrlParseException(
+                    e.getMessage(), Phase.HEADER, Reason.NO_CODEC, -1);
+            dpe.initCause(e);
+            throw dpe;
         }
-        return "US-ASCII"; 
     }
     
     /**
      * Get the matching encoder for the given encoding
      * @param encoding Encoding
      * @return Matching encoder
+     * @deprecated Use {@link #getAppliedCodec(DataUrlEncoding)}
      */
+    @Deprecated
     protected IEncoder getAppliedEncoder(DataUrlEncoding encoding) {
-        switch (encoding) {
-            case BASE64:
-                return base64Encoder;
-            case URL:
-                return urlEncodedEncoder;
+        try {
+            return new CodecEncoder(getAppliedCodec(encoding));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
         }
-        throw new IllegalArgumentException();
     }
     
     /**
      * A encoder for {@link DataUrl}s
      *
      * @author Max Schuster
+     * @deprecated Use {@link IDataUrlCodec}
      */
+    @Deprecated
     protected interface IEncoder extends Serializable {
 
         /**
@@ -230,92 +1878,552 @@ public class DataUrlSerializer implements IDataUrlSerializer {
         public byte[] decode(String charset, String string) throws Exception;
 
         /**
-         * Encodes the given byte[] of data
+         * Encodes the given byte[]
          *
          * @param charset Charset
-         * @param data String to encode
-         * @return Encoded String
+         * @param data Data to encode
+         * @return Encoded data
          * @throws Exception If something goes wrong
          */
         public String encode(String charset, byte[] data) throws Exception;
 
     }
+    
+    /**
+     * {@link IEncoder} backed by an {@link IDataUrlCodec}
+     */
+    @Deprecated
+    private static final class CodecEncoder implements IEncoder {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final IDataUrlCodec codec;
+
+        CodecEncoder(IDataUrlCodec codec) {
+            this.codec = codec;
+        }
 
+        @Override
+        public byte[] decode(String charset, String string) throws Exception {
+            return codec.decode(toCharset(charset), string, 0, 
+                    string.length());
+        }
+
+        @Override
+        public String encode(String charset, byte[] data) throws Exception {
+            Charset cs = toCharset(charset);
+            char[] dst = new char[Math.toIntExact(
+                    codec.getEncodedLength(cs, data))];
+            return new String(dst, 0, codec.encodeTo(cs, data, dst, 0));
+        }
+        
+        private static Charset toCharset(String charset) {
+            return charset == null ? null : Charset.forName(charset);
+        }
+        
+    }
+    
+    /**
+     * A call whose metrics are passed to the 
+     * {@link IDataUrlMetricsListener}
+     * 
+     * @param <T> Type of the result
+     * @param <E> Type of the failure
+     * @author Max Schuster
+     */
+    private interface MeasuredCall<T, E extends IOException> {
+        
+        public T call() throws E;
+        
+    }
+    
+    /**
+     * Processes a range of the items of a batch
+     *
+     * @author Max Schuster
+     */
+    private interface BatchRange {
+        
+        /**
+         * Processes the given range of items
+         * @param from Start of the range, inclusive
+         * @param to End of the range, exclusive
+         */
+        public void process(int from, int to);
+        
+    }
+    
     /**
-     * Base64 implementation of {@link IEncoder}
+     * Processes a range of the items of a batch, splitting it until it fits
+     * into {@link #BATCH_CHUNK_SIZE}
      *
      * @author Max Schuster
      */
-    protected class Base64Encoder implements IEncoder {
+    private static final class BatchTask extends RecursiveAction {
 
         private static final long serialVersionUID = 1L;
+        
+        /**
+         * Processes the items
+         */
+        private final BatchRange range;
+        
+        /**
+         * Start of the range, inclusive
+         */
+        private final int from;
+        
+        /**
+         * End of the range, exclusive
+         */
+        private final int to;
+
+        public BatchTask(BatchRange range, int from, int to) {
+            this.range = range;
+            this.from = from;
+            this.to = to;
+        }
 
         @Override
-        public byte[] decode(String charset, String string) {
-            return Base64.getDecoder().decode(string);
+        protected void compute() {
+            if (to - from <= BATCH_CHUNK_SIZE) {
+                range.process(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new BatchTask(range, from, mid), 
+                    new BatchTask(range, mid, to));
+        }
+        
+    }
+    
+    /**
+     * Buffers reused by consecutive serializations of a batch. They grow to
+     * the largest serialized data url.
+     *
+     * @author Max Schuster
+     */
+    private static final class ScratchBuffers {
+        
+        /**
+         * US-ASCII buffer
+         */
+        private byte[] bytes = new byte[0];
+        
+        /**
+         * Character buffer
+         */
+        private char[] chars = new char[0];
+        
+        /**
+         * Gets a byte buffer of at least the given length
+         * @param length Minimum length
+         * @return Buffer
+         */
+        public byte[] getBytes(int length) {
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            return bytes;
+        }
+        
+        /**
+         * Gets a character buffer of at least the given length
+         * @param length Minimum length
+         * @return Buffer
+         */
+        public char[] getChars(int length) {
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            return chars;
+        }
+        
+    }
+    
+    /**
+     * Undecoded payload of a lazily unserialized {@link DataUrl}
+     *
+     * @author Max Schuster
+     */
+    private static final class LazyData implements DataUrl.EncodedData {
+        
+        /**
+         * Codec of the payload
+         */
+        private final IDataUrlCodec codec;
+        
+        /**
+         * Applied charset
+         */
+        private final Charset charset;
+        
+        /**
+         * Pool to decode in or {@code null}
+         */
+        private final ForkJoinPool pool;
+        
+        /**
+         * Source of the payload
+         */
+        private final CharSequence src;
+        
+        /**
+         * Start of the data url
+         */
+        private final int origin;
+        
+        /**
+         * Start of the payload, inclusive
+         */
+        private final int start;
+        
+        /**
+         * End of the payload, exclusive
+         */
+        private final int end;
+
+        public LazyData(IDataUrlCodec codec, Charset charset, 
+                ForkJoinPool pool, CharSequence src, int origin, int start, 
+                int end) {
+            this.codec = codec;
+            this.charset = charset;
+            this.pool = pool;
+            this.src = src;
+            this.origin = origin;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public byte[] decode() throws MalformedURLException {
+            return DataUrlSerializer.decode(codec, charset, pool, src, origin,
+                    start, end);
         }
 
         @Override
-        public String encode(String charset, byte[] data) {
-            return new String(Base64.getEncoder().encode(data));
+        public int getEncodedLength() {
+            return end - start;
         }
 
+        @Override
+        public int getDecodedLengthEstimate() {
+            return codec.getDecodedLengthEstimate(src, start, end);
+        }
+        
     }
+    
+    /**
+     * Parsed header of a data url
+     *
+     * @author Max Schuster
+     */
+    static final class Header {
+        
+        /**
+         * MIME-Type or {@code null}
+         */
+        final String mimeType;
+        
+        /**
+         * Headers/parameters
+         */
+        final Map<String, String> headers;
+        
+        /**
+         * Encoding method
+         */
+        final DataUrlEncoding encoding;
+        
+        /**
+         * Offset of the charset parameter in the data url or {@code -1}
+         */
+        final long charsetOffset;
 
+        public Header(String mimeType, Map<String, String> headers, 
+                DataUrlEncoding encoding, long charsetOffset) {
+            this.mimeType = mimeType;
+            this.headers = headers;
+            this.encoding = encoding;
+            this.charsetOffset = charsetOffset;
+        }
+        
+    }
+    
     /**
-     * URL Encoded implemention of {@link IEncoder}
+     * Read-only {@link CharSequence} view of a {@link ByteBuffer} with one
+     * character per byte. It is only exact for US-ASCII, ranges that contain
+     * other bytes have to be decoded as UTF-8 with 
+     * {@link #decode(int, int)} before they are parsed.
      *
      * @author Max Schuster
      */
-    protected class URLEncodedEncoder implements IEncoder {
+    static class ByteBufferCharSequence implements CharSequence {
+        
+        /**
+         * Viewed bytes
+         */
+        private final ByteBuffer buffer;
+        
+        /**
+         * Absolute index of the first viewed byte
+         */
+        private final int offset;
+        
+        /**
+         * Number of viewed bytes
+         */
+        private final int length;
+        
+        /**
+         * Start of the last search for a byte outside of US-ASCII in the 
+         * upper half and the found index or the length in the lower half, 
+         * {@code -1} before the first search
+         */
+        private volatile long nonAscii = -1;
 
-        private static final long serialVersionUID = 1L;
+        public ByteBufferCharSequence(ByteBuffer buffer) {
+            this(buffer, buffer.position(), buffer.remaining());
+        }
+
+        private ByteBufferCharSequence(ByteBuffer buffer, int offset, 
+                int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
 
         @Override
-        public byte[] decode(String charset, String string) throws Exception {
-            return URLEncoding.decode(string, charset).getBytes(charset);
+        public int length() {
+            return length;
         }
 
         @Override
-        public String encode(String charset, byte[] data) throws Exception {
-            return URLEncoding.encode(new String(data, charset), charset);
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index);
+            }
+            return (char) (buffer.get(offset + index) & 0xFF);
         }
 
-    }
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start 
+                        + ", end " + end);
+            }
+            return new ByteBufferCharSequence(buffer, offset + start, 
+                    end - start);
+        }
+        
+        /**
+         * Checks if the given range only contains US-ASCII bytes
+         * @param start Start of the range, inclusive
+         * @param end End of the range, exclusive
+         * @return {@code true} if no byte is outside of US-ASCII
+         */
+        boolean isAscii(int start, int end) {
+            // Scanners check many overlapping ranges, so the last search is
+            // reused if it covers the start
+            long cached = nonAscii;
+            int from = (int) (cached >>> 32);
+            int index = (int) cached;
+            if (cached == -1 || start < from || index < start) {
+                index = start;
+                while (index < length && buffer.get(offset + index) >= 0) {
+                    index++;
+                }
+                nonAscii = (long) start << 32 | index;
+            }
+            return index >= end;
+        }
+        
+        /**
+         * Decodes the given range as UTF-8
+         * @param start Start of the range, inclusive
+         * @param end End of the range, exclusive
+         * @return Decoded characters
+         */
+        String decode(int start, int end) {
+            ByteBuffer range = buffer.duplicate();
+            range.limit(offset + end).position(offset + start);
+            return StandardCharsets.UTF_8.decode(range).toString();
+        }
 
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+        
+    }
+    
     /**
-     * Encodes/Decodes a {@link String} RFC 3986 compatible
+     * Reads characters from a {@link Reader} and provides them UTF-8 encoded
      *
      * @author Max Schuster
      */
-    private static class URLEncoding {
+    private static class ReaderInputStream extends InputStream {
+        
+        /**
+         * Source {@link Reader}
+         */
+        private final Reader in;
+        
+        /**
+         * Encoder of the read characters
+         */
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8
+                .newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        
+        /**
+         * Characters read from the {@link Reader}, in write mode
+         */
+        private final CharBuffer chars = CharBuffer.allocate(1024);
+        
+        /**
+         * Encoded bytes, in read mode
+         */
+        private final ByteBuffer bytes = ByteBuffer.allocate(4096);
+        
+        /**
+         * End of the {@link Reader} reached
+         */
+        private boolean eof = false;
+
+        public ReaderInputStream(Reader in) {
+            this.in = in;
+            bytes.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!bytes.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return bytes.get() & 0xFF;
+        }
 
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (!bytes.hasRemaining() && !fill()) {
+                return -1;
+            }
+            int n = Math.min(len, bytes.remaining());
+            bytes.get(b, off, n);
+            return n;
+        }
+        
         /**
-         * Encodes a {@link String}
-         *
-         * @param s String to encode
-         * @param enc Encoding to use
-         * @return Encoded {@link String}
-         * @throws UnsupportedEncodingException If the named encoding is not
-         * supported
+         * Fills the byte buffer
+         * @return {@code false} if the end of the {@link Reader} was reached
+         * @throws IOException If reading fails
          */
-        public static String encode(String s, String enc) throws UnsupportedEncodingException {
-            return URLEncoder.encode(s, enc).replace("+", "%20");
+        private boolean fill() throws IOException {
+            bytes.clear();
+            while (!eof && bytes.position() == 0) {
+                eof = in.read(chars) == -1;
+                chars.flip();
+                encoder.encode(chars, bytes, eof);
+                if (eof) {
+                    encoder.flush(bytes);
+                }
+                chars.compact();
+            }
+            bytes.flip();
+            return bytes.hasRemaining();
         }
 
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+        
+    }
+    
+    /**
+     * Passes everything to the wrapped {@link OutputStream} and counts it,
+     * but only flushes it on {@link #close()}
+     *
+     * @author Max Schuster
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        
         /**
-         * Decodes a {@link String}
-         *
-         * @param s String to decode
-         * @param enc Encoding to use
-         * @return Decoded {@link String}
-         * @throws UnsupportedEncodingException If the named encoding is not
-         * supported
+         * Number of written bytes
+         */
+        private long count = 0;
+
+        public NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+        
+    }
+    
+    /**
+     * Appends every byte written to it as a {@code char} to an
+     * {@link Appendable}. Only suitable for ASCII output.
+     *
+     * @author Max Schuster
+     */
+    private static class AppendableOutputStream extends OutputStream {
+        
+        /**
+         * Target {@link Appendable}
          */
-        public static String decode(String s, String enc) throws UnsupportedEncodingException {
-            return URLDecoder.decode(s.replace("%20", "+"), enc);
+        private final Appendable out;
+        
+        /**
+         * Conversion buffer
+         */
+        private final char[] buffer = new char[1024];
+
+        public AppendableOutputStream(Appendable out) {
+            this.out = out;
         }
 
+        @Override
+        public void write(int b) throws IOException {
+            out.append((char) (b & 0xFF));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, buffer.length);
+                for (int i = 0; i < n; i++) {
+                    buffer[i] = (char) (b[off + i] & 0xFF);
+                }
+                out.append(CharBuffer.wrap(buffer, 0, n));
+                off += n;
+                len -= n;
+            }
+        }
+        
     }
     
 }
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interns the payloads of {@link DataUrl}s by their SHA-256 digest, so
+ * {@link DataUrl}s with identical payloads share one byte[] or
+ * {@link java.nio.ByteBuffer}. The first {@link DataUrl} with a payload
+ * becomes its canonical instance. Interning an equal {@link DataUrl}
+ * returns the canonical instance itself, a {@link DataUrl} that only
+ * differs in MIME-Type, encoding or headers gets a new instance that shares
+ * the canonical payload.
+ * <p>
+ * The store is safe for concurrent use. It keeps all interned payloads
+ * until {@link #clear()} is called.
+ * </p>
+ * @author Max Schuster
+ * @see DataUrl#getDigest()
+ */
+public class DataUrlStore {
+
+    /**
+     * Canonical {@link DataUrl}s by the digest of their payload
+     */
+    private final ConcurrentMap<Digest, DataUrl> payloads =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Serializer used by {@link #unserialize(String)}
+     */
+    private final IDataUrlSerializer serializer;
+
+    /**
+     * Number of interned {@link DataUrl}s
+     */
+    private final LongAdder interned = new LongAdder();
+
+    /**
+     * Number of interned {@link DataUrl}s whose payload was already stored
+     */
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * Total size of the payloads of all interned {@link DataUrl}s
+     */
+    private final LongAdder internedBytes = new LongAdder();
+
+    /**
+     * Total size of the stored payloads
+     */
+    private final LongAdder storedBytes = new LongAdder();
+
+    /**
+     * Creates a new DataUrlStore that unserializes with a
+     * {@link DataUrlSerializer}
+     */
+    public DataUrlStore() {
+        this(new DataUrlSerializer());
+    }
+
+    /**
+     * Creates a new DataUrlStore
+     * @param serializer Serializer used by {@link #unserialize(String)}
+     * @throws NullPointerException if serializer is {@code null}
+     */
+    public DataUrlStore(IDataUrlSerializer serializer)
+            throws NullPointerException {
+        if (serializer == null) {
+            throw new NullPointerException("serializer is null!");
+        }
+        this.serializer = serializer;
+    }
+
+    /**
+     * Interns the payload of the given {@link DataUrl}
+     * @param dataURL {@link DataUrl} to intern
+     * @return The canonical {@link DataUrl} if it is equal, otherwise a
+     * {@link DataUrl} with the same MIME-Type, encoding and headers that
+     * shares the canonical payload. Interning the canonical {@link DataUrl}
+     * itself doesn't change the statistics.
+     * @throws MalformedURLException If a lazily unserialized payload can't
+     * be decoded
+     * @throws NullPointerException if dataURL is {@code null}
+     */
+    public DataUrl intern(DataUrl dataURL)
+            throws MalformedURLException, NullPointerException {
+        if (dataURL == null) {
+            throw new NullPointerException("dataURL is null!");
+        }
+        Digest digest;
+        try {
+            digest = new Digest(dataURL.getDigest());
+        } catch (UncheckedIOException e) {
+            throw (MalformedURLException) e.getCause();
+        }
+        DataUrl canonical = payloads.putIfAbsent(digest, dataURL);
+        if (canonical == dataURL) {
+            // Already interned, nothing is shared or saved
+            return canonical;
+        }
+        int size = dataURL.getDecodedLengthEstimate();
+        interned.increment();
+        internedBytes.add(size);
+        if (canonical == null) {
+            storedBytes.add(size);
+            return dataURL;
+        } else if (!canonical.getDataBuffer().equals(
+                dataURL.getDataBuffer())) {
+            // Digest collision, keep the payload of the given DataUrl
+            storedBytes.add(size);
+            return dataURL;
+        }
+        duplicates.increment();
+        if (canonical.getEncoding() == dataURL.getEncoding()
+                && Objects.equals(canonical.getMimeType(), 
+                        dataURL.getMimeType())
+                && canonical.getHeaders().equals(dataURL.getHeaders())) {
+            return canonical;
+        } else if (canonical.hasDataBuffer()) {
+            return new DataUrl(canonical.getDataBuffer(),
+                    dataURL.getEncoding(), dataURL.getMimeType(),
+                    dataURL.getHeaders());
+        }
+        return new DataUrl(canonical.getData(), dataURL.getEncoding(),
+                dataURL.getMimeType(), dataURL.getHeaders());
+    }
+
+    /**
+     * Unserializes the given RFC 2397 data url and interns its payload
+     * @param urlString RFC 2397 data url {@link String} to unserialize
+     * @return Interned {@link DataUrl}
+     * @throws MalformedURLException If the given RFC 2397 data url
+     * {@link String} can't be unserialized
+     * @see #intern(DataUrl)
+     */
+    public DataUrl unserialize(String urlString)
+            throws MalformedURLException {
+        return intern(serializer.unserialize(urlString));
+    }
+
+    /**
+     * Removes all stored payloads and resets the statistics. 
+     * {@link DataUrl}s that were interned before keep sharing their 
+     * payloads.
+     */
+    public void clear() {
+        payloads.clear();
+        interned.reset();
+        duplicates.reset();
+        internedBytes.reset();
+        storedBytes.reset();
+    }
+
+    /**
+     * Gets the statistics of this store
+     * @return Snapshot of the statistics
+     */
+    public Statistics getStatistics() {
+        return new Statistics(interned.sum(), duplicates.sum(),
+                payloads.size(), internedBytes.sum(), storedBytes.sum());
+    }
+
+    /**
+     * Snapshot of the statistics of a {@link DataUrlStore}
+     *
+     * @author Max Schuster
+     */
+    public static final class Statistics {
+
+        /**
+         * Number of interned {@link DataUrl}s
+         */
+        private final long interned;
+
+        /**
+         * Number of interned {@link DataUrl}s whose payload was already
+         * stored
+         */
+        private final long duplicates;
+
+        /**
+         * Number of stored payloads
+         */
+        private final int payloads;
+
+        /**
+         * Total size of the payloads of all interned {@link DataUrl}s
+         */
+        private final long internedBytes;
+
+        /**
+         * Total size of the stored payloads
+         */
+        private final long storedBytes;
+
+        Statistics(long interned, long duplicates, int payloads,
+                long internedBytes, long storedBytes) {
+            this.interned = interned;
+            this.duplicates = duplicates;
+            this.payloads = payloads;
+            this.internedBytes = internedBytes;
+            this.storedBytes = storedBytes;
+        }
+
+        /**
+         * Gets the number of interned {@link DataUrl}s
+         * @return Number of interned {@link DataUrl}s
+         */
+        public long getInterned() {
+            return interned;
+        }
+
+        /**
+         * Gets the number of interned {@link DataUrl}s whose payload was
+         * already stored
+         * @return Number of duplicates
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * Gets the number of stored payloads
+         * @return Number of payloads
+         */
+        public int getPayloads() {
+            return payloads;
+        }
+
+        /**
+         * Gets the ratio of duplicates to interned {@link DataUrl}s
+         * @return Dedup ratio between {@code 0} and {@code 1}, {@code 0} if
+         * nothing was interned
+         */
+        public double getDedupRatio() {
+            return interned == 0 ? 0 : (double) duplicates / interned;
+        }
+
+        /**
+         * Gets the total size of the payloads of all interned
+         * {@link DataUrl}s
+         * @return Size in bytes
+         */
+        public long getInternedBytes() {
+            return internedBytes;
+        }
+
+        /**
+         * Gets the total size of the stored payloads
+         * @return Size in bytes
+         */
+        public long getStoredBytes() {
+            return storedBytes;
+        }
+
+        /**
+         * Gets the number of bytes saved by sharing payloads
+         * @return Saved bytes
+         */
+        public long getSavedBytes() {
+            return Math.max(0, internedBytes - storedBytes);
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{ "
+                    + "interned = \"" + interned + "\", "
+                    + "duplicates = \"" + duplicates + "\", "
+                    + "payloads = \"" + payloads + "\", "
+                    + "internedBytes = \"" + internedBytes + "\", "
+                    + "storedBytes = \"" + storedBytes + "\" }";
+        }
+
+    }
+
+    /**
+     * SHA-256 digest as map key
+     */
+    private static final class Digest {
+
+        /**
+         * Digest bytes
+         */
+        private final byte[] bytes;
+
+        /**
+         * First four bytes of the digest
+         */
+        private final int hash;
+
+        public Digest(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16
+                    | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Digest
+                    && Arrays.equals(bytes, ((Digest) obj).bytes);
+        }
+
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable, insertion ordered headers/parameters map for the few entries a
+ * data url usually carries. The entries are stored in a single array and
+ * looked up by a linear scan, which beats hashing for a handful of entries.
+ *
+ * @author Max Schuster
+ */
+final class HeaderMap extends AbstractMap<String, String>
+        implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maps with more entries are copied into a {@link LinkedHashMap}
+     */
+    static final int MAX_COMPACT_SIZE = 8;
+
+    /**
+     * Header names and values that are shared instead of allocated again
+     */
+    private static final String[] COMMON = {
+        "charset", "name", "filename", "utf-8", "UTF-8", "us-ascii",
+        "US-ASCII", "iso-8859-1", "ISO-8859-1"
+    };
+
+    /**
+     * Alternating names and values
+     */
+    private final String[] entries;
+
+    private HeaderMap(String[] entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Creates an immutable copy of the given headers/parameters
+     * @param headers Headers/parameters or {@code null}
+     * @return Immutable copy, the given map itself if it already is an
+     * immutable {@link HeaderMap}
+     */
+    static Map<String, String> copyOf(Map<String, String> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return Collections.emptyMap();
+        } else if (headers instanceof HeaderMap) {
+            return headers;
+        } else if (headers.size() > MAX_COMPACT_SIZE) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+        }
+        String[] entries = new String[headers.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            entries[i++] = entry.getKey();
+            entries[i++] = entry.getValue();
+        }
+        return new HeaderMap(entries);
+    }
+
+    /**
+     * Gets the shared instance of the {@link String} in the given range if
+     * it is a common header name or value
+     * @param src Source
+     * @param start Start index, inclusive
+     * @param end End index, exclusive
+     * @return Shared or new {@link String}
+     */
+    static String intern(CharSequence src, int start, int end) {
+        int length = end - start;
+        for (String common : COMMON) {
+            if (common.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && common.charAt(i) == src.charAt(start + i)) {
+                i++;
+            }
+            if (i == length) {
+                return common;
+            }
+        }
+        return src.subSequence(start, end).toString();
+    }
+
+    /**
+     * Gets the index of the given name in the entries array
+     * @param name Header name
+     * @return Index or {@code -1}
+     */
+    private int indexOf(Object name) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (Objects.equals(entries[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return entries.length / 2;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public String get(Object key) {
+        int i = indexOf(key);
+        return i != -1 ? entries[i + 1] : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+
+                    private int i = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < entries.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (i >= entries.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, String> entry =
+                                new SimpleImmutableEntry<>(entries[i],
+                                        entries[i + 1]);
+                        i += 2;
+                        return entry;
+                    }
+
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.length / 2;
+            }
+
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < entries.length; i += 2) {
+            hash += Objects.hashCode(entries[i])
+                    ^ Objects.hashCode(entries[i + 1]);
+        }
+        return hash;
+    }
+
+    /**
+     * Collects the headers/parameters of an unserialized data url. Later
+     * values replace earlier values with the same name.
+     *
+     * @author Max Schuster
+     */
+    static final class Builder {
+
+        /**
+         * Alternating names and values
+         */
+        private String[] entries = new String[MAX_COMPACT_SIZE];
+
+        /**
+         * Used length of the entries array
+         */
+        private int length = 0;
+
+        /**
+         * Puts a header/parameter
+         * @param name Name
+         * @param value Value
+         */
+        void put(String name, String value) {
+            for (int i = 0; i < length; i += 2) {
+                if (entries[i].equals(name)) {
+                    entries[i + 1] = value;
+                    return;
+                }
+            }
+            if (length == entries.length) {
+                entries = Arrays.copyOf(entries, length * 2);
+            }
+            entries[length++] = name;
+            entries[length++] = value;
+        }
+
+        /**
+         * Builds the immutable headers/parameters map
+         * @return Immutable map
+         */
+        Map<String, String> build() {
+            if (length == 0) {
+                return Collections.emptyMap();
+            }
+            HeaderMap map = new HeaderMap(Arrays.copyOf(entries, length));
+            return length / 2 > MAX_COMPACT_SIZE ? copyOf(
+                    new LinkedHashMap<>(map)) : map;
+        }
+
+    }
+
+}
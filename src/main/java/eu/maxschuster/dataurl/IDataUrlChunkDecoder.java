@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes a payload that is pushed to it in chunks of bytes. Bytes outside
+ * of US-ASCII are UTF-8 encoded characters. An incomplete group of 
+ * characters at the end of a chunk is kept until the next chunk arrives. Instances are not thread-safe.
+ *
+ * @author Max Schuster
+ * @see IDataUrlCodec#newChunkDecoder(java.nio.charset.Charset)
+ */
+public interface IDataUrlChunkDecoder {
+
+    /**
+     * Decodes the remaining bytes of the given chunk. The position of the
+     * chunk is advanced to its limit.
+     * @param src Encoded chunk
+     * @return Decoded bytes between position and limit. The buffer may be
+     * reused by the next call.
+     * @throws IllegalArgumentException If the chunk can't be decoded
+     */
+    public ByteBuffer decode(ByteBuffer src) throws IllegalArgumentException;
+
+    /**
+     * Decodes the kept characters at the end of the payload
+     * @return Decoded bytes between position and limit
+     * @throws IllegalArgumentException If the payload ends illegally
+     */
+    public ByteBuffer finish() throws IllegalArgumentException;
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+
+/**
+ * Encodes and decodes the payload of {@link DataUrl}s for one encoding
+ * token. Implementations are looked up in a {@link DataUrlCodecRegistry} by
+ * {@link #getEncodingName()} and can be registered explicitly or provided as
+ * {@link java.util.ServiceLoader} service.
+ * @author Max Schuster
+ */
+public interface IDataUrlCodec extends Serializable {
+    
+    /**
+     * Gets the name of the encoding in the data url this codec handles
+     * @return Name of the encoding, e.g. {@code "base64"}
+     * @see DataUrlEncoding#getEncodingName()
+     */
+    public String getEncodingName();
+
+    /**
+     * Decodes the given range of a {@link CharSequence}
+     * @param charset Charset
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @return Decoded data
+     * @throws IllegalArgumentException If the range can't be decoded
+     */
+    public byte[] decode(Charset charset, CharSequence src, int start, int end)
+            throws IllegalArgumentException;
+    
+    /**
+     * Decodes the given range of a {@link CharSequence} unless the decoded
+     * data exceeds the given maximum length. The default implementation
+     * decodes the whole range and checks its length afterwards.
+     * @param charset Charset
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param maxLength Maximum length of the decoded data in bytes
+     * @return Decoded data or {@code null} if it exceeds maxLength
+     * @throws IllegalArgumentException If the range can't be decoded
+     */
+    public default byte[] decode(Charset charset, CharSequence src, 
+            int start, int end, long maxLength) 
+            throws IllegalArgumentException {
+        byte[] data = decode(charset, src, start, end);
+        return data.length > maxLength ? null : data;
+    }
+    
+    /**
+     * Gets an upper bound of the size of the decoded range of a
+     * {@link CharSequence} without decoding it
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @return Estimated size of the decoded data in bytes
+     */
+    public int getDecodedLengthEstimate(CharSequence src, int start, int end);
+    
+    /**
+     * Gets the exact number of characters the given byte[] of data is
+     * encoded to
+     * @param charset Charset
+     * @param data Data to encode
+     * @return Length of the encoded data
+     */
+    public long getEncodedLength(Charset charset, byte[] data);
+    
+    /**
+     * Encodes the given byte[] of data to US-ASCII bytes and writes them to
+     * the given buffer. The buffer must have space for
+     * {@link #getEncodedLength(Charset, byte[])} bytes.
+     * @param charset Charset
+     * @param data Data to encode
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written bytes
+     */
+    public int encodeTo(Charset charset, byte[] data, byte[] dst, int off);
+    
+    /**
+     * Encodes the given byte[] of data and writes the characters to the
+     * given buffer. The buffer must have space for
+     * {@link #getEncodedLength(Charset, byte[])} characters.
+     * @param charset Charset
+     * @param data Data to encode
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written characters
+     */
+    public int encodeTo(Charset charset, byte[] data, char[] dst, int off);
+    
+    /**
+     * Decodes the given range of a {@link CharSequence} into a
+     * {@link ByteBuffer} obtained from the given allocator. The default
+     * implementation decodes to a byte[] and copies it.
+     * @param charset Charset
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param allocator Allocates a {@link ByteBuffer} of the given capacity,
+     * e.g. {@link ByteBuffer#allocateDirect(int)}
+     * @return Decoded data between position and limit of the buffer
+     * @throws IllegalArgumentException If the range can't be decoded
+     */
+    public default ByteBuffer decode(Charset charset, CharSequence src, 
+            int start, int end, IntFunction<ByteBuffer> allocator) 
+            throws IllegalArgumentException {
+        byte[] data = decode(charset, src, start, end);
+        ByteBuffer buffer = allocator.apply(data.length);
+        buffer.put(data);
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Gets the exact number of characters the remaining bytes of the given
+     * {@link ByteBuffer} are encoded to. The position of the buffer is not
+     * changed. The default implementation copies the bytes to a byte[].
+     * @param charset Charset
+     * @param data Data to encode
+     * @return Length of the encoded data
+     */
+    public default long getEncodedLength(Charset charset, ByteBuffer data) {
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return getEncodedLength(charset, copy);
+    }
+    
+    /**
+     * Encodes the remaining bytes of the given {@link ByteBuffer} to US-ASCII
+     * bytes and puts them into the target buffer. The positions of both 
+     * buffers are advanced. The target buffer must have space for
+     * {@link #getEncodedLength(Charset, ByteBuffer)} bytes. The default
+     * implementation copies the bytes to a byte[].
+     * @param charset Charset
+     * @param data Data to encode
+     * @param dst Target buffer
+     * @return Number of written bytes
+     * @throws java.nio.BufferOverflowException If the target buffer is too
+     * small
+     */
+    public default int encodeTo(Charset charset, ByteBuffer data, 
+            ByteBuffer dst) {
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        byte[] encoded = new byte[(int) getEncodedLength(charset, copy)];
+        encodeTo(charset, copy, encoded, 0);
+        dst.put(encoded);
+        data.position(data.limit());
+        return encoded.length;
+    }
+    
+    /**
+     * Creates a decoder for a payload that is pushed in chunks. The default
+     * implementation collects the whole payload and decodes it on
+     * {@link IDataUrlChunkDecoder#finish()}.
+     * @param charset Charset
+     * @return New decoder
+     */
+    public default IDataUrlChunkDecoder newChunkDecoder(Charset charset) {
+        return new BufferingChunkDecoder(this, charset);
+    }
+    
+    /**
+     * Wraps the given {@link OutputStream}. Data written to the returned
+     * {@link OutputStream} is encoded and written to the given one. Closing
+     * the returned {@link OutputStream} finishes the encoding and closes the
+     * given one.
+     * @param charset Charset
+     * @param out {@link OutputStream} that receives the encoded data
+     * @return Encoding {@link OutputStream}
+     */
+    public OutputStream wrap(Charset charset, OutputStream out);
+    
+    /**
+     * Wraps the given {@link InputStream}. Data read from the returned
+     * {@link InputStream} is read from the given one and decoded. Malformed
+     * input is reported as {@link java.io.IOException}.
+     * @param charset Charset
+     * @param in {@link InputStream} that provides the encoded data
+     * @return Decoding {@link InputStream}
+     */
+    public InputStream wrap(Charset charset, InputStream in);
+    
+    /**
+     * Checks if this codec uses the charset to encode or to decode. The 
+     * charset header of a data url is only resolved for codecs that use it,
+     * other codecs get {@code null} as charset. The default implementation
+     * returns {@code true}.
+     * @param decode {@code true} for decoding, {@code false} for encoding
+     * @return {@code true} if the charset is used
+     */
+    public default boolean usesCharset(boolean decode) {
+        return true;
+    }
+    
+    /**
+     * Checks if the encoded output for a payload equals the concatenated 
+     * output for consecutive blocks of {@code 3 * n} bytes. Payloads of such
+     * codecs are written block by block instead of as a whole. The default
+     * implementation returns {@code false}.
+     * @return {@code true} if payloads can be encoded block by block
+     */
+    public default boolean isBlockCodec() {
+        return false;
+    }
+    
+    /**
+     * Checks if this codec can encode and decode a payload concurrently in a
+     * {@link ForkJoinPool}. Only such codecs get a pool passed to
+     * {@link #decode(Charset, CharSequence, int, int, ForkJoinPool)} and the
+     * pooled encodeTo methods. The default implementation returns 
+     * {@code false}.
+     * @return {@code true} if the pooled methods are implemented
+     */
+    public default boolean isParallelCodec() {
+        return false;
+    }
+    
+    /**
+     * Decodes the given range of a {@link CharSequence}, concurrently if a
+     * pool is given. Failures must be reported the same way as in 
+     * sequential mode. The default implementation decodes sequentially.
+     * @param charset Charset
+     * @param src Characters to decode, must not be modified concurrently
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param pool Pool to decode in or {@code null}
+     * @return Decoded data
+     * @throws IllegalArgumentException If the range can't be decoded
+     */
+    public default byte[] decode(Charset charset, CharSequence src, 
+            int start, int end, ForkJoinPool pool) 
+            throws IllegalArgumentException {
+        return decode(charset, src, start, end);
+    }
+    
+    /**
+     * Encodes the given byte[] of data to US-ASCII bytes, concurrently if a
+     * pool is given. The default implementation encodes sequentially.
+     * @param charset Charset
+     * @param data Data to encode
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @param pool Pool to encode in or {@code null}
+     * @return Number of written bytes
+     * @see #encodeTo(Charset, byte[], byte[], int)
+     */
+    public default int encodeTo(Charset charset, byte[] data, byte[] dst, 
+            int off, ForkJoinPool pool) {
+        return encodeTo(charset, data, dst, off);
+    }
+    
+    /**
+     * Encodes the given byte[] of data to characters, concurrently if a pool
+     * is given. The default implementation encodes sequentially.
+     * @param charset Charset
+     * @param data Data to encode
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @param pool Pool to encode in or {@code null}
+     * @return Number of written characters
+     * @see #encodeTo(Charset, byte[], char[], int)
+     */
+    public default int encodeTo(Charset charset, byte[] data, char[] dst, 
+            int off, ForkJoinPool pool) {
+        return encodeTo(charset, data, dst, off);
+    }
+    
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+
+/**
+ * Receives the outcome and duration of every call of a
+ * {@link DataUrlSerializer} that serializes or unserializes a data url.
+ * The callbacks run on the calling thread, so implementations must be
+ * thread-safe and fast. Nothing is measured while no listener is set.
+ *
+ * @author Max Schuster
+ * @see DataUrlSerializer#setMetricsListener(IDataUrlMetricsListener)
+ * @see DataUrlMetrics
+ */
+public interface IDataUrlMetricsListener {
+
+    /**
+     * Called after a data url has been serialized
+     * @param dataUrl Serialized data url
+     * @param encodedLength Length of the serialized data url in characters
+     * or bytes
+     * @param nanos Duration in nanoseconds
+     */
+    public default void onSerialize(DataUrl dataUrl, long encodedLength,
+            long nanos) {
+    }
+
+    /**
+     * Called after a data url has been unserialized
+     * @param dataUrl Unserialized data url. Its payload is not decoded yet
+     * if it is unserialized lazily.
+     * @param encodedLength Length of the serialized data url in characters
+     * or bytes
+     * @param nanos Duration in nanoseconds
+     */
+    public default void onUnserialize(DataUrl dataUrl, long encodedLength,
+            long nanos) {
+    }
+
+    /**
+     * Called after serializing a data url has failed
+     * @param cause Failure that is thrown to the caller
+     * @param nanos Duration in nanoseconds
+     */
+    public default void onSerializeFailure(IOException cause, long nanos) {
+    }
+
+    /**
+     * Called after unserializing a data url has failed
+     * @param cause Failure that is thrown to the caller
+     * @param nanos Duration in nanoseconds
+     */
+    public default void onUnserializeFailure(IOException cause, long nanos) {
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Receives the parts of a data url parsed by a {@link DataUrlPushParser}.
+ * Throwing an {@link IOException} from a callback rejects the data url, the
+ * exception is passed to the caller of {@link DataUrlPushParser#feed(ByteBuffer)}
+ * or {@link DataUrlPushParser#finish()}.
+ *
+ * @author Max Schuster
+ */
+public interface IDataUrlPushListener {
+
+    /**
+     * Called once as soon as the header has been parsed
+     * @param encoding Encoding method
+     * @param mimeType MIME-Type of the content or {@code null}
+     * @param headers Headers/parameters
+     * @throws IOException To reject the data url
+     */
+    public void onHeader(DataUrlEncoding encoding, String mimeType,
+            Map<String, String> headers) throws IOException;
+
+    /**
+     * Called for each decoded chunk of the payload
+     * @param data Decoded bytes between position and limit. Only valid
+     * during the call.
+     * @throws IOException To reject the data url
+     */
+    public void onData(ByteBuffer data) throws IOException;
+
+}
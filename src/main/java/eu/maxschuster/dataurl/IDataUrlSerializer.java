@@ -15,8 +15,21 @@
  */
 package eu.maxschuster.dataurl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * An interface that indicates that a class is able to serialize/unserialize 
@@ -35,6 +48,63 @@ public interface IDataUrlSerializer extends Serializable {
      */
     public String serialize(DataUrl dataURL) throws MalformedURLException;
     
+    /**
+     * Serialize the given {@link DataUrl} to an RFC 2397 data url and write
+     * it to the given {@link OutputStream}. The payload is encoded while it is
+     * written, so the serialized data url is never held in memory as a whole.
+     * The default implementation writes the US-ASCII bytes of
+     * {@link #serialize(DataUrl)}.
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param out {@link OutputStream} to write to. It will not be closed.
+     * @throws MalformedURLException If the given {@link DataUrl} can't be 
+     * serialized.
+     * @throws IOException If writing to the {@link OutputStream} fails.
+     */
+    public default void serialize(DataUrl dataURL, OutputStream out) 
+            throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out is null!");
+        }
+        out.write(serialize(dataURL).getBytes(StandardCharsets.US_ASCII));
+    }
+    
+    /**
+     * Serialize the given {@link DataUrl} to an RFC 2397 data url and append
+     * it to the given {@link Appendable}. The payload is encoded while it is
+     * appended, so the serialized data url is never held in memory as a whole.
+     * The default implementation appends {@link #serialize(DataUrl)}.
+     * @param dataURL {@link DataUrl} to serialize.
+     * @param out {@link Appendable} to append to.
+     * @throws MalformedURLException If the given {@link DataUrl} can't be 
+     * serialized.
+     * @throws IOException If appending to the {@link Appendable} fails.
+     */
+    public default void serialize(DataUrl dataURL, Appendable out) 
+            throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out is null!");
+        }
+        out.append(serialize(dataURL));
+    }
+    
+    /**
+     * Computes the exact length of the RFC 2397 data url the given
+     * {@link DataUrl} is serialized to, without encoding its payload. As 
+     * long as the header is US-ASCII, this is also the number of bytes 
+     * written by {@link #serialize(DataUrl, OutputStream)}, e.g. to set a
+     * {@code Content-Length} or to pre-size a buffer. The default 
+     * implementation measures {@link #serialize(DataUrl)}, so it does encode 
+     * the payload.
+     * @param dataURL {@link DataUrl}
+     * @return Length of the serialized data url in characters
+     * @throws MalformedURLException If the given {@link DataUrl} can't be 
+     * serialized.
+     */
+    public default long computeSerializedLength(DataUrl dataURL) 
+            throws MalformedURLException {
+        return serialize(dataURL).length();
+    }
+    
     /**
      * Unserialize the given RFC 2397 data url {@link String} to a 
      * {@link DataUrl}.
@@ -45,4 +115,201 @@ public interface IDataUrlSerializer extends Serializable {
      */
     public DataUrl unserialize(String urlString) throws MalformedURLException;
     
+    /**
+     * Unserialize the RFC 2397 data url in the given range of a 
+     * {@link CharSequence} to a {@link DataUrl}. The range is parsed in place,
+     * so the data url doesn't need to be copied out of a larger buffer. The
+     * default implementation copies the range and passes it to 
+     * {@link #unserialize(String)}.
+     * @param src {@link CharSequence} that contains the data url.
+     * @param start Start of the data url, inclusive.
+     * @param end End of the data url, exclusive.
+     * @return The unserialized {@link DataUrl}
+     * @throws MalformedURLException If the RFC 2397 data url can't be 
+     * unserialized.
+     * @throws IndexOutOfBoundsException If the range is out of bounds.
+     */
+    public default DataUrl unserialize(CharSequence src, int start, int end) 
+            throws MalformedURLException {
+        if (src == null) {
+            throw new NullPointerException("src is null!");
+        }
+        return unserialize(src.subSequence(start, end).toString());
+    }
+    
+    /**
+     * Unserialize the UTF-8 encoded RFC 2397 data url between the position
+     * and the limit of the given {@link ByteBuffer} to a {@link DataUrl}. The
+     * bytes are parsed in place if they are US-ASCII and the position of the
+     * {@link ByteBuffer} is not changed. The default implementation decodes 
+     * the bytes and passes them to {@link #unserialize(String)}.
+     * @param src {@link ByteBuffer} that contains the data url.
+     * @return The unserialized {@link DataUrl}
+     * @throws MalformedURLException If the RFC 2397 data url can't be 
+     * unserialized.
+     */
+    public default DataUrl unserialize(ByteBuffer src) 
+            throws MalformedURLException {
+        if (src == null) {
+            throw new NullPointerException("src is null!");
+        }
+        return unserialize(
+                StandardCharsets.UTF_8.decode(src.duplicate()).toString());
+    }
+    
+    /**
+     * Unserialize the RFC 2397 data url read from the given 
+     * {@link InputStream} to a {@link DataUrl}. The header is parsed while it
+     * is read and the payload is decoded while it is read, so the serialized
+     * data url is never held in memory as a whole. Bytes outside of US-ASCII
+     * are read as UTF-8 encoded characters. The default implementation reads
+     * the whole {@link InputStream} and passes it to 
+     * {@link #unserialize(String)}.
+     * @param in {@link InputStream} positioned at the start of the data url.
+     * It is read until its end, but not closed.
+     * @return The unserialized {@link DataUrl}
+     * @throws MalformedURLException If the read RFC 2397 data url can't be 
+     * unserialized.
+     * @throws IOException If reading from the {@link InputStream} fails.
+     */
+    public default DataUrl unserialize(InputStream in) throws IOException {
+        if (in == null) {
+            throw new NullPointerException("in is null!");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return unserialize(new String(out.toByteArray(), 
+                StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Unserialize the RFC 2397 data url read from the given 
+     * {@link ReadableByteChannel} to a {@link DataUrl}. The bytes are read 
+     * the same way as by {@link #unserialize(InputStream)}, which the default
+     * implementation delegates to.
+     * @param in {@link ReadableByteChannel} positioned at the start of the
+     * data url. It is read until its end, but not closed.
+     * @return The unserialized {@link DataUrl}
+     * @throws MalformedURLException If the read RFC 2397 data url can't be 
+     * unserialized.
+     * @throws IOException If reading from the {@link ReadableByteChannel} 
+     * fails.
+     */
+    public default DataUrl unserialize(ReadableByteChannel in) 
+            throws IOException {
+        if (in == null) {
+            throw new NullPointerException("in is null!");
+        }
+        return unserialize(Channels.newInputStream(in));
+    }
+    
+    /**
+     * Unserialize the RFC 2397 data url read from the given {@link Reader}
+     * to a {@link DataUrl}. The header is parsed while it is read and the
+     * payload is decoded while it is read, so the serialized data url is 
+     * never held in memory as a whole. The default implementation reads the
+     * whole {@link Reader} and passes it to {@link #unserialize(String)}.
+     * @param in {@link Reader} positioned at the start of the data url.
+     * It is read until its end, but not closed.
+     * @return The unserialized {@link DataUrl}
+     * @throws MalformedURLException If the read RFC 2397 data url can't be 
+     * unserialized.
+     * @throws IOException If reading from the {@link Reader} fails.
+     */
+    public default DataUrl unserialize(Reader in) throws IOException {
+        if (in == null) {
+            throw new NullPointerException("in is null!");
+        }
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            sb.append(buffer, 0, read);
+        }
+        return unserialize(sb.toString());
+    }
+    
+    /**
+     * Serialize all given {@link DataUrl}s to RFC 2397 data url 
+     * {@link String}s. Items that can't be serialized don't abort the batch,
+     * their {@link MalformedURLException}s are collected in the result.
+     * @param dataURLs {@link DataUrl}s to serialize.
+     * @return The serialized RFC 2397 data url {@link String}s in the 
+     * iteration order of the given {@link Collection} and the failures.
+     */
+    public default DataUrlBatchResult<String> serializeAll(
+            Collection<DataUrl> dataURLs) {
+        DataUrl[] items = dataURLs.toArray(new DataUrl[dataURLs.size()]);
+        String[] results = new String[items.length];
+        MalformedURLException[] failures = 
+                new MalformedURLException[items.length];
+        for (int i = 0; i < items.length; i++) {
+            try {
+                results[i] = serialize(items[i]);
+            } catch (MalformedURLException e) {
+                failures[i] = e;
+            }
+        }
+        return new DataUrlBatchResult<>(results, failures);
+    }
+    
+    /**
+     * Serialize all {@link DataUrl}s of the given {@link Stream} to RFC 2397
+     * data url {@link String}s. Items that can't be serialized don't abort
+     * the batch, their {@link MalformedURLException}s are collected in the
+     * result.
+     * @param dataURLs {@link Stream} of the {@link DataUrl}s to serialize.
+     * It is consumed in encounter order.
+     * @return The serialized RFC 2397 data url {@link String}s in encounter
+     * order and the failures.
+     */
+    public default DataUrlBatchResult<String> serializeAll(
+            Stream<DataUrl> dataURLs) {
+        return serializeAll(dataURLs.collect(Collectors.toList()));
+    }
+    
+    /**
+     * Unserialize all given RFC 2397 data urls to {@link DataUrl}s. Items
+     * that can't be unserialized don't abort the batch, their 
+     * {@link MalformedURLException}s are collected in the result.
+     * @param urlStrings RFC 2397 data urls to unserialize.
+     * @return The unserialized {@link DataUrl}s in the order of the given
+     * {@link List} and the failures.
+     */
+    public default DataUrlBatchResult<DataUrl> unserializeAll(
+            List<? extends CharSequence> urlStrings) {
+        CharSequence[] items = 
+                urlStrings.toArray(new CharSequence[urlStrings.size()]);
+        DataUrl[] results = new DataUrl[items.length];
+        MalformedURLException[] failures = 
+                new MalformedURLException[items.length];
+        for (int i = 0; i < items.length; i++) {
+            try {
+                results[i] = unserialize(items[i], 0, items[i].length());
+            } catch (MalformedURLException e) {
+                failures[i] = e;
+            }
+        }
+        return new DataUrlBatchResult<>(results, failures);
+    }
+    
+    /**
+     * Unserialize all RFC 2397 data urls of the given {@link Stream} to 
+     * {@link DataUrl}s. Items that can't be unserialized don't abort the
+     * batch, their {@link MalformedURLException}s are collected in the 
+     * result.
+     * @param urlStrings {@link Stream} of the RFC 2397 data urls to 
+     * unserialize. It is consumed in encounter order.
+     * @return The unserialized {@link DataUrl}s in encounter order and the
+     * failures.
+     */
+    public default DataUrlBatchResult<DataUrl> unserializeAll(
+            Stream<? extends CharSequence> urlStrings) {
+        return unserializeAll(urlStrings.collect(Collectors.toList()));
+    }
+    
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+/**
+ * Thrown by the built-in codecs if the input contains an illegal character
+ * or ends early. Knows the index of the failure, so it can be reported as
+ * offset of a {@link DataUrlParseException}.
+ *
+ * @author Max Schuster
+ */
+class IllegalInputException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Index of the failure in the decoded input
+     */
+    private final long index;
+
+    /**
+     * Creates a new IllegalInputException
+     * @param message Detail message, ends with the index
+     * @param index Index of the failure in the decoded input
+     */
+    IllegalInputException(String message, long index) {
+        super(message);
+        this.index = index;
+    }
+
+    /**
+     * Gets the index of the failure in the decoded input
+     * @return Index of the failure
+     */
+    long getIndex() {
+        return index;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return DataUrlParseException.isStackless()
+                ? this : super.fillInStackTrace();
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parsed MIME-Type of the form {@code type/subtype}. The MIME-Types that
+ * data urls commonly carry are interned, so parsing them neither allocates
+ * nor parses again.
+ *
+ * @author Max Schuster
+ * @see DataUrl#getParsedMimeType()
+ */
+public final class MimeType implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * {@code image/png}
+     */
+    public static final MimeType IMAGE_PNG = new MimeType("image/png");
+
+    /**
+     * {@code image/jpeg}
+     */
+    public static final MimeType IMAGE_JPEG = new MimeType("image/jpeg");
+
+    /**
+     * {@code image/gif}
+     */
+    public static final MimeType IMAGE_GIF = new MimeType("image/gif");
+
+    /**
+     * {@code image/svg+xml}
+     */
+    public static final MimeType IMAGE_SVG_XML =
+            new MimeType("image/svg+xml");
+
+    /**
+     * {@code text/plain}
+     */
+    public static final MimeType TEXT_PLAIN = new MimeType("text/plain");
+
+    /**
+     * {@code text/html}
+     */
+    public static final MimeType TEXT_HTML = new MimeType("text/html");
+
+    /**
+     * {@code application/octet-stream}
+     */
+    public static final MimeType APPLICATION_OCTET_STREAM =
+            new MimeType("application/octet-stream");
+
+    /**
+     * Interned MIME-Types
+     */
+    private static final MimeType[] COMMON = {
+        IMAGE_PNG, IMAGE_JPEG, IMAGE_GIF, IMAGE_SVG_XML,
+        new MimeType("image/webp"), new MimeType("image/avif"),
+        new MimeType("image/bmp"), new MimeType("image/x-icon"),
+        TEXT_PLAIN, TEXT_HTML, new MimeType("text/css"),
+        new MimeType("text/csv"), new MimeType("text/javascript"),
+        APPLICATION_OCTET_STREAM, new MimeType("application/json"),
+        new MimeType("application/pdf"), new MimeType("application/xml"),
+        new MimeType("application/javascript"), new MimeType("font/woff"),
+        new MimeType("font/woff2"), new MimeType("font/ttf"),
+        new MimeType("audio/mpeg"), new MimeType("audio/ogg"),
+        new MimeType("video/mp4")
+    };
+
+    /**
+     * Interned MIME-Types by their value
+     */
+    private static final Map<String, MimeType> INTERNED = new HashMap<>();
+
+    static {
+        for (MimeType mimeType : COMMON) {
+            INTERNED.put(mimeType.value, mimeType);
+        }
+    }
+
+    /**
+     * The whole MIME-Type
+     */
+    private final String value;
+
+    /**
+     * Top-level type
+     */
+    private final String type;
+
+    /**
+     * Subtype including the suffix
+     */
+    private final String subtype;
+
+    /**
+     * Structured syntax suffix or {@code null}
+     */
+    private final String suffix;
+
+    /**
+     * Top-level type is {@code image}
+     */
+    private final boolean image;
+
+    private MimeType(String value) throws IllegalArgumentException {
+        int slash = value.indexOf('/');
+        if (slash < 1 || slash == value.length() - 1) {
+            throw new IllegalArgumentException("\"" + value
+                    + "\" is not of the form type/subtype!");
+        }
+        int plus = value.lastIndexOf('+');
+        this.value = value;
+        this.type = value.substring(0, slash);
+        this.subtype = value.substring(slash + 1);
+        this.suffix = plus > slash && plus < value.length() - 1
+                ? value.substring(plus + 1) : null;
+        this.image = type.equalsIgnoreCase("image");
+    }
+
+    /**
+     * Parses the given MIME-Type
+     * @param value MIME-Type of the form {@code type/subtype}
+     * @return The interned instance if it is a common MIME-Type, otherwise
+     * a new instance
+     * @throws NullPointerException if value is {@code null}
+     * @throws IllegalArgumentException if value is not of the form
+     * {@code type/subtype}
+     */
+    public static MimeType valueOf(String value)
+            throws NullPointerException, IllegalArgumentException {
+        if (value == null) {
+            throw new NullPointerException("value is null!");
+        }
+        MimeType mimeType = INTERNED.get(value);
+        return mimeType != null ? mimeType : new MimeType(value);
+    }
+
+    /**
+     * Looks up the interned instance of the MIME-Type in the given range
+     * without creating a {@link String}
+     * @param src Source
+     * @param start Start index, inclusive
+     * @param end End index, exclusive
+     * @return The interned instance or {@code null} if it is not a common
+     * MIME-Type
+     */
+    static MimeType lookup(CharSequence src, int start, int end) {
+        int length = end - start;
+        for (MimeType mimeType : COMMON) {
+            String value = mimeType.value;
+            if (value.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && value.charAt(i) == src.charAt(start + i)) {
+                i++;
+            }
+            if (i == length) {
+                return mimeType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the top-level type, like {@code image} for {@code image/svg+xml}
+     * @return Top-level type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets the subtype, like {@code svg+xml} for {@code image/svg+xml}
+     * @return Subtype including the suffix
+     */
+    public String getSubtype() {
+        return subtype;
+    }
+
+    /**
+     * Gets the structured syntax suffix, like {@code xml} for
+     * {@code image/svg+xml}
+     * @return Suffix or {@code null}
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Checks if the top-level type is {@code image}
+     * @return {@code true} if this is an image MIME-Type
+     */
+    public boolean isImage() {
+        return image;
+    }
+
+    @Override
+    public int hashCode() {
+        return value.toLowerCase(Locale.ROOT).hashCode();
+    }
+
+    /**
+     * MIME-Types are compared case-insensitive
+     * @param obj Other object
+     * @return {@code true} if obj is an equal MIME-Type
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || (obj instanceof MimeType
+                && value.equalsIgnoreCase(((MimeType) obj).value));
+    }
+
+    /**
+     * Gets the whole MIME-Type
+     * @return MIME-Type of the form {@code type/subtype}
+     */
+    @Override
+    public String toString() {
+        return value;
+    }
+
+    /**
+     * Replaces unserialized common MIME-Types with their interned instance
+     * @return Interned instance or this
+     */
+    private Object readResolve() {
+        MimeType mimeType = INTERNED.get(value);
+        return mimeType != null ? mimeType : this;
+    }
+
+}
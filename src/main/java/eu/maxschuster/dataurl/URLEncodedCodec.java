@@ -0,0 +1,294 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * URL Encoded implemention of {@link IDataUrlCodec}. Percent encodes every
+ * byte that isn't an unreserved character of RFC 3986.
+ * @author Max Schuster
+ */
+public class URLEncodedCodec implements IDataUrlCodec {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getEncodingName() {
+        return DataUrlEncoding.URL.getEncodingName();
+    }
+
+    @Override
+    public byte[] decode(Charset charset, CharSequence src, int start,
+            int end) throws IllegalArgumentException {
+        return URLEncoding.decode(src, start, end, charset);
+    }
+
+    @Override
+    public byte[] decode(Charset charset, CharSequence src, int start,
+            int end, long maxLength) throws IllegalArgumentException {
+        return URLEncoding.decode(src, start, end, charset, maxLength);
+    }
+
+    /**
+     * Gets the size of the decoded range. It is exact for US-ASCII input
+     * and assumes at most 4 bytes per character outside of US-ASCII, which
+     * holds for UTF-8, UTF-16 and UTF-32.
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @return Estimated size of the decoded data in bytes
+     */
+    @Override
+    public int getDecodedLengthEstimate(CharSequence src, int start,
+            int end) {
+        long length = 0;
+        for (int i = start; i < end; i++) {
+            char c = src.charAt(i);
+            if (c == '%') {
+                i += 2;
+                length++;
+            } else {
+                length += c < 0x80 ? 1 : 4;
+            }
+        }
+        return (int) Math.min(length, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getEncodedLength(Charset charset, byte[] data) {
+        return URLEncoding.getEncodedLength(data);
+    }
+
+    @Override
+    public int encodeTo(Charset charset, byte[] data, byte[] dst, int off) {
+        return URLEncoding.encode(data, dst, off);
+    }
+
+    @Override
+    public int encodeTo(Charset charset, byte[] data, char[] dst, int off) {
+        return URLEncoding.encode(data, dst, off);
+    }
+
+    @Override
+    public long getEncodedLength(Charset charset, ByteBuffer data) {
+        return URLEncoding.getEncodedLength(data);
+    }
+
+    @Override
+    public int encodeTo(Charset charset, ByteBuffer data, ByteBuffer dst) {
+        return URLEncoding.encode(data, dst);
+    }
+
+    @Override
+    public OutputStream wrap(Charset charset, OutputStream out) {
+        return new URLEncodingOutputStream(out);
+    }
+
+    @Override
+    public InputStream wrap(Charset charset, InputStream in) {
+        return new ChunkDecoderInputStream(in, new URLChunkDecoder(charset));
+    }
+
+    @Override
+    public boolean isBlockCodec() {
+        return true;
+    }
+
+    @Override
+    public IDataUrlChunkDecoder newChunkDecoder(Charset charset) {
+        return new URLChunkDecoder(charset);
+    }
+
+    @Override
+    public boolean usesCharset(boolean decode) {
+        // Unescaped characters outside of US-ASCII are decoded with it, so
+        // an unknown charset is rejected when serializing as well
+        return true;
+    }
+    
+    /**
+     * Percent encodes every byte written to it, using the same set of
+     * unreserved characters as {@link URLEncoding}
+     *
+     * @author Max Schuster
+     */
+    private static class URLEncodingOutputStream extends FilterOutputStream {
+        
+        /**
+         * Encoding buffer
+         */
+        private final byte[] buffer = new byte[3 * 1024];
+
+        public URLEncodingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{ (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int end = off + len;
+            int pos = 0;
+            for (int i = off; i < end; i++) {
+                if (pos > buffer.length - 3) {
+                    out.write(buffer, 0, pos);
+                    pos = 0;
+                }
+                int c = b[i] & 0xFF;
+                if (URLEncoding.isUnreserved(c)) {
+                    buffer[pos++] = (byte) c;
+                } else {
+                    buffer[pos++] = '%';
+                    buffer[pos++] = (byte) URLEncoding.HEX[c >> 4];
+                    buffer[pos++] = (byte) URLEncoding.HEX[c & 0xF];
+                }
+            }
+            out.write(buffer, 0, pos);
+        }
+        
+    }
+    
+    /**
+     * Decodes percent encoded bytes pushed in chunks the same way
+     * {@link URLEncoding} does. Unescaped bytes outside of US-ASCII are read
+     * as UTF-8 and converted to the charset. Keeps an incomplete escape
+     * sequence between chunks.
+     *
+     * @author Max Schuster
+     */
+    private static final class URLChunkDecoder 
+            implements IDataUrlChunkDecoder {
+        
+        /**
+         * Charset to convert unescaped characters to or {@code null} to
+         * pass them through
+         */
+        private final Charset charset;
+        
+        /**
+         * Unescaped UTF-8 encoded characters that have not been converted
+         * yet. A run may continue in the next chunk.
+         */
+        private final ByteArrayOutputStream run = new ByteArrayOutputStream();
+        
+        /**
+         * Number of characters of the incomplete escape sequence
+         */
+        private int escape = 0;
+        
+        /**
+         * Value of the first hexadecimal digit of the escape sequence
+         */
+        private int high;
+        
+        /**
+         * Number of characters consumed so far
+         */
+        private long offset = 0;
+        
+        /**
+         * Reused buffer for the decoded bytes
+         */
+        private byte[] decoded = new byte[0];
+
+        public URLChunkDecoder(Charset charset) {
+            this.charset = URLEncoding.needsTranscoding(charset) 
+                    ? charset : null;
+        }
+
+        @Override
+        public ByteBuffer decode(ByteBuffer src) 
+                throws IllegalArgumentException {
+            if (decoded.length < src.remaining()) {
+                decoded = new byte[src.remaining()];
+            }
+            int pos = 0;
+            while (src.hasRemaining()) {
+                int c = src.get() & 0xFF;
+                if (escape == 0 && c >= 0x80 && charset != null) {
+                    run.write(c);
+                } else if (escape == 0) {
+                    pos = flush(pos, src.remaining() + 1);
+                    if (c == '%') {
+                        escape = 1;
+                    } else {
+                        decoded[pos++] = (byte) (c == '+' ? ' ' : c);
+                    }
+                } else {
+                    int value = URLEncoding.hexValue(c);
+                    if (value == -1) {
+                        throw new IllegalInputException(
+                                "Illegal escape sequence at " 
+                                + (offset - escape), offset - escape);
+                    } else if (escape == 1) {
+                        high = value;
+                        escape = 2;
+                    } else {
+                        decoded[pos++] = (byte) (high << 4 | value);
+                        escape = 0;
+                    }
+                }
+                offset++;
+            }
+            return ByteBuffer.wrap(decoded, 0, pos);
+        }
+
+        @Override
+        public ByteBuffer finish() throws IllegalArgumentException {
+            if (escape != 0) {
+                throw new IllegalInputException(
+                        "Incomplete escape sequence at " + (offset - escape),
+                        offset - escape);
+            }
+            return ByteBuffer.wrap(decoded, 0, flush(0, 0));
+        }
+        
+        /**
+         * Converts the pending run of unescaped characters to the charset 
+         * and appends it to the decoded bytes
+         * @param pos Number of decoded bytes
+         * @param reserve Number of bytes that may still follow
+         * @return New number of decoded bytes
+         */
+        private int flush(int pos, int reserve) {
+            if (run.size() == 0) {
+                return pos;
+            }
+            ByteBuffer converted = URLEncoding.transcode(run.toByteArray(), 
+                    0, run.size(), charset);
+            run.reset();
+            int length = converted.remaining();
+            if (decoded.length < pos + length + reserve) {
+                decoded = Arrays.copyOf(decoded, pos + length + reserve);
+            }
+            converted.get(decoded, pos, length);
+            return pos + length;
+        }
+        
+    }
+    
+}
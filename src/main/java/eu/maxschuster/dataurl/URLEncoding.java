@@ -0,0 +1,338 @@
+/*
+ * Copyright 2014 Max Schuster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes/Decodes bytes RFC 3986 compatible. Works on bytes, so data
+ * round-trips exactly regardless of its charset.
+ *
+ * @author Max Schuster
+ */
+final class URLEncoding {
+    
+    /**
+     * Hexadecimal digits
+     */
+    static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    
+    /**
+     * Unreserved characters of RFC 3986, indexed by unsigned byte
+     */
+    private static final boolean[] UNRESERVED = new boolean[256];
+    
+    /**
+     * Values of hexadecimal digits, {@code -1} for other characters
+     */
+    private static final int[] HEX_VALUES = new int[128];
+    
+    static {
+        for (int c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (int c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['-'] = true;
+        UNRESERVED['.'] = true;
+        UNRESERVED['_'] = true;
+        UNRESERVED['~'] = true;
+        Arrays.fill(HEX_VALUES, -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES[HEX[i]] = i;
+            HEX_VALUES[Character.toLowerCase(HEX[i])] = i;
+        }
+    }
+    
+    /**
+     * Checks if the given byte is left unencoded
+     *
+     * @param c Unsigned byte
+     * @return {@code true} if it is left unencoded
+     */
+    public static boolean isUnreserved(int c) {
+        return UNRESERVED[c];
+    }
+    
+    /**
+     * Gets the value of the given hexadecimal digit
+     *
+     * @param c Character
+     * @return Value of the digit or {@code -1} if it is no hexadecimal
+     * digit
+     */
+    public static int hexValue(int c) {
+        return c >= 0 && c < 128 ? HEX_VALUES[c] : -1;
+    }
+
+    /**
+     * Encodes a {@link String} using UTF-8
+     *
+     * @param s String to encode
+     * @return Encoded {@link String}
+     */
+    public static String encode(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        char[] chars = new char[(int) getEncodedLength(bytes)];
+        encode(bytes, chars, 0);
+        return new String(chars);
+    }
+    
+    /**
+     * Gets the number of characters the given bytes are encoded to
+     *
+     * @param data Bytes to encode
+     * @return Length of the encoded bytes
+     */
+    public static long getEncodedLength(byte[] data) {
+        long length = data.length;
+        for (byte b : data) {
+            if (!UNRESERVED[b & 0xFF]) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * Encodes the given bytes to US-ASCII bytes
+     *
+     * @param data Bytes to encode
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written bytes
+     */
+    public static int encode(byte[] data, byte[] dst, int off) {
+        int pos = off;
+        for (byte b : data) {
+            int c = b & 0xFF;
+            if (UNRESERVED[c]) {
+                dst[pos++] = (byte) c;
+            } else {
+                dst[pos++] = '%';
+                dst[pos++] = (byte) HEX[c >> 4];
+                dst[pos++] = (byte) HEX[c & 0xF];
+            }
+        }
+        return pos - off;
+    }
+    
+    /**
+     * Encodes the given bytes to characters
+     *
+     * @param data Bytes to encode
+     * @param dst Target buffer
+     * @param off Offset in the target buffer
+     * @return Number of written characters
+     */
+    public static int encode(byte[] data, char[] dst, int off) {
+        int pos = off;
+        for (byte b : data) {
+            int c = b & 0xFF;
+            if (UNRESERVED[c]) {
+                dst[pos++] = (char) c;
+            } else {
+                dst[pos++] = '%';
+                dst[pos++] = HEX[c >> 4];
+                dst[pos++] = HEX[c & 0xF];
+            }
+        }
+        return pos - off;
+    }
+    
+    /**
+     * Gets the number of characters the remaining bytes of the given 
+     * {@link ByteBuffer} are encoded to. The position is not changed.
+     *
+     * @param data Bytes to encode
+     * @return Length of the encoded bytes
+     */
+    public static long getEncodedLength(ByteBuffer data) {
+        long length = data.remaining();
+        for (int i = data.position(), n = data.limit(); i < n; i++) {
+            if (!UNRESERVED[data.get(i) & 0xFF]) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * Encodes the remaining bytes of a {@link ByteBuffer} to US-ASCII bytes
+     * and puts them into the target buffer
+     *
+     * @param data Bytes to encode, the position is advanced
+     * @param dst Target buffer, the position is advanced
+     * @return Number of written bytes
+     * @throws BufferOverflowException If the target buffer is too small
+     */
+    public static int encode(ByteBuffer data, ByteBuffer dst) 
+            throws BufferOverflowException {
+        long length = getEncodedLength(data);
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        while (data.hasRemaining()) {
+            int c = data.get() & 0xFF;
+            if (UNRESERVED[c]) {
+                dst.put((byte) c);
+            } else {
+                dst.put((byte) '%');
+                dst.put((byte) HEX[c >> 4]);
+                dst.put((byte) HEX[c & 0xF]);
+            }
+        }
+        return (int) length;
+    }
+    
+    /**
+     * Checks if unescaped bytes outside of US-ASCII, which are UTF-8 
+     * encoded characters, have to be converted to the given charset
+     * @param charset Charset of unencoded characters or {@code null}
+     * @return {@code true} if the charset is neither {@code null} nor UTF-8
+     */
+    static boolean needsTranscoding(Charset charset) {
+        return charset != null && !StandardCharsets.UTF_8.equals(charset);
+    }
+    
+    /**
+     * Converts a run of unescaped UTF-8 encoded characters to the given
+     * charset, the same way {@link #decode(CharSequence, int, int, Charset)}
+     * encodes characters outside of US-ASCII
+     * @param utf8 UTF-8 encoded characters
+     * @param off Offset of the run
+     * @param len Length of the run
+     * @param charset Charset of unencoded characters
+     * @return Encoded characters between position and limit
+     */
+    static ByteBuffer transcode(byte[] utf8, int off, int len, 
+            Charset charset) {
+        return charset.encode(StandardCharsets.UTF_8.decode(
+                ByteBuffer.wrap(utf8, off, len)));
+    }
+    
+    /**
+     * Decodes the given range of a {@link CharSequence} to a 
+     * {@link String} using UTF-8
+     *
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @return Decoded {@link String}
+     * @throws IllegalArgumentException If an escape sequence is illegal
+     */
+    public static String decode(CharSequence src, int start, int end)
+            throws IllegalArgumentException {
+        return new String(decode(src, start, end, StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Decodes the given range of a {@link CharSequence} to bytes. Percent
+     * encoded bytes are taken as they are, characters outside of US-ASCII
+     * are encoded using the given {@link Charset}. A {@code '+'} is 
+     * decoded to a space.
+     *
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param charset Charset of unencoded characters
+     * @return Decoded bytes
+     * @throws IllegalArgumentException If an escape sequence is illegal
+     */
+    public static byte[] decode(CharSequence src, int start, int end,
+            Charset charset) throws IllegalArgumentException {
+        return decode(src, start, end, charset, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Decodes the given range of a {@link CharSequence} to bytes unless
+     * they exceed the given maximum length. Stops as soon as the limit is
+     * exceeded.
+     *
+     * @param src Characters to decode
+     * @param start Start of the range, inclusive
+     * @param end End of the range, exclusive
+     * @param charset Charset of unencoded characters
+     * @param maxLength Maximum number of decoded bytes
+     * @return Decoded bytes or {@code null} if they exceed maxLength
+     * @throws IllegalArgumentException If an escape sequence is illegal
+     */
+    public static byte[] decode(CharSequence src, int start, int end,
+            Charset charset, long maxLength) throws IllegalArgumentException {
+        // Validates the escape sequences and counts the decoded units
+        int minLength = 0;
+        for (int i = start; i < end; i++, minLength++) {
+            if (src.charAt(i) == '%') {
+                if (i + 1 < end && hexValue(src.charAt(i + 1)) == -1
+                        || i + 2 < end && hexValue(src.charAt(i + 2)) == -1) {
+                    throw new IllegalInputException(
+                            "Illegal escape sequence at " + i, i);
+                } else if (i + 2 >= end) {
+                    throw new IllegalInputException(
+                            "Incomplete escape sequence at " + i, i);
+                }
+                i += 2;
+            }
+        }
+        if (minLength > maxLength) {
+            return null;
+        }
+        byte[] bytes = new byte[minLength];
+        int pos = 0;
+        int i = start;
+        while (i < end) {
+            char c = src.charAt(i);
+            if (c == '%') {
+                int high = hexValue(src.charAt(i + 1));
+                int low = hexValue(src.charAt(i + 2));
+                bytes[pos++] = (byte) ((high << 4) | low);
+                i += 3;
+            } else if (c < 0x80) {
+                bytes[pos++] = (byte) (c == '+' ? ' ' : c);
+                i++;
+            } else {
+                int runEnd = i + 1;
+                while (runEnd < end && src.charAt(runEnd) >= 0x80) {
+                    runEnd++;
+                }
+                ByteBuffer encoded = charset.encode(
+                        CharBuffer.wrap(src, i, runEnd));
+                int n = encoded.remaining();
+                int required = pos + n + (end - runEnd);
+                if (pos + n > maxLength) {
+                    return null;
+                } else if (required > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, required);
+                }
+                encoded.get(bytes, pos, n);
+                pos += n;
+                i = runEnd;
+            }
+        }
+        return pos == bytes.length ? bytes : Arrays.copyOf(bytes, pos);
+    }
+
+}
@@ -15,10 +15,13 @@
  */
 package eu.maxschuster.dataurl;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
 import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 import org.junit.Test;
@@ -73,12 +76,117 @@ public class Base64EncodingTest {
         assertEquals(reddotTextData, serialized);
     }
     
+    @Test
+    public void reddotSerializeOutputStream() throws IOException {
+        DataUrl dataUrl = new DataUrlBuilder()
+                .setEncoding(DataUrlEncoding.BASE64)
+                .setData(reddotBinaryData)
+                .setMimeType("image/png")
+                .build();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        serializer.serialize(dataUrl, os);
+        assertEquals(reddotTextData, new String(os.toByteArray(), "UTF-8"));
+    }
+    
+    @Test
+    public void checkedSerializeAppendable() throws IOException {
+        DataUrl dataUrl = new DataUrlBuilder()
+                .setEncoding(DataUrlEncoding.BASE64)
+                .setData(checkedBinaryData)
+                .setMimeType("image/png")
+                .build();
+        StringBuilder sb = new StringBuilder();
+        serializer.serialize(dataUrl, sb);
+        assertEquals(checkedTextData, sb.toString());
+    }
+    
+    @Test
+    public void reddotSerializeBuffer() throws IOException {
+        DataUrlSerializer bufferSerializer = new DataUrlSerializer();
+        DataUrl dataUrl = new DataUrlBuilder()
+                .setEncoding(DataUrlEncoding.BASE64)
+                .setData(reddotBinaryData)
+                .setMimeType("image/png")
+                .build();
+        long length = bufferSerializer.computeSerializedLength(dataUrl);
+        assertEquals(reddotTextData.length(), length);
+        byte[] buffer = new byte[(int) length + 1];
+        int written = bufferSerializer.serialize(dataUrl, buffer, 1);
+        assertEquals(length, written);
+        assertEquals(reddotTextData, new String(buffer, 1, written, "UTF-8"));
+    }
+    
+    @Test
+    public void unknownCharsetIgnored() throws IOException {
+        String urlString = "data:text/plain;charset=x-unknown;base64,YWJj";
+        DataUrl dataUrl = serializer.unserialize(urlString);
+        assertThat(dataUrl.getData(), is("abc".getBytes("US-ASCII")));
+        assertThat(serializer.unserialize(new ByteArrayInputStream(
+                urlString.getBytes("US-ASCII"))), is(dataUrl));
+        assertThat(serializer.serialize(dataUrl), is(urlString));
+    }
+    
     @Test
     public void reddotUnserialize() throws MalformedURLException {
         DataUrl unserialized = serializer.unserialize(reddotTextData);
         assertArrayEquals(reddotBinaryData, unserialized.getData());
     }
     
+    @Test
+    public void reddotUnserializeInputStream() throws IOException {
+        InputStream is = new ByteArrayInputStream(
+                reddotTextData.getBytes("UTF-8"));
+        DataUrl unserialized = serializer.unserialize(is);
+        assertEquals("image/png", unserialized.getMimeType());
+        assertArrayEquals(reddotBinaryData, unserialized.getData());
+    }
+    
+    @Test
+    public void reddotUnserializeRange() throws MalformedURLException {
+        StringBuilder html = new StringBuilder("<img src=\"")
+                .append(reddotTextData).append("\">");
+        DataUrl unserialized = serializer.unserialize(html, 10,
+                10 + reddotTextData.length());
+        assertArrayEquals(reddotBinaryData, unserialized.getData());
+    }
+    
+    @Test
+    public void checkedUnserializeByteBuffer() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(checkedTextData.getBytes("UTF-8"));
+        DataUrl unserialized = serializer.unserialize(buffer);
+        assertArrayEquals(checkedBinaryData, unserialized.getData());
+        assertEquals(0, buffer.position());
+    }
+    
+    @Test
+    public void reddotUnserializeLazy() throws MalformedURLException {
+        DataUrlSerializer lazySerializer = new DataUrlSerializer();
+        lazySerializer.setLazy(true);
+        DataUrl unserialized = lazySerializer.unserialize(reddotTextData);
+        assertFalse(unserialized.isDecoded());
+        assertEquals("image/png", unserialized.getMimeType());
+        assertEquals(reddotBinaryData.length, 
+                unserialized.getDecodedLengthEstimate());
+        assertArrayEquals(reddotBinaryData, unserialized.getData());
+        assertTrue(unserialized.isDecoded());
+    }
+    
+    @Test(expected = UncheckedIOException.class)
+    public void corruptedLazy() throws MalformedURLException {
+        DataUrlSerializer lazySerializer = new DataUrlSerializer();
+        lazySerializer.setLazy(true);
+        String corruptedData = reddotTextData.replace(",", ",!");
+        lazySerializer.unserialize(corruptedData).getData();
+    }
+    
+    @Test(expected = MalformedURLException.class)
+    public void corruptedInputStream() throws IOException {
+        String corruptedData = reddotTextData.replace(",", ",!");
+        InputStream is = new ByteArrayInputStream(
+                corruptedData.getBytes("UTF-8"));
+        serializer.unserialize(is);
+    }
+    
     @Test
     public void checkedSerialize() throws MalformedURLException {
         DataUrl dataUrl = new DataUrlBuilder()
@@ -0,0 +1,61 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.net.MalformedURLException;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.Test;
+
+/**
+ * Test parallel Base64 encoding and decoding of {@link DataUrlSerializer}
+ * @author Max Schuster
+ */
+public class Base64ParallelTest {
+    
+    private final IDataUrlSerializer serializer = new DataUrlSerializer();
+    
+    @Test
+    public void parallel() throws MalformedURLException {
+        byte[] data = new byte[2500001];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + (i >> 8));
+        }
+        DataUrl dataUrl = new DataUrlBuilder()
+                .setEncoding(DataUrlEncoding.BASE64)
+                .setMimeType("application/pdf")
+                .setData(data)
+                .build();
+        DataUrlSerializer parallelSerializer = new DataUrlSerializer();
+        parallelSerializer.setParallelThreshold(0);
+        
+        String serialized = parallelSerializer.serialize(dataUrl);
+        assertThat(serialized, is(serializer.serialize(dataUrl)));
+        assertThat(parallelSerializer.unserialize(serialized), is(dataUrl));
+        
+        StringBuilder corrupted = new StringBuilder(serialized);
+        corrupted.setCharAt(3000000, '*');
+        corrupted.setCharAt(1000000, '*');
+        try {
+            parallelSerializer.unserialize(corrupted.toString());
+            fail("Corrupted payload was decoded");
+        } catch (MalformedURLException e) {
+            assertThat(e.getMessage(), 
+                    is("Illegal Base64 character at 1000000"));
+        }
+    }
+    
+}
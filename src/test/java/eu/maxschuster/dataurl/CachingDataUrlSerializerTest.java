@@ -0,0 +1,105 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test {@link CachingDataUrlSerializer}
+ * @author Max Schuster
+ */
+public class CachingDataUrlSerializerTest {
+    
+    private final IDataUrlSerializer serializer = new DataUrlSerializer();
+    
+    @Test
+    public void caching() throws IOException {
+        CachingDataUrlSerializer caching = 
+                new CachingDataUrlSerializer(serializer, 20, 20);
+        DataUrl first = new DataUrl("first".getBytes("US-ASCII"));
+        DataUrl second = new DataUrl("second".getBytes("US-ASCII"));
+        
+        String serializedFirst = caching.serialize(first);
+        assertEquals("data:,first", serializedFirst);
+        assertSame(serializedFirst, caching.serialize(
+                new DataUrl("first".getBytes("US-ASCII"))));
+        caching.serialize(second);
+        
+        CachingDataUrlSerializer.Statistics statistics = 
+                caching.getSerializeStatistics();
+        assertEquals(1, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(1, statistics.getEvictions());
+        assertEquals(1, statistics.getSize());
+        assertEquals("data:,second".length(), statistics.getChars());
+        
+        DataUrl unserialized = caching.unserialize(serializedFirst);
+        assertSame(unserialized, caching.unserialize(serializedFirst));
+        assertEquals(1, caching.getUnserializeStatistics().getHits());
+    }
+    
+    @Test
+    public void evictionAtWeightBoundary() throws IOException {
+        // "data:,first" and "data:,third" weigh 11 characters each
+        CachingDataUrlSerializer caching = 
+                new CachingDataUrlSerializer(serializer, 22, 11);
+        caching.serialize(new DataUrl("first".getBytes("US-ASCII")));
+        caching.serialize(new DataUrl("third".getBytes("US-ASCII")));
+        
+        CachingDataUrlSerializer.Statistics statistics = 
+                caching.getSerializeStatistics();
+        assertEquals(0, statistics.getEvictions());
+        assertEquals(2, statistics.getSize());
+        assertEquals(22, statistics.getChars());
+        
+        caching.serialize(new DataUrl("x".getBytes("US-ASCII")));
+        statistics = caching.getSerializeStatistics();
+        assertEquals(1, statistics.getEvictions());
+        assertEquals(2, statistics.getSize());
+        assertEquals(11 + "data:,x".length(), statistics.getChars());
+        
+        caching.unserialize("data:,first");
+        caching.unserialize("data:,fifth");
+        caching.unserialize("data:,sixth!");
+        statistics = caching.getUnserializeStatistics();
+        assertEquals(1, statistics.getEvictions());
+        assertEquals(1, statistics.getSize());
+        assertEquals(11, statistics.getChars());
+    }
+    
+    @Test
+    public void lazyKeys() throws IOException {
+        DataUrlSerializer lazy = new DataUrlSerializer();
+        lazy.setLazy(true);
+        CachingDataUrlSerializer caching = 
+                new CachingDataUrlSerializer(serializer, 100, 0);
+        String serialized = caching.serialize(
+                lazy.unserialize("data:,first"));
+        assertSame(serialized, caching.serialize(
+                lazy.unserialize("data:,first")));
+        assertEquals(1, caching.getSerializeStatistics().getHits());
+        try {
+            caching.serialize(lazy.unserialize("data:text/plain;base64,#"));
+            fail();
+        } catch (MalformedURLException e) {
+            // expected
+        }
+    }
+    
+}
@@ -0,0 +1,58 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrlSerializer} with canonical serialization enabled
+ * @author Max Schuster
+ */
+public class CanonicalSerializationTest {
+    
+    @Test
+    public void canonical() throws IOException {
+        DataUrl first = new DataUrlBuilder()
+                .setData("a b".getBytes("US-ASCII"))
+                .setEncoding(DataUrlEncoding.URL)
+                .setMimeType("Text/Plain")
+                .setHeader("z", "2")
+                .setCharset("UTF-8")
+                .setHeader("a", "1")
+                .build();
+        DataUrl second = new DataUrlBuilder()
+                .setDataUrl(first)
+                .setHeaders(null)
+                .setHeader("a", "1")
+                .setHeader("z", "2")
+                .setCharset("utf-8")
+                .setMimeType("text/plain")
+                .build();
+        DataUrlSerializer canonical = new DataUrlSerializer();
+        canonical.setCanonical(true);
+        String expected = "data:text/plain;a=1;charset=utf-8;z=2,a%20b";
+        assertEquals(expected, canonical.serialize(first));
+        assertEquals(expected, canonical.serialize(second));
+        IDataUrlSerializer serializer = canonical;
+        assertEquals(expected.length(),
+                serializer.computeSerializedLength(first));
+        assertEquals("data:Text/Plain;z=2;charset=UTF-8;a=1,a%20b",
+                new DataUrlSerializer().serialize(first));
+    }
+    
+}
@@ -0,0 +1,60 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test the batch methods of {@link DataUrlSerializer}
+ * @author Max Schuster
+ */
+public class DataUrlBatchTest {
+    
+    private final IDataUrlSerializer serializer = new DataUrlSerializer();
+    
+    @Test
+    public void batch() throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            urls.add(i == 150 ? "data:text/plain,%zz" : "data:,item" + i);
+        }
+        DataUrlSerializer parallelSerializer = new DataUrlSerializer();
+        parallelSerializer.setParallelBatches(true);
+        
+        DataUrlBatchResult<DataUrl> unserialized = 
+                parallelSerializer.unserializeAll(urls);
+        assertEquals(200, unserialized.size());
+        assertEquals(Arrays.asList(150), 
+                new ArrayList<>(unserialized.getFailures().keySet()));
+        assertNull(unserialized.get(150));
+        assertEquals("item199", 
+                new String(unserialized.get(199).getData(), "US-ASCII"));
+        
+        List<DataUrl> dataUrls = new ArrayList<>(unserialized.getResults());
+        dataUrls.remove(150);
+        DataUrlBatchResult<String> reserialized = 
+                serializer.serializeAll(dataUrls.stream());
+        assertTrue(reserialized.isSuccessful());
+        assertEquals("data:,item0", reserialized.get(0));
+        assertEquals("data:,item199", reserialized.get(198));
+    }
+    
+}
@@ -0,0 +1,146 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Base64;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.Test;
+
+/**
+ * Test the binary format of {@link DataUrl#writeTo(java.io.DataOutput)}
+ * @author Max Schuster
+ */
+public class DataUrlBinaryFormatTest {
+    
+    private final IDataUrlSerializer serializer = new DataUrlSerializer();
+    
+    private final String reddotTextData;
+
+    public DataUrlBinaryFormatTest() throws IOException {
+        InputStream is = getClass().getResourceAsStream("reddot.txt");
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] data = new byte[1024];
+        int r;
+        while ((r = is.read(data)) > 0) {
+            os.write(data, 0, r);
+        }
+        this.reddotTextData = new String(os.toByteArray(), "UTF-8");
+    }
+    
+    private static DataUrl read(byte[] bytes) throws IOException {
+        return DataUrl.readFrom(new DataInputStream(
+                new ByteArrayInputStream(bytes)));
+    }
+    
+    @Test
+    public void binaryFormat() throws IOException, ClassNotFoundException {
+        DataUrl dataUrl = serializer.unserialize(reddotTextData);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dataUrl.writeTo(new DataOutputStream(out));
+        assertTrue(out.size() < reddotTextData.length());
+        DataUrl read = DataUrl.readFrom(new DataInputStream(
+                new ByteArrayInputStream(out.toByteArray())));
+        assertThat(read, is(dataUrl));
+        
+        out.reset();
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(dataUrl);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(out.toByteArray()))) {
+            assertThat(ois.readObject(), is((Object) dataUrl));
+        }
+    }
+    
+    @Test
+    public void legacySerializedForm() 
+            throws IOException, ClassNotFoundException {
+        // DataUrl "data:text/plain;charset=US-ASCII,Hello" written with the
+        // default serialized form used before SerializedForm
+        byte[] legacy = Base64.getDecoder().decode(
+                "rO0ABXNyAB5ldS5tYXhzY2h1c3Rlci5kYXRhdXJsLkRhdGFVcmwAAAAAAAAAAQ"
+                + "IABFsABGRhdGF0AAJbQkwACGVuY29kaW5ndAAoTGV1L21heHNjaHVzdGVy"
+                + "L2RhdGF1cmwvRGF0YVVybEVuY29kaW5nO0wAB2hlYWRlcnN0AA9MamF2YS"
+                + "91dGlsL01hcDtMAAhtaW1lVHlwZXQAEkxqYXZhL2xhbmcvU3RyaW5nO3hw"
+                + "dXIAAltCrPMX+AYIVOACAAB4cAAAAAVIZWxsb35yACZldS5tYXhzY2h1c3"
+                + "Rlci5kYXRhdXJsLkRhdGFVcmxFbmNvZGluZwAAAAAAAAAAEgAAeHIADmph"
+                + "dmEubGFuZy5FbnVtAAAAAAAAAAASAAB4cHQAA1VSTHNyACVqYXZhLnV0aW"
+                + "wuQ29sbGVjdGlvbnMkVW5tb2RpZmlhYmxlTWFw8aWo/nT1B0ICAAFMAAFt"
+                + "cQB+AAN4cHNyABdqYXZhLnV0aWwuTGlua2VkSGFzaE1hcDTATlwQbMD7Ag"
+                + "ABWgALYWNjZXNzT3JkZXJ4cgARamF2YS51dGlsLkhhc2hNYXAFB9rBwxZg"
+                + "0QMAAkYACmxvYWRGYWN0b3JJAAl0aHJlc2hvbGR4cD9AAAAAAAABdwgAAA"
+                + "ACAAAAAXQAB2NoYXJzZXR0AAhVUy1BU0NJSXgAdAAKdGV4dC9wbGFpbg==");
+        DataUrl read;
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(legacy))) {
+            read = (DataUrl) ois.readObject();
+        }
+        assertEquals(-1, read.getEncodedLength());
+        assertThat(read, is(serializer.unserialize(
+                "data:text/plain;charset=US-ASCII,Hello")));
+    }
+    
+    @Test
+    public void truncated() throws IOException {
+        DataUrl dataUrl = serializer.unserialize(reddotTextData);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dataUrl.writeTo(new DataOutputStream(out));
+        byte[] written = out.toByteArray();
+        // Cut inside the encoding name and inside the payload
+        for (int length : new int[] {3, written.length - 1}) {
+            try {
+                read(Arrays.copyOf(written, length));
+                fail("Expected StreamCorruptedException for " + length);
+            } catch (StreamCorruptedException e) {
+                assertThat(e.getMessage(), containsString("remaining input"));
+            }
+        }
+    }
+    
+    @Test
+    public void corruptLengths() throws IOException {
+        // Version, "base64", no MIME-Type, no headers, 2^31-1 payload bytes
+        byte[] hugePayload = {1, 6, 'b', 'a', 's', 'e', '6', '4', 0, 0, 
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 1, 2};
+        try {
+            read(hugePayload);
+            fail("Expected StreamCorruptedException");
+        } catch (StreamCorruptedException e) {
+            assertThat(e.getMessage(), containsString("remaining input"));
+        }
+        // Version, "base64", no MIME-Type, 2^31-1 headers
+        byte[] hugeHeaderCount = {1, 6, 'b', 'a', 's', 'e', '6', '4', 0, 
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        try {
+            read(hugeHeaderCount);
+            fail("Expected StreamCorruptedException");
+        } catch (StreamCorruptedException e) {
+            assertThat(e.getMessage(), containsString("Too many headers"));
+        }
+    }
+    
+}
@@ -0,0 +1,74 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.net.MalformedURLException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrlCodecRegistry}
+ * @author Max Schuster
+ */
+public class DataUrlCodecRegistryTest {
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void defaultIsUnmodifiable() {
+        DataUrlCodecRegistry.getDefault().register(new Base64Codec());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownEncoding() {
+        new DataUrlCodecRegistry().register(new URLEncodedCodec() {
+
+            @Override
+            public String getEncodingName() {
+                return "gzip";
+            }
+
+        });
+    }
+
+    @Test
+    public void customParallelCodec() throws MalformedURLException {
+        final AtomicBoolean pooled = new AtomicBoolean();
+        DataUrlCodecRegistry registry = new DataUrlCodecRegistry(
+                DataUrlCodecRegistry.getDefault());
+        registry.register(new Base64Codec() {
+
+            @Override
+            public byte[] decode(Charset charset, CharSequence src, 
+                    int start, int end, ForkJoinPool pool) {
+                pooled.set(pool != null);
+                return super.decode(charset, src, start, end, pool);
+            }
+
+        });
+        DataUrlSerializer serializer = new DataUrlSerializer();
+        serializer.setCodecRegistry(registry);
+        serializer.setParallelThreshold(0);
+        DataUrl dataUrl = serializer.unserialize("data:text/plain;base64,SGVsbG8=");
+        assertArrayEquals("Hello".getBytes(), dataUrl.getData());
+        assertTrue(pooled.get());
+        assertNotSame(registry.getCodec(DataUrlEncoding.BASE64), 
+                DataUrlCodecRegistry.getDefault()
+                        .getCodec(DataUrlEncoding.BASE64));
+    }
+
+}
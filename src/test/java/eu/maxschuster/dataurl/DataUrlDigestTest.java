@@ -0,0 +1,75 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrl#getDigest()}
+ * @author Max Schuster
+ */
+public class DataUrlDigestTest {
+    
+    private final IDataUrlSerializer serializer = new DataUrlSerializer();
+    
+    private final byte[] reddotBinaryData;
+    
+    private final String reddotTextData;
+    
+    private final String checkedTextData;
+
+    public DataUrlDigestTest() throws IOException {
+        this.reddotBinaryData = loadBinaryData("reddot.png");
+        this.reddotTextData = new String(loadBinaryData("reddot.txt"), 
+                "UTF-8");
+        this.checkedTextData = new String(loadBinaryData("checked.txt"), 
+                "UTF-8");
+    }
+    
+    private byte[] loadBinaryData(String name) throws IOException {
+        InputStream is = getClass().getResourceAsStream(name);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] data = new byte[1024];
+        int r;
+        while ((r = is.read(data)) > 0) {
+            os.write(data, 0, r);
+        }
+        return os.toByteArray();
+    }
+    
+    @Test
+    public void compareDigest() throws MalformedURLException {
+        DataUrl reddotDataUrl = serializer.unserialize(reddotTextData);
+        DataUrl reddotCopy = new DataUrlBuilder()
+                .setDataUrl(reddotDataUrl)
+                .setData(reddotBinaryData.clone())
+                .build();
+        DataUrl checkedDataUrl = serializer.unserialize(checkedTextData);
+        assertThat(reddotDataUrl.getDigest().length, is(32));
+        assertThat(reddotDataUrl.getDigest(), is(reddotCopy.getDigest()));
+        assertThat(reddotDataUrl.getDigest(), 
+                is(not(checkedDataUrl.getDigest())));
+        assertThat(reddotDataUrl.hashCode(), is(reddotCopy.hashCode()));
+        assertThat(reddotDataUrl, is(reddotCopy));
+    }
+    
+}
@@ -0,0 +1,113 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrlLimits}
+ * @author Max Schuster
+ */
+public class DataUrlLimitsTest {
+    
+    @Test
+    public void limits() throws IOException {
+        DataUrlSerializer limited = new DataUrlSerializer();
+        limited.setLimits(new DataUrlLimits.Builder()
+                .setMaxDecodedSize(3)
+                .setMaxParameterCount(1)
+                .setAllowedMimeTypes(Arrays.asList("text/plain"))
+                .build());
+        assertEquals(3, limited.unserialize("data:,%41%41%41")
+                .getData().length);
+        String[] rejected = {
+            "data:,%41%41%41%41",
+            "data:text/html,abc",
+            "data:text/plain;a=b;c=d,abc"
+        };
+        for (String urlString : rejected) {
+            try {
+                limited.unserialize(urlString);
+                fail(urlString);
+            } catch (MalformedURLException e) {
+                // expected
+            }
+            try {
+                limited.unserialize(new StringReader(urlString));
+                fail(urlString);
+            } catch (MalformedURLException e) {
+                // expected
+            }
+        }
+    }
+    
+    @Test
+    public void largePayloadExceedsDecodedSize() throws IOException {
+        DataUrlSerializer limited = new DataUrlSerializer();
+        limited.setLimits(new DataUrlLimits.Builder()
+                .setMaxDecodedSize(1024)
+                .build());
+        StringBuilder url = new StringBuilder("data:,");
+        StringBuilder base64 = new StringBuilder("data:text/plain;base64,");
+        for (int i = 0; i < 1024 * 1024; i++) {
+            url.append("%41");
+            base64.append("QUFB");
+        }
+        // The codecs stop before allocating the decoded payload
+        assertNull(new URLEncodedCodec().decode(null, url, 6, url.length(), 
+                1024));
+        assertNull(new Base64Codec().decode(null, base64, 23, 
+                base64.length(), 1024));
+        for (CharSequence urlString : Arrays.asList(url, base64)) {
+            for (boolean lazy : new boolean[] {false, true}) {
+                limited.setLazy(lazy);
+                try {
+                    limited.unserialize(urlString, 0, urlString.length());
+                    fail("Expected DataUrlParseException");
+                } catch (DataUrlParseException e) {
+                    assertEquals(
+                            DataUrlParseException.Reason.DECODED_SIZE_EXCEEDED,
+                            e.getReason());
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void decodedSizeEstimateIsUpperBound() throws IOException {
+        DataUrlSerializer limited = new DataUrlSerializer();
+        limited.setLimits(new DataUrlLimits.Builder()
+                .setMaxDecodedSize(3)
+                .build());
+        // "é" is estimated at 4 bytes, but decoded to 2 UTF-8 bytes
+        String urlString = "data:text/plain;charset=utf-8,éa";
+        assertArrayEquals("éa".getBytes("UTF-8"), 
+                limited.unserialize(urlString).getData());
+        try {
+            limited.unserialize(urlString + "é");
+            fail("Expected DataUrlParseException");
+        } catch (DataUrlParseException e) {
+            assertEquals(DataUrlParseException.Reason.DECODED_SIZE_EXCEEDED,
+                    e.getReason());
+        }
+    }
+    
+}
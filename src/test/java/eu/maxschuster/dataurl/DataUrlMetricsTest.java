@@ -0,0 +1,159 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrlMetrics}
+ * @author Max Schuster
+ */
+public class DataUrlMetricsTest {
+    
+    private final byte[] reddotBinaryData;
+    
+    private final String reddotTextData;
+
+    public DataUrlMetricsTest() throws IOException {
+        this.reddotBinaryData = loadBinaryData("reddot.png");
+        this.reddotTextData = new String(loadBinaryData("reddot.txt"), 
+                "UTF-8");
+    }
+    
+    private byte[] loadBinaryData(String name) throws IOException {
+        InputStream is = getClass().getResourceAsStream(name);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] data = new byte[1024];
+        int r;
+        while ((r = is.read(data)) > 0) {
+            os.write(data, 0, r);
+        }
+        return os.toByteArray();
+    }
+    
+    @Test
+    public void metrics() throws IOException {
+        DataUrlSerializer measured = new DataUrlSerializer();
+        DataUrlMetrics metrics = new DataUrlMetrics();
+        measured.setMetricsListener(metrics);
+        DataUrl reddot = measured.unserialize(reddotTextData);
+        measured.serialize(reddot, new ByteArrayOutputStream());
+        try {
+            measured.unserialize("data:image/png;base64,#");
+            fail();
+        } catch (MalformedURLException e) {
+            // expected
+        }
+        assertEquals(1, metrics.getSerializeCount());
+        assertEquals(1, metrics.getUnserializeCount());
+        assertEquals(2 * reddotTextData.length(), metrics.getEncodedBytes());
+        assertEquals(2 * reddotBinaryData.length, metrics.getDecodedBytes());
+        assertEquals(Long.valueOf(1), metrics.getFailures()
+                .get("unserialize: MALFORMED_PAYLOAD"));
+        DataUrlMetrics.Stats stats = metrics.getStats().get(0);
+        assertEquals("BASE64", stats.getEncoding());
+        assertEquals("image/png", stats.getMimeType());
+        long calls = 0;
+        for (long count : stats.getLatencyHistogram()) {
+            calls += count;
+        }
+        assertEquals(1, calls);
+        metrics.reset();
+        assertEquals(0, metrics.getSerializeCount());
+    }
+    
+    @Test
+    public void lazyDecodedBytes() throws IOException {
+        DataUrlSerializer measured = new DataUrlSerializer();
+        DataUrlMetrics metrics = new DataUrlMetrics();
+        measured.setMetricsListener(metrics);
+        measured.setLazy(true);
+        DataUrl reddot = measured.unserialize(reddotTextData);
+        assertFalse(reddot.isDecoded());
+        assertTrue(metrics.getDecodedBytes() >= reddotBinaryData.length);
+    }
+    
+    @Test
+    public void mimeTypeCase() {
+        DataUrlMetrics metrics = new DataUrlMetrics();
+        for (String mimeType : new String[] {
+                "image/png", "IMAGE/PNG", "Image/Png" }) {
+            metrics.onUnserialize(reddot(mimeType), 0, 0);
+        }
+        for (int i = 1; i < DataUrlMetrics.MAX_MIME_TYPES; i++) {
+            metrics.onUnserialize(reddot("image/x-" + i), 0, 0);
+        }
+        assertEquals(DataUrlMetrics.MAX_MIME_TYPES, 
+                metrics.getStats().size());
+        for (DataUrlMetrics.Stats stats : metrics.getStats()) {
+            assertNotEquals(DataUrlMetrics.OTHER, stats.getMimeType());
+            if (stats.getMimeType().equals("image/png")) {
+                assertEquals(3, stats.getCount());
+            }
+        }
+    }
+    
+    private DataUrl reddot(String mimeType) {
+        return new DataUrlBuilder()
+                .setMimeType(mimeType)
+                .setEncoding(DataUrlEncoding.BASE64)
+                .setData(reddotBinaryData)
+                .build();
+    }
+    
+    @Test
+    public void jmx() throws IOException, JMException {
+        DataUrlSerializer measured = new DataUrlSerializer();
+        DataUrlMetrics metrics = new DataUrlMetrics();
+        measured.setMetricsListener(metrics);
+        measured.unserialize(reddotTextData);
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(
+                "eu.maxschuster.dataurl:type=DataUrlMetrics,name=test");
+        server.registerMBean(metrics, name);
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals(1L, server.getAttribute(name, "UnserializeCount"));
+            assertTrue(server.getAttribute(name, "Failures") 
+                    instanceof TabularData);
+            CompositeData[] stats = 
+                    (CompositeData[]) server.getAttribute(name, "Stats");
+            assertEquals(1, stats.length);
+            assertEquals("image/png", stats[0].get("mimeType"));
+            assertEquals(metrics.getLatencyBucketBounds().length, 
+                    ((long[]) server.getAttribute(name, 
+                            "LatencyBucketBounds")).length);
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "UnserializeCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+        assertFalse(server.isRegistered(name));
+    }
+    
+}
@@ -0,0 +1,133 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrlParseException} and {@link DataUrlParseResult}
+ * @author Max Schuster
+ */
+public class DataUrlParseExceptionTest {
+    
+    @Test
+    public void parseErrors() throws IOException {
+        DataUrlSerializer serializer = new DataUrlSerializer();
+        DataUrlParseResult result = serializer.tryUnserialize("data:,ab%g1");
+        assertFalse(result.isSuccess());
+        assertNull(result.getDataUrl());
+        DataUrlParseException failure = result.getFailure();
+        assertEquals(DataUrlParseException.Phase.PAYLOAD, failure.getPhase());
+        assertEquals(DataUrlParseException.Reason.MALFORMED_PAYLOAD,
+                failure.getReason());
+        assertEquals(8, failure.getOffset());
+        assertEquals(0, failure.getStackTrace().length);
+        try {
+            serializer.unserialize("data:text/plain;=v,abc");
+            fail();
+        } catch (DataUrlParseException e) {
+            assertEquals(DataUrlParseException.Reason.MALFORMED_FIELD,
+                    e.getReason());
+            assertEquals(16, e.getOffset());
+            assertTrue(e.getStackTrace().length > 0);
+        }
+        assertEquals("a", new String(serializer.tryUnserialize("data:,a")
+                .get().getData(), "US-ASCII"));
+    }
+    
+    @Test
+    public void offsetsMatchAcrossPaths() throws IOException {
+        String[] urlStrings = {
+            "data:base64,,",
+            "data:base64,charset=utf-8;YWJjYWJj%41",
+            "data:text/plain;base64,YW=j",
+            "data:text/plain;base64,Y",
+            "data:text/plain;base64,YQ==YQ==",
+            "data:text/plain;base64,YWJj\u00e9",
+            "data:,YWJj%",
+            "data:,a%zz",
+            "data:,a%z"
+        };
+        DataUrlSerializer serializer = new DataUrlSerializer();
+        DataUrlSerializer direct = new DataUrlSerializer();
+        direct.setDirectBuffers(true);
+        DataUrlSerializer lazy = new DataUrlSerializer();
+        lazy.setLazy(true);
+        for (String urlString : urlStrings) {
+            long expected = serializer.tryUnserialize(urlString).getFailure()
+                    .getOffset();
+            byte[] bytes = urlString.getBytes("UTF-8");
+            assertEquals(urlString, expected, offset(() -> 
+                    serializer.unserialize(ByteBuffer.wrap(bytes))));
+            assertEquals(urlString, expected, offset(() -> 
+                    serializer.unserialize(new ByteArrayInputStream(bytes))));
+            assertEquals(urlString, expected, offset(() -> 
+                    serializer.unserialize(new StringReader(urlString))));
+            assertEquals(urlString, expected, offset(() -> 
+                    direct.unserialize(urlString)));
+            assertEquals(urlString, expected, offset(() -> {
+                try {
+                    lazy.unserialize(urlString).getData();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }));
+            assertEquals(urlString, expected, offset(() -> {
+                DataUrlPushParser parser = serializer.newPushParser(
+                        new IDataUrlPushListener() {
+
+                    @Override
+                    public void onHeader(DataUrlEncoding encoding, 
+                            String type, Map<String, String> headers) {
+                    }
+
+                    @Override
+                    public void onData(ByteBuffer data) {
+                    }
+
+                });
+                for (int i = 0; i < bytes.length; i++) {
+                    parser.feed(ByteBuffer.wrap(bytes, i, 1));
+                }
+                parser.finish();
+            }));
+        }
+    }
+    
+    private static long offset(Parse parse) throws IOException {
+        try {
+            parse.run();
+        } catch (DataUrlParseException e) {
+            return e.getOffset();
+        }
+        fail("Expected DataUrlParseException");
+        return -1;
+    }
+    
+    private interface Parse {
+        
+        void run() throws IOException;
+        
+    }
+    
+}
@@ -0,0 +1,206 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrlPushParser}
+ * @author Max Schuster
+ */
+public class DataUrlPushParserTest {
+    
+    private final byte[] checkedBinaryData;
+    
+    private final String checkedTextData;
+
+    public DataUrlPushParserTest() throws IOException {
+        this.checkedBinaryData = loadBinaryData("checked.png");
+        this.checkedTextData = new String(loadBinaryData("checked.txt"), 
+                "UTF-8");
+    }
+    
+    private byte[] loadBinaryData(String name) throws IOException {
+        InputStream is = getClass().getResourceAsStream(name);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] data = new byte[1024];
+        int r;
+        while ((r = is.read(data)) > 0) {
+            os.write(data, 0, r);
+        }
+        return os.toByteArray();
+    }
+    
+    private static ByteBuffer ascii(String s) throws IOException {
+        return ByteBuffer.wrap(s.getBytes("US-ASCII"));
+    }
+    
+    @Test
+    public void pushParser() throws IOException {
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        final String[] mimeType = new String[1];
+        DataUrlPushParser parser = new DataUrlSerializer().newPushParser(
+                new IDataUrlPushListener() {
+                    
+            @Override
+            public void onHeader(DataUrlEncoding encoding, String type,
+                    Map<String, String> headers) {
+                mimeType[0] = type;
+            }
+
+            @Override
+            public void onData(ByteBuffer data) {
+                while (data.hasRemaining()) {
+                    decoded.write(data.get());
+                }
+            }
+            
+        });
+        byte[] encoded = checkedTextData.getBytes("US-ASCII");
+        for (int i = 0; i < encoded.length; i += 5) {
+            parser.feed(ByteBuffer.wrap(encoded, i, 
+                    Math.min(5, encoded.length - i)));
+            if (i == 0) {
+                assertNull(mimeType[0]);
+            } else if (i == 25) {
+                assertEquals("image/png", mimeType[0]);
+            }
+        }
+        parser.finish();
+        assertArrayEquals(checkedBinaryData, decoded.toByteArray());
+        assertEquals(checkedBinaryData.length, parser.getDecodedLength());
+    }
+    
+    @Test
+    public void feedAfterFailure() throws IOException {
+        final int[] chunks = new int[1];
+        DataUrlPushParser parser = new DataUrlSerializer().newPushParser(
+                new IDataUrlPushListener() {
+
+            @Override
+            public void onHeader(DataUrlEncoding encoding, String type,
+                    Map<String, String> headers) {
+            }
+
+            @Override
+            public void onData(ByteBuffer data) {
+                chunks[0]++;
+            }
+            
+        });
+        try {
+            parser.feed(ascii("data:text/plain;base64,YW#"));
+            fail("Expected DataUrlParseException");
+        } catch (DataUrlParseException e) {
+            assertEquals(DataUrlParseException.Phase.PAYLOAD, e.getPhase());
+        }
+        try {
+            parser.feed(ascii("Jj"));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("Parser has failed", e.getMessage());
+        }
+        try {
+            parser.finish();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("Parser has failed", e.getMessage());
+        }
+        assertEquals(0, chunks[0]);
+    }
+    
+    @Test
+    public void feedAfterFinish() throws IOException {
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        DataUrlPushParser parser = new DataUrlSerializer().newPushParser(
+                new IDataUrlPushListener() {
+
+            @Override
+            public void onHeader(DataUrlEncoding encoding, String type,
+                    Map<String, String> headers) {
+            }
+
+            @Override
+            public void onData(ByteBuffer data) {
+                while (data.hasRemaining()) {
+                    decoded.write(data.get());
+                }
+            }
+            
+        });
+        parser.feed(ascii("data:,abc"));
+        parser.finish();
+        assertEquals("abc", decoded.toString("US-ASCII"));
+        try {
+            parser.feed(ascii("def"));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("Parser is finished", e.getMessage());
+        }
+    }
+    
+    @Test
+    public void nonAscii() throws IOException {
+        DataUrlSerializer serializer = new DataUrlSerializer();
+        String[] urlStrings = {
+            "data:text/plain;charset=iso-8859-1;name=\u00e9,caf\u00e9",
+            "data:text/plain;charset=utf-8;name=\u00e9,caf\u00e9%41\u20ac",
+            "data:text/plain;charset=utf-16be,\u00e9\u00e9x\u00e9"
+        };
+        for (String urlString : urlStrings) {
+            DataUrl expected = serializer.unserialize(urlString);
+            byte[] bytes = urlString.getBytes("UTF-8");
+            DataUrl dataUrl = serializer.unserialize(ByteBuffer.wrap(bytes));
+            assertArrayEquals(expected.getData(), dataUrl.getData());
+            assertEquals(expected.getHeaders(), dataUrl.getHeaders());
+            final ByteArrayOutputStream decoded = 
+                    new ByteArrayOutputStream();
+            final Map<String, String> parsed = new HashMap<>();
+            DataUrlPushParser parser = serializer.newPushParser(
+                    new IDataUrlPushListener() {
+
+                @Override
+                public void onHeader(DataUrlEncoding encoding, String type,
+                        Map<String, String> headers) {
+                    parsed.putAll(headers);
+                }
+
+                @Override
+                public void onData(ByteBuffer data) {
+                    while (data.hasRemaining()) {
+                        decoded.write(data.get());
+                    }
+                }
+
+            });
+            // Single bytes split the UTF-8 encoded characters
+            for (int i = 0; i < bytes.length; i++) {
+                parser.feed(ByteBuffer.wrap(bytes, i, 1));
+            }
+            parser.finish();
+            assertArrayEquals(expected.getData(), decoded.toByteArray());
+            assertEquals(expected.getHeaders(), parsed);
+        }
+    }
+    
+}
@@ -0,0 +1,87 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrlScanner}
+ * @author Max Schuster
+ */
+public class DataUrlScannerTest {
+    
+    @Test
+    public void scanner() throws IOException {
+        String document = "<img src=\"data:,a%20b\"> metadata:, "
+                + "url(data:text/plain,c) data:";
+        DataUrlScanner scanner = new DataUrlScanner();
+        List<DataUrlMatch> matches = new ArrayList<>();
+        assertEquals(2, scanner.scan(document, matches::add));
+        assertEquals(10, matches.get(0).getStart());
+        assertEquals(21, matches.get(0).getEnd());
+        assertEquals("a b", new String(matches.get(0).getDataUrl().getData(),
+                "US-ASCII"));
+        assertEquals("text/plain", matches.get(1).getDataUrl().getMimeType());
+        StringBuilder rewritten = new StringBuilder();
+        assertEquals(2, scanner.rewrite(new StringReader(document), rewritten,
+                match -> "#"));
+        assertEquals("<img src=\"#\"> metadata:, url(#) data:",
+                rewritten.toString());
+    }
+    
+    @Test
+    public void matchAtEndOfInput() throws IOException {
+        String document = "src=data:text/plain,abc";
+        DataUrlScanner scanner = new DataUrlScanner();
+        List<DataUrlMatch> matches = new ArrayList<>();
+        assertEquals(1, scanner.scan(document, matches::add));
+        assertEquals(1, scanner.scan(new StringReader(document), 
+                matches::add));
+        for (DataUrlMatch match : matches) {
+            assertEquals(4, match.getStart());
+            assertEquals(document.length(), match.getEnd());
+            assertEquals("abc", new String(match.getDataUrl().getData(), 
+                    "US-ASCII"));
+        }
+        StringBuilder rewritten = new StringBuilder();
+        assertEquals(1, scanner.rewrite(new StringReader(document), rewritten,
+                match -> "#"));
+        assertEquals("src=#", rewritten.toString());
+    }
+    
+    @Test(timeout = 5000)
+    public void adversarialInput() throws IOException {
+        // Every candidate runs to the end of the input without a comma
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            sb.append(";data:");
+        }
+        String document = sb.toString();
+        DataUrlScanner scanner = new DataUrlScanner();
+        List<DataUrlMatch> matches = new ArrayList<>();
+        assertEquals(0, scanner.scan(document, matches::add));
+        assertEquals(0, scanner.scan(new StringReader(document), 
+                matches::add));
+        assertEquals(1, scanner.scan(document + ",abc", matches::add));
+        assertEquals(document.length() - 5, matches.get(0).getStart());
+    }
+    
+}
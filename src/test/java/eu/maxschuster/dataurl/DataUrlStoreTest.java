@@ -0,0 +1,99 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrlStore}
+ * @author Max Schuster
+ */
+public class DataUrlStoreTest {
+    
+    private final IDataUrlSerializer serializer = new DataUrlSerializer();
+    
+    private final byte[] reddotBinaryData;
+    
+    private final String reddotTextData;
+    
+    private final String checkedTextData;
+
+    public DataUrlStoreTest() throws IOException {
+        this.reddotBinaryData = loadBinaryData("reddot.png");
+        this.reddotTextData = loadTextData("reddot.txt");
+        this.checkedTextData = loadTextData("checked.txt");
+    }
+    
+    private byte[] loadBinaryData(String name) throws IOException {
+        InputStream is = getClass().getResourceAsStream(name);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] data = new byte[1024];
+        int r;
+        while ((r = is.read(data)) > 0) {
+            os.write(data, 0, r);
+        }
+        return os.toByteArray();
+    }
+    
+    private String loadTextData(String name) throws IOException {
+        byte[] data =  loadBinaryData(name);
+        return new String(data, "UTF-8");
+    }
+    
+    @Test
+    public void store() throws MalformedURLException {
+        DataUrlStore store = new DataUrlStore(serializer);
+        DataUrl first = store.unserialize(reddotTextData);
+        assertThat(store.unserialize(reddotTextData), is(sameInstance(first)));
+        
+        DataUrl renamed = store.intern(new DataUrlBuilder()
+                .setDataUrl(first)
+                .setData(reddotBinaryData.clone())
+                .setMimeType("application/octet-stream")
+                .build());
+        assertThat(renamed.getMimeType(), is("application/octet-stream"));
+        assertThat(renamed.getData(), is(sameInstance(first.getData())));
+        store.unserialize(checkedTextData);
+        
+        DataUrlStore.Statistics statistics = store.getStatistics();
+        assertThat(statistics.getInterned(), is(4L));
+        assertThat(statistics.getDuplicates(), is(2L));
+        assertThat(statistics.getPayloads(), is(2));
+        assertThat(statistics.getSavedBytes(), 
+                is(2L * reddotBinaryData.length));
+    }
+    
+    @Test
+    public void internSameInstance() throws MalformedURLException {
+        DataUrlStore store = new DataUrlStore(serializer);
+        DataUrl first = store.unserialize(reddotTextData);
+        assertThat(store.intern(first), is(sameInstance(first)));
+        assertThat(store.intern(first), is(sameInstance(first)));
+        
+        DataUrlStore.Statistics statistics = store.getStatistics();
+        assertThat(statistics.getInterned(), is(1L));
+        assertThat(statistics.getDuplicates(), is(0L));
+        assertThat(statistics.getPayloads(), is(1));
+        assertThat(statistics.getSavedBytes(), is(0L));
+    }
+    
+}
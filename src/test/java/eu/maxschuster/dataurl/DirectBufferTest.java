@@ -0,0 +1,85 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrl}s backed by direct {@link ByteBuffer}s
+ * @author Max Schuster
+ */
+public class DirectBufferTest {
+    
+    private final IDataUrlSerializer serializer = new DataUrlSerializer();
+    
+    private final byte[] reddotBinaryData;
+    
+    private final String reddotTextData;
+
+    public DirectBufferTest() throws IOException {
+        this.reddotBinaryData = loadBinaryData("reddot.png");
+        this.reddotTextData = new String(loadBinaryData("reddot.txt"), 
+                "UTF-8");
+    }
+    
+    private byte[] loadBinaryData(String name) throws IOException {
+        InputStream is = getClass().getResourceAsStream(name);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] data = new byte[1024];
+        int r;
+        while ((r = is.read(data)) > 0) {
+            os.write(data, 0, r);
+        }
+        return os.toByteArray();
+    }
+    
+    @Test
+    public void directBuffers() throws IOException {
+        ByteBuffer data = ByteBuffer.allocateDirect(reddotBinaryData.length);
+        data.put(reddotBinaryData);
+        data.flip();
+        DataUrl dataUrl = new DataUrlBuilder()
+                .setEncoding(DataUrlEncoding.BASE64)
+                .setMimeType("image/png")
+                .setData(data)
+                .build();
+        assertTrue(dataUrl.hasDataBuffer());
+        assertThat(dataUrl, is(serializer.unserialize(reddotTextData)));
+        
+        DataUrlSerializer directSerializer = new DataUrlSerializer();
+        directSerializer.setDirectBuffers(true);
+        ByteBuffer serialized = ByteBuffer.allocateDirect(
+                (int) directSerializer.computeSerializedLength(dataUrl));
+        directSerializer.serialize(dataUrl, serialized);
+        serialized.flip();
+        
+        DataUrl unserialized = directSerializer.unserialize(serialized);
+        assertTrue(unserialized.getDataBuffer().isDirect());
+        assertThat(unserialized, is(dataUrl));
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        directSerializer.serialize(unserialized, Channels.newChannel(out));
+        assertThat(out.toString("US-ASCII"), is(reddotTextData));
+    }
+    
+}
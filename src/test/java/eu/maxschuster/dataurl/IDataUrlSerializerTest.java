@@ -0,0 +1,109 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test the default methods of {@link IDataUrlSerializer}
+ * @author Max Schuster
+ */
+public class IDataUrlSerializerTest {
+    
+    private final String serialized = "data:text/plain;charset=utf-8,a%20b";
+    
+    /**
+     * Only implements the two abstract methods
+     */
+    private final IDataUrlSerializer serializer = new IDataUrlSerializer() {
+        
+        private final DataUrlSerializer delegate = new DataUrlSerializer();
+
+        @Override
+        public String serialize(DataUrl dataURL) 
+                throws MalformedURLException {
+            return delegate.serialize(dataURL);
+        }
+
+        @Override
+        public DataUrl unserialize(String urlString) 
+                throws MalformedURLException {
+            return delegate.unserialize(urlString);
+        }
+        
+    };
+    
+    private final DataUrl dataUrl = new DataUrlBuilder()
+            .setMimeType("text/plain")
+            .setCharset("utf-8")
+            .setEncoding(DataUrlEncoding.URL)
+            .setData("a b".getBytes(StandardCharsets.UTF_8))
+            .build();
+    
+    @Test
+    public void serialize() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(dataUrl, out);
+        assertEquals(serialized, 
+                new String(out.toByteArray(), StandardCharsets.US_ASCII));
+        StringBuilder sb = new StringBuilder();
+        serializer.serialize(dataUrl, sb);
+        assertEquals(serialized, sb.toString());
+        assertEquals(serialized.length(), 
+                serializer.computeSerializedLength(dataUrl));
+    }
+    
+    @Test
+    public void unserialize() throws IOException {
+        assertEquals(dataUrl, serializer.unserialize(new ByteArrayInputStream(
+                serialized.getBytes(StandardCharsets.US_ASCII))));
+        assertEquals(dataUrl, 
+                serializer.unserialize(new StringReader(serialized)));
+        assertEquals(dataUrl, 
+                serializer.unserialize("[" + serialized + "]", 1, 
+                        serialized.length() + 1));
+        ByteBuffer buffer = ByteBuffer.wrap(
+                serialized.getBytes(StandardCharsets.US_ASCII));
+        assertEquals(dataUrl, serializer.unserialize(buffer));
+        assertEquals(0, buffer.position());
+    }
+    
+    @Test
+    public void batch() throws IOException {
+        DataUrlBatchResult<String> serializedAll = serializer.serializeAll(
+                Arrays.asList(dataUrl, dataUrl));
+        assertTrue(serializedAll.isSuccessful());
+        assertEquals(Arrays.asList(serialized, serialized), 
+                serializedAll.getResults());
+        DataUrlBatchResult<DataUrl> unserializedAll = 
+                serializer.unserializeAll(Stream.of(serialized, "data:x"));
+        assertEquals(dataUrl, unserializedAll.get(0));
+        assertNull(unserializedAll.get(1));
+        assertNotNull(unserializedAll.getFailure(1));
+        assertEquals(1, unserializedAll.getFailures().size());
+    }
+    
+}
@@ -0,0 +1,74 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+import org.junit.Test;
+
+/**
+ * Test {@link DataUrl}s backed by memory-mapped files
+ * @author Max Schuster
+ */
+public class MappedFileTest {
+    
+    private final IDataUrlSerializer serializer = new DataUrlSerializer();
+    
+    private final byte[] reddotBinaryData;
+    
+    private final String reddotTextData;
+
+    public MappedFileTest() throws IOException {
+        this.reddotBinaryData = loadBinaryData("reddot.png");
+        this.reddotTextData = new String(loadBinaryData("reddot.txt"), 
+                "UTF-8");
+    }
+    
+    private byte[] loadBinaryData(String name) throws IOException {
+        InputStream is = getClass().getResourceAsStream(name);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] data = new byte[1024];
+        int r;
+        while ((r = is.read(data)) > 0) {
+            os.write(data, 0, r);
+        }
+        return os.toByteArray();
+    }
+    
+    @Test
+    public void mappedFile() throws IOException {
+        Path file = Files.createTempFile("reddot", ".png");
+        // A mapped file can't be deleted on every platform while mapped
+        file.toFile().deleteOnExit();
+        Files.write(file, reddotBinaryData);
+        DataUrl dataUrl = new DataUrlBuilder()
+                .setEncoding(DataUrlEncoding.BASE64)
+                .setMimeType("image/png")
+                .setData(file)
+                .build();
+        assertTrue(dataUrl.hasDataBuffer());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(dataUrl, out);
+        assertThat(out.toString("US-ASCII"), is(reddotTextData));
+    }
+    
+}
@@ -0,0 +1,55 @@
+    /*
+ * Copyright 2015 Max Schuster.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.maxschuster.dataurl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test {@link MimeType} and the parsed headers of a {@link DataUrl}
+ * @author Max Schuster
+ */
+public class ParsedHeaderTest {
+    
+    private final IDataUrlSerializer serializer = new DataUrlSerializer();
+    
+    @Test
+    public void parsedHeader() throws IOException {
+        DataUrl dataUrl = serializer.unserialize(
+                "data:image/svg+xml;name=a;charset=utf-8;name=b,%3Csvg%2F%3E");
+        assertSame(MimeType.IMAGE_SVG_XML, dataUrl.getParsedMimeType());
+        assertTrue(dataUrl.getParsedMimeType().isImage());
+        assertEquals("xml", dataUrl.getParsedMimeType().getSuffix());
+        assertEquals(Arrays.asList("name", "charset"), 
+                new ArrayList<>(dataUrl.getHeaders().keySet()));
+        assertEquals("b", dataUrl.getHeaders().get("name"));
+        assertEquals(dataUrl.getHeaders(), 
+                new DataUrl(new byte[0], DataUrlEncoding.URL, null, 
+                        new HashMap<>(dataUrl.getHeaders()))
+                        .getHeaders());
+        
+        MimeType custom = MimeType.valueOf("application/x-custom");
+        assertEquals("application", custom.getType());
+        assertEquals("x-custom", custom.getSubtype());
+        assertNull(custom.getSuffix());
+        assertFalse(custom.isImage());
+    }
+    
+}
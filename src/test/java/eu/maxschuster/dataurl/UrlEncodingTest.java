@@ -15,7 +15,11 @@
  */
 package eu.maxschuster.dataurl;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.nio.channels.Channels;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -44,6 +48,19 @@ public class UrlEncodingTest {
         assertEquals(serialized, _serialized);
     }
     
+    @Test
+    public void serializeAppendable() throws IOException {
+        DataUrl dataUrl = new DataUrlBuilder()
+                .setCharset("utf-8")
+                .setEncoding(DataUrlEncoding.URL)
+                .setData(plain.getBytes("UTF-8"))
+                .setMimeType("text/plain")
+                .build();
+        StringBuilder sb = new StringBuilder();
+        serializer.serialize(dataUrl, sb);
+        assertEquals(serialized, sb.toString());
+    }
+    
     @Test
     public void unserialize() throws IOException {
         DataUrl dataUrl = serializer.unserialize(serialized);
@@ -51,4 +68,137 @@ public class UrlEncodingTest {
         assertEquals(plain, unserialized);
     }
     
+    @Test
+    public void unserializeReader() throws IOException {
+        DataUrl dataUrl = serializer.unserialize(new StringReader(serialized));
+        String unserialized = new String(dataUrl.getData(), "UTF-8");
+        assertEquals(plain, unserialized);
+        assertEquals("utf-8", dataUrl.getHeaders().get("charset"));
+    }
+    
+    @Test
+    public void unserializeNonAscii() throws IOException {
+        String urlString = "data:text/plain;charset=iso-8859-1;name=\u00e9,"
+                + "caf\u00e9";
+        DataUrl expected = serializer.unserialize(urlString);
+        assertArrayEquals(new byte[] {'c', 'a', 'f', (byte) 0xe9}, 
+                expected.getData());
+        assertEquals("\u00e9", expected.getHeaders().get("name"));
+        byte[] bytes = urlString.getBytes("UTF-8");
+        DataUrl[] dataUrls = {
+            serializer.unserialize(new StringReader(urlString)),
+            serializer.unserialize(new ByteArrayInputStream(bytes)),
+            serializer.unserialize(Channels.newChannel(
+                    new ByteArrayInputStream(bytes)))
+        };
+        for (DataUrl dataUrl : dataUrls) {
+            assertArrayEquals(expected.getData(), dataUrl.getData());
+            assertEquals(expected.getHeaders(), dataUrl.getHeaders());
+        }
+    }
+    
+    @Test
+    public void unserializeHeaders() throws IOException {
+        DataUrl dataUrl = serializer.unserialize(
+                "data:text/plain;charset=utf-8;title=a%20b+c;,abc");
+        assertEquals("text/plain", dataUrl.getMimeType());
+        assertEquals(DataUrlEncoding.URL, dataUrl.getEncoding());
+        assertEquals("utf-8", dataUrl.getHeaders().get("charset"));
+        assertEquals("a b c", dataUrl.getHeaders().get("title"));
+        assertEquals("abc", new String(dataUrl.getData(), "UTF-8"));
+    }
+    
+    @Test(expected = MalformedURLException.class)
+    public void unserializeEmptyHeaderField() throws IOException {
+        serializer.unserialize("data:text/plain;;charset=utf-8,abc");
+    }
+    
+    @Test(expected = MalformedURLException.class)
+    public void unserializeUnknownCharset() throws IOException {
+        serializer.unserialize("data:text/plain;charset=x-unknown,abc");
+    }
+    
+    @Test
+    public void unknownCharsetRoundTrip() throws IOException {
+        DataUrl dataUrl = new DataUrlBuilder()
+                .setCharset("x-unknown")
+                .setEncoding(DataUrlEncoding.URL)
+                .setData("abc".getBytes("US-ASCII"))
+                .setMimeType("text/plain")
+                .build();
+        try {
+            serializer.serialize(dataUrl);
+            fail("Expected MalformedURLException");
+        } catch (MalformedURLException e) {
+            // The serializer would not accept its own output
+        }
+        DataUrl known = new DataUrlBuilder()
+                .setCharset("iso-8859-1")
+                .setEncoding(DataUrlEncoding.URL)
+                .setData("abc".getBytes("US-ASCII"))
+                .setMimeType("text/plain")
+                .build();
+        assertEquals(known, serializer.unserialize(
+                serializer.serialize(known)));
+    }
+    
+    @Test
+    public void unknownCharsetOffset() throws IOException {
+        String urlString = "data:text/plain;charset=x-unknown,abc";
+        for (int i = 0; i < 2; i++) {
+            try {
+                if (i == 0) {
+                    serializer.unserialize(urlString);
+                } else {
+                    serializer.unserialize(new StringReader(urlString));
+                }
+                fail("Expected DataUrlParseException");
+            } catch (DataUrlParseException e) {
+                assertEquals(DataUrlParseException.Reason.UNKNOWN_CHARSET,
+                        e.getReason());
+                assertEquals(urlString.indexOf("charset"), e.getOffset());
+            }
+        }
+    }
+    
+    @Test
+    public void incompleteEscapes() throws IOException {
+        DataUrlSerializer parser = new DataUrlSerializer();
+        String[] urlStrings = {
+            "data:,abc%", "data:,abc%4", 
+            "data:text/plain;x=a%,hi", "data:text/plain;x=a%4,hi"
+        };
+        for (String urlString : urlStrings) {
+            DataUrlParseResult result = parser.tryUnserialize(urlString);
+            assertFalse(urlString, result.isSuccess());
+            DataUrlParseException failure = result.getFailure();
+            assertEquals(urlString, urlString.indexOf('%'), 
+                    failure.getOffset());
+            assertEquals(urlString, urlString.contains("x=") 
+                    ? DataUrlParseException.Reason.MALFORMED_VALUE
+                    : DataUrlParseException.Reason.MALFORMED_PAYLOAD,
+                    failure.getReason());
+            assertEquals(0, new DataUrlScanner(parser).scan(urlString, 
+                    match -> fail(urlString)));
+        }
+    }
+    
+    @Test
+    public void roundTripBytes() throws IOException {
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        DataUrl dataUrl = new DataUrlBuilder()
+                .setCharset("utf-8")
+                .setEncoding(DataUrlEncoding.URL)
+                .setData(data)
+                .build();
+        String _serialized = serializer.serialize(dataUrl);
+        assertTrue(_serialized.contains("%2A%2B%2C-.%2F0123456789%3A"));
+        assertTrue(_serialized.contains("Z%5B%5C%5D%5E_%60a"));
+        assertTrue(_serialized.contains("z%7B%7C%7D~%7F"));
+        assertArrayEquals(data, serializer.unserialize(_serialized).getData());
+    }
+    
 }